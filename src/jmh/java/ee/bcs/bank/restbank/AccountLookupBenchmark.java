@@ -0,0 +1,40 @@
+package ee.bcs.bank.restbank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountLookupBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public AccountDto getAccountById(LedgerBenchmarkState state) {
+        return state.accountService.getAccountById(state.bank.getAccountRepository(), state.randomAccountId());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AccountDto getAccountByNumber(LedgerBenchmarkState state) {
+        return state.accountService.getAccountByNumber(state.bank.getAccountRepository(),
+                state.accountNumbers[state.randomAccountId()]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AccountDto getAccountByNumberContended(LedgerBenchmarkState state) {
+        return state.accountService.getAccountByNumber(state.bank.getAccountRepository(),
+                state.accountNumbers[state.randomAccountId()]);
+    }
+}
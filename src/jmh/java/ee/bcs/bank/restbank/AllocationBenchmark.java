@@ -0,0 +1,71 @@
+package ee.bcs.bank.restbank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Tehingu tegemise mälukasutus: gc profiler näitab gc.alloc.rate.norm ehk baite ühe tehingu kohta.
+// Päringu TransactionDto on lõime oma ja seda kasutatakse uuesti, et mõõta ainult TransactionService-i.
+// Alles jääb vastuseks antav RequestResult ja siseülekandel saaja TransactionDto.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+    @State(Scope.Thread)
+    public static class Request {
+        public final TransactionDto transactionDto = new TransactionDto();
+
+        TransactionDto transaction(int accountId, char transactionType, String receiverAccountNumber) {
+            transactionDto.setId(0);
+            transactionDto.setAccountId(accountId);
+            transactionDto.setTransactionType(transactionType);
+            transactionDto.setAmount(1);
+            transactionDto.setSenderAccountNumber(null);
+            transactionDto.setReceiverAccountNumber(receiverAccountNumber);
+            transactionDto.setCurrency(null);
+            return transactionDto;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult deposit(LedgerBenchmarkState state, Request request) {
+        return state.transactionService.addNewTransaction(state.bank,
+                request.transaction(state.randomAccountId(), TransactionService.DEPOSIT, null));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult withdrawal(LedgerBenchmarkState state, Request request) {
+        return state.transactionService.addNewTransaction(state.bank,
+                request.transaction(state.randomAccountId(), TransactionService.WITHDRAWAL, null));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult internalTransfer(LedgerBenchmarkState state, Request request) {
+        return state.transactionService.addNewTransaction(state.bank, request.transaction(state.randomAccountId(),
+                TransactionService.SEND_MONEY, state.accountNumbers[state.randomAccountId()]));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult receive(LedgerBenchmarkState state, Request request) {
+        TransactionDto transactionDto = request.transaction(0, TransactionService.RECEIVE_MONEY,
+                state.accountNumbers[state.randomAccountId()]);
+        transactionDto.setSenderAccountNumber("LV0000");
+        return state.transactionService.receiveNewTransaction(state.bank, transactionDto);
+    }
+}
@@ -0,0 +1,39 @@
+package ee.bcs.bank.restbank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// kõik lõimed teevad ülekandeid väheste kontode vahel, mõõdab lukkude konkurentsi
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotAccountBenchmark {
+
+    @Param({"2", "16"})
+    public int hotAccounts;
+
+    @Benchmark
+    @Threads(8)
+    public RequestResult hotTransfer(LedgerBenchmarkState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int accountId = random.nextInt(hotAccounts) + 1;
+        String receiverAccountNumber = state.accountNumbers[random.nextInt(hotAccounts) + 1];
+        return state.transactionService.addNewTransaction(state.bank,
+                LedgerBenchmarkState.transaction(accountId, TransactionService.SEND_MONEY, 1, receiverAccountNumber));
+    }
+}
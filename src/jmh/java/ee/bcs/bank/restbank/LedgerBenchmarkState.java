@@ -0,0 +1,89 @@
+package ee.bcs.bank.restbank;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Pank koos teenustega, ilma veebikihita. Kontonumbrid on kujul EE<id>, et neid saaks otsida ilma eraldi nimekirjata.
+@State(Scope.Benchmark)
+public class LedgerBenchmarkState {
+
+    public static final int INITIAL_BALANCE = 1_000_000_000;
+    private static final AccountNumberAllocator ACCOUNT_NUMBERS = new AccountNumberAllocator("77");
+
+    @Param({"1000", "100000", "1000000"})
+    public int accountCount;
+
+    public AnnotationConfigApplicationContext context;
+    public Bank bank;
+    public AccountService accountService;
+    public TransactionService transactionService;
+    // accountNumbers[id], et mõõdetav tehing ei peaks kontonumbrit kokku panema
+    public String[] accountNumbers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // välisülekanded jäävad järjekorda ega lähe kuhugi, et mõõta ainult panga enda tööd
+        OutboundProperties outboundProperties = new OutboundProperties();
+        outboundProperties.setRoutes(Map.of("LV", "http://localhost:1/solution"));
+        outboundProperties.setMaxInFlight(0);
+        outboundProperties.setQueueCapacity(Integer.MAX_VALUE);
+
+        context = new AnnotationConfigApplicationContext();
+        // @Value Duration väljad ("15s") nagu Spring Booti rakenduses
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.registerBean(OutboundProperties.class, () -> outboundProperties);
+        context.register(SimpleMeterRegistry.class, ObjectMapper.class, Bank.class, LedgerMetrics.class, BankJournal.class,
+                OutboundTransferService.class, AccountNumberAllocator.class, AccountService.class, BalanceService.class, BankClock.class,
+                BankService.class, VelocityLimits.class, ChangeFeed.class, TransactionService.class);
+        context.refresh();
+        bank = context.getBean(Bank.class);
+        accountService = context.getBean(AccountService.class);
+        transactionService = context.getBean(TransactionService.class);
+        BankService bankService = context.getBean(BankService.class);
+
+        accountNumbers = new String[accountCount + 1];
+        for (int i = 1; i <= accountCount; i++) {
+            accountNumbers[i] = accountNumber(i);
+            AccountDto accountDto = new AccountDto();
+            accountDto.setAccountNumber(accountNumbers[i]);
+            accountDto.setFirstName("Juss");
+            accountDto.setLastName("Kolm");
+            bankService.addAccountToBank(bank, accountDto);
+            accountService.getAccountById(bank.getAccountRepository(), i).setBalance(INITIAL_BALANCE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    public int randomAccountId() {
+        return ThreadLocalRandom.current().nextInt(accountCount) + 1;
+    }
+
+    // sama number, mille pank ise konto id-le annaks (bank.code vaikimisi 77)
+    public static String accountNumber(int accountId) {
+        return ACCOUNT_NUMBERS.accountNumber(accountId);
+    }
+
+    public static TransactionDto transaction(int accountId, char transactionType, int amount, String receiverAccountNumber) {
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setAccountId(accountId);
+        transactionDto.setTransactionType(transactionType);
+        transactionDto.setAmount(amount);
+        transactionDto.setReceiverAccountNumber(receiverAccountNumber);
+        return transactionDto;
+    }
+}
@@ -0,0 +1,92 @@
+package ee.bcs.bank.restbank;
+
+import ee.bcs.bank.BankApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// sissemaksed püsisalvestusega: memory - ilma, journal - logifail, jdbc - H2 mälus oleva andmebaasiga.
+// Iga tehing ootab sync-i, mitme lõimega mõõdab, kui hästi kirjed ühte flush-i kokku kogutakse.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    private static final int ACCOUNT_COUNT = 1000;
+
+    @Param({"memory", "journal", "jdbc"})
+    public String persistence;
+
+    private ConfigurableApplicationContext context;
+    private Bank bank;
+    private TransactionService transactionService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(BankApplication.class)
+                .web(WebApplicationType.NONE);
+        switch (persistence) {
+            case "memory" -> builder.properties("bank.persistence=journal", "bank.journal.enabled=false");
+            case "journal" -> builder.properties("bank.persistence=journal", "bank.journal.enabled=true",
+                    "bank.journal.directory=" + Files.createTempDirectory("bank-journal"));
+            case "jdbc" -> builder.properties("bank.persistence=jdbc",
+                    "bank.jdbc.hikari.jdbc-url=jdbc:h2:mem:bank-" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+            default -> throw new IllegalArgumentException(persistence);
+        }
+        context = builder.run();
+        bank = context.getBean(Bank.class);
+        transactionService = context.getBean(TransactionService.class);
+
+        BankService bankService = context.getBean(BankService.class);
+        for (int i = 1; i <= ACCOUNT_COUNT; i++) {
+            AccountDto accountDto = new AccountDto();
+            accountDto.setAccountNumber(LedgerBenchmarkState.accountNumber(i));
+            bankService.addAccountToBank(bank, accountDto);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public RequestResult deposit() {
+        return depositToRandomAccount();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public RequestResult depositContended() {
+        return depositToRandomAccount();
+    }
+
+    private RequestResult depositToRandomAccount() {
+        int accountId = ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT) + 1;
+        return transactionService.addNewTransaction(bank,
+                LedgerBenchmarkState.transaction(accountId, TransactionService.DEPOSIT, 1, null));
+    }
+}
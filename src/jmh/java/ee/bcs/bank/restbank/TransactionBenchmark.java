@@ -0,0 +1,74 @@
+package ee.bcs.bank.restbank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Iga tehing lisab rea TransactionStore-i, seepärast on mõõtmised lühikesed, et segmendid ei kasvaks liiga suureks.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult deposit(LedgerBenchmarkState state) {
+        return state.transactionService.addNewTransaction(state.bank,
+                LedgerBenchmarkState.transaction(state.randomAccountId(), TransactionService.DEPOSIT, 1, null));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult withdrawal(LedgerBenchmarkState state) {
+        return state.transactionService.addNewTransaction(state.bank,
+                LedgerBenchmarkState.transaction(state.randomAccountId(), TransactionService.WITHDRAWAL, 1, null));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult internalTransfer(LedgerBenchmarkState state) {
+        String receiverAccountNumber = state.accountNumbers[state.randomAccountId()];
+        return state.transactionService.addNewTransaction(state.bank,
+                LedgerBenchmarkState.transaction(state.randomAccountId(), TransactionService.SEND_MONEY, 1, receiverAccountNumber));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult externalTransfer(LedgerBenchmarkState state) {
+        return state.transactionService.addNewTransaction(state.bank,
+                LedgerBenchmarkState.transaction(state.randomAccountId(), TransactionService.SEND_MONEY, 1, "LV0000"));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RequestResult receive(LedgerBenchmarkState state) {
+        TransactionDto transactionDto = LedgerBenchmarkState.transaction(0, TransactionService.RECEIVE_MONEY, 1,
+                state.accountNumbers[state.randomAccountId()]);
+        transactionDto.setSenderAccountNumber("LV0000");
+        return state.transactionService.receiveNewTransaction(state.bank, transactionDto);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public RequestResult internalTransferContended(LedgerBenchmarkState state) {
+        String receiverAccountNumber = state.accountNumbers[state.randomAccountId()];
+        return state.transactionService.addNewTransaction(state.bank,
+                LedgerBenchmarkState.transaction(state.randomAccountId(), TransactionService.SEND_MONEY, 1, receiverAccountNumber));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public RequestResult depositContended(LedgerBenchmarkState state) {
+        return state.transactionService.addNewTransaction(state.bank,
+                LedgerBenchmarkState.transaction(state.randomAccountId(), TransactionService.DEPOSIT, 1, null));
+    }
+}
@@ -0,0 +1,92 @@
+package ee.bcs.bank.loadtest;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+// Panga REST API klient. Viga on IOException (ühendus või HTTP staatus), panga keeldumine on RequestResult.error.
+final class BankClient {
+
+    private static final int PAGE_SIZE = 10_000;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    private final String baseUrl;
+    private final ObjectMapper objectMapper;
+
+    BankClient(String baseUrl, ObjectMapper objectMapper) {
+        this.baseUrl = baseUrl;
+        this.objectMapper = objectMapper;
+    }
+
+    RequestResult openAccount(AccountDto accountDto) throws IOException, InterruptedException {
+        return post("/new/account", accountDto);
+    }
+
+    RequestResult newTransaction(TransactionDto transactionDto) throws IOException, InterruptedException {
+        return post("/new/transaction", transactionDto);
+    }
+
+    RequestResult receiveTransaction(TransactionDto transactionDto) throws IOException, InterruptedException {
+        return post("/receive/transaction", transactionDto);
+    }
+
+    void accounts(Consumer<AccountDto> consumer) throws IOException, InterruptedException {
+        stream("/accounts", AccountDto.class, AccountDto::getId, consumer);
+    }
+
+    void transactions(Consumer<TransactionDto> consumer) throws IOException, InterruptedException {
+        stream("/transactions", TransactionDto.class, TransactionDto::getId, consumer);
+    }
+
+    private RequestResult post(String path, Object body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException(path + " returned " + response.statusCode());
+        }
+        return objectMapper.readValue(response.body(), RequestResult.class);
+    }
+
+    // NDJSON lehed afterId järgi, kuni tuleb tühi leht
+    private <T> void stream(String path, Class<T> type, ToIntFunction<T> id, Consumer<T> consumer)
+            throws IOException, InterruptedException {
+        int afterId = 0;
+        while (true) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path + "?afterId=" + afterId + "&limit=" + PAGE_SIZE))
+                    .build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                throw new IOException(path + " returned " + response.statusCode());
+            }
+            int count = 0;
+            try (MappingIterator<T> values = objectMapper.readerFor(type).readValues(response.body())) {
+                while (values.hasNextValue()) {
+                    T value = values.nextValue();
+                    consumer.accept(value);
+                    afterId = id.applyAsInt(value);
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ee.bcs.bank.loadtest;
+
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Pärast jooksu loetakse API kaudu kõik kontod ja tehingud ning kontrollitakse, et pank jäi järjepidevaks.
+// Tehingud tulevad id järjekorras ja ühe konto tehingud on lisatud tema luku all, seega saab iga konto
+// jooksvat saldot kontrollida ühe läbimisega, hoides meeles ainult konto viimast saldot.
+final class InvariantChecks {
+
+    private final BankClient client;
+    private final LoadStats stats;
+    private boolean passed = true;
+    // kui journal on sees, võib pangas olla juba varasemaid kontosid ja tehinguid
+    private long startBalance;
+    private long startRows;
+
+    InvariantChecks(BankClient client, LoadStats stats) {
+        this.client = client;
+        this.stats = stats;
+    }
+
+    void recordStart() throws IOException, InterruptedException {
+        long[] start = new long[2];
+        client.accounts(account -> start[0] += account.getBalance());
+        client.transactions(transaction -> start[1]++);
+        startBalance = start[0];
+        startRows = start[1];
+    }
+
+    boolean run() throws IOException, InterruptedException {
+        long[][] balances = {new long[1024]};
+        boolean[][] exists = {new boolean[1024]};
+        long[] accountTotals = new long[2];
+        client.accounts(account -> {
+            int id = account.getId();
+            if (id >= balances[0].length) {
+                balances[0] = Arrays.copyOf(balances[0], Math.max(id + 1, balances[0].length * 2));
+                exists[0] = Arrays.copyOf(exists[0], balances[0].length);
+            }
+            balances[0][id] = account.getBalance();
+            exists[0][id] = true;
+            accountTotals[0] += account.getBalance();
+            if (account.getBalance() < 0) {
+                accountTotals[1]++;
+            }
+        });
+
+        long[] lastBalances = new long[balances[0].length];
+        long[] ledger = new long[3];
+        client.transactions(transaction -> {
+            int id = transaction.getAccountId();
+            long signedAmount = signedAmount(transaction);
+            ledger[0] += signedAmount;
+            ledger[1]++;
+            if (id < lastBalances.length) {
+                if (transaction.getTransactionType() != TransactionService.NEW_ACCOUNT
+                        && transaction.getBalance() != lastBalances[id] + signedAmount) {
+                    ledger[2]++;
+                }
+                lastBalances[id] = transaction.getBalance();
+            }
+        });
+        long staleBalances = 0;
+        for (int id = 0; id < lastBalances.length; id++) {
+            if (exists[0][id] && balances[0][id] != lastBalances[id]) {
+                staleBalances++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Invariants:");
+        check("account balances add up to the transaction ledger", accountTotals[0] == ledger[0],
+                accountTotals[0] + " in accounts, " + ledger[0] + " in transactions");
+        check("every transaction continues its account's running balance", ledger[2] == 0,
+                ledger[2] + " of " + ledger[1] + " transactions do not");
+        check("every account balance equals its last transaction balance", staleBalances == 0,
+                staleBalances + " accounts differ");
+        check("no account balance is negative", accountTotals[1] == 0, accountTotals[1] + " negative");
+        if (stats.unknownOutcomes() > 0) {
+            System.out.printf("  SKIP  money and transaction count match acknowledged requests: %d requests failed "
+                    + "and their outcome is unknown%n", stats.unknownOutcomes());
+        } else {
+            long expectedBalance = startBalance + stats.netInflow();
+            long expectedRows = startRows + stats.acknowledgedRows();
+            check("money is conserved: deposits and received transfers minus withdrawals",
+                    accountTotals[0] == expectedBalance, accountTotals[0] + " in accounts, " + expectedBalance + " expected");
+            check("every acknowledged transaction is in the ledger", ledger[1] == expectedRows,
+                    ledger[1] + " in ledger, " + expectedRows + " expected");
+        }
+        return passed;
+    }
+
+    private void check(String invariant, boolean holds, String details) {
+        System.out.printf("  %-4s  %s (%s)%n", holds ? "OK" : "FAIL", invariant, details);
+        passed &= holds;
+    }
+
+    // tehingu mõju konto saldole
+    private static long signedAmount(TransactionDto transaction) {
+        return switch (transaction.getTransactionType()) {
+            case TransactionService.DEPOSIT, TransactionService.RECEIVE_MONEY, TransactionService.REVERSAL ->
+                    transaction.getAmount();
+            case TransactionService.WITHDRAWAL, TransactionService.SEND_MONEY -> -transaction.getAmount();
+            default -> 0;
+        };
+    }
+}
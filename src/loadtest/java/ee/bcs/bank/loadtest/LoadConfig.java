@@ -0,0 +1,75 @@
+package ee.bcs.bank.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Koormuse seaded load.* süsteemi omadustest, vt ./gradlew loadRun. Vaikimisi on lühike jooks väikese pangaga.
+final class LoadConfig {
+
+    static final String OPERATIONS = "ndwsr";
+
+    // kontode arv, mille vahel tehinguid tehakse, ja iga konto algne saldo sentides
+    final int accounts = Integer.getInteger("load.accounts", 1000);
+    final long initialBalance = Long.getLong("load.initial-balance", 100_000);
+    // väljamakse ja ülekande summa on juhuslik 1..max-amount
+    final long maxAmount = Long.getLong("load.max-amount", 1000);
+    // suletud tsükli kasutajate arv, avatud tsüklis ei loe
+    final int users = Integer.getInteger("load.users", 64);
+    // n - uus konto koos 'n' tehinguga, d - sissemakse, w - väljamakse, s - ülekanne oma panga kontole,
+    // r - teisest pangast saabunud ülekanne (/receive/transaction)
+    final Map<Character, Integer> mix = parseMix(System.getProperty("load.mix", "n=1,d=25,w=20,s=44,r=10"));
+    // Zipfi astendaja: 0 - kõik kontod võrdselt, 1 - esimesed kontod saavad suure osa tehingutest
+    final double skew = Double.parseDouble(System.getProperty("load.skew", "0.8"));
+    // rate > 0 on avatud tsükkel: rate päringut sekundis ühtlase sammuga, igaüks oma virtuaalsel lõimel, sõltumata
+    // sellest, kas eelmised on vastuse saanud. Latentsus loetakse plaanitud ajast. rate = 0 on suletud tsükkel: iga
+    // kasutaja saadab järgmise päringu pärast vastust (ja think-time pausi), latentsus loetakse saatmisest
+    final int rate = Integer.getInteger("load.rate", 0);
+    final Duration thinkTime = duration("load.think-time", "0s");
+    final Duration warmup = duration("load.warmup", "5s");
+    final Duration duration = duration("load.duration", "30s");
+    final Duration reportInterval = duration("load.report-interval", "5s");
+    // sama seemnega teeb iga kasutaja samad tehingud samas järjekorras
+    final long seed = Long.getLong("load.seed", 1);
+
+    LoadConfig() {
+        if (accounts < 2 || users < 1 || maxAmount < 1 || rate < 0 || skew < 0) {
+            throw new IllegalArgumentException("load.accounts must be at least 2, load.users and load.max-amount "
+                    + "at least 1 and load.rate, load.skew must not be negative");
+        }
+    }
+
+    boolean openLoop() {
+        return rate > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d accounts, %s, mix %s, skew %s, %d s + %d s warmup, seed %d",
+                accounts, openLoop() ? "open loop at " + rate + " req/s" : "closed loop with " + users + " users", mix, skew,
+                duration.toSeconds(), warmup.toSeconds(), seed);
+    }
+
+    // nagu application.properties-is: 500ms, 5s, 1h
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+
+    private static Map<Character, Integer> parseMix(String mix) {
+        Map<Character, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] operation = part.trim().split("=");
+            if (operation.length != 2 || operation[0].length() != 1 || OPERATIONS.indexOf(operation[0].charAt(0)) < 0) {
+                throw new IllegalArgumentException("load.mix must look like d=30,w=20,s=40,r=10 with operations "
+                        + OPERATIONS + ": " + mix);
+            }
+            weights.put(operation[0].charAt(0), Integer.parseInt(operation[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("load.mix has no operations: " + mix);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,258 @@
+package ee.bcs.bank.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.bcs.bank.BankApplication;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Käivita: ./gradlew loadRun -Pload.rate=20000 -Pspring.threads.virtual.enabled=true
+// Käivitab panga samas protsessis juhuslikul pordil ja koormab seda HTTP kaudu LoadConfig segu järgi: avatud tsüklis
+// saadab graafiku järgi iga päringu eraldi virtuaalne lõim, suletud tsüklis on iga kasutaja virtuaalne lõim. Lõpus on
+// latentsuse tabel ja panga invariandid, protsessi väljumiskood on 1, kui mõni invariant ei kehti.
+public final class LoadGenerator {
+
+    // teise panga konto, kust 'r' tehingud tulevad
+    private static final String EXTERNAL_SENDER = "LV00LOAD0000000000001";
+
+    private final LoadConfig config;
+    private final Workload workload;
+    private final BankClient client;
+    private final LoadStats stats = new LoadStats(LoadConfig.OPERATIONS);
+    private int[] accountIds;
+    private String[] accountNumbers;
+
+    LoadGenerator(LoadConfig config, BankClient client) {
+        this.config = config;
+        this.workload = new Workload(config);
+        this.client = client;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = new LoadConfig();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BankApplication.class)
+                .properties("server.port=0")
+                .run(args);
+        boolean passed;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            BankClient client = new BankClient("http://localhost:" + port + "/solution", context.getBean(ObjectMapper.class));
+            passed = new LoadGenerator(config, client).run();
+        } finally {
+            context.close();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    boolean run() throws Exception {
+        System.out.println("Load: " + config);
+        InvariantChecks invariantChecks = new InvariantChecks(client, stats);
+        invariantChecks.recordStart();
+        openAccounts();
+
+        long startNanos = System.nanoTime();
+        long warmupEndNanos = startNanos + config.warmup.toNanos();
+        long endNanos = warmupEndNanos + config.duration.toNanos();
+        SplittableRandom seeds = new SplittableRandom(config.seed);
+        // sulgemine ootab ka avatud tsükli veel vastuseta päringud ära
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(config.users);
+            if (config.openLoop()) {
+                futures.add(requests.submit(() -> {
+                    schedule(requests, seeds, startNanos, warmupEndNanos, endNanos);
+                    return null;
+                }));
+            } else {
+                for (int i = 0; i < config.users; i++) {
+                    // kasutajate seemned võetakse alati samas järjekorras
+                    SplittableRandom random = seeds.split();
+                    futures.add(requests.submit(() -> {
+                        user(random, warmupEndNanos, endNanos);
+                        return null;
+                    }));
+                }
+            }
+
+            long reportNanos = config.reportInterval.toNanos();
+            long reportAt = warmupEndNanos + reportNanos;
+            sleepUntil(warmupEndNanos);
+            while (reportAt <= endNanos) {
+                sleepUntil(reportAt);
+                stats.printInterval(reportAt - warmupEndNanos, reportNanos);
+                reportAt += reportNanos;
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        stats.printSummary(config.duration.toNanos());
+        return invariantChecks.run();
+    }
+
+    // algsed kontod ja nende sissemaksed, paralleelselt, et suur pank saaks kiiresti valmis
+    private void openAccounts() throws Exception {
+        accountIds = new int[config.accounts];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(config.accounts);
+            for (int i = 0; i < config.accounts; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    accountIds[index] = openAccount(index);
+                    if (config.initialBalance > 0) {
+                        RequestResult result = client.newTransaction(
+                                transaction(TransactionService.DEPOSIT, accountIds[index], config.initialBalance, null));
+                        if (result.getError() != null) {
+                            throw new IllegalStateException("Initial deposit failed: " + result.getError());
+                        }
+                        stats.acknowledged(TransactionService.DEPOSIT, config.initialBalance);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        // kuumad kontod on väikseima id-ga, nii sõltub jaotus ainult seemnest, mitte avamise järjekorrast
+        Arrays.sort(accountIds);
+
+        Map<Integer, String> numbers = new HashMap<>();
+        client.accounts(account -> numbers.put(account.getId(), account.getAccountNumber()));
+        accountNumbers = new String[config.accounts];
+        for (int i = 0; i < config.accounts; i++) {
+            accountNumbers[i] = numbers.get(accountIds[i]);
+        }
+    }
+
+    private int openAccount(int index) throws IOException, InterruptedException {
+        AccountDto accountDto = new AccountDto();
+        accountDto.setFirstName("Load");
+        accountDto.setLastName("User" + index);
+        RequestResult result = client.openAccount(accountDto);
+        if (result.getError() != null) {
+            throw new IllegalStateException("Opening an account failed: " + result.getError());
+        }
+        return result.getAccountId();
+    }
+
+    // nagu panga kasutajaliides: kõigepealt konto, siis selle 'n' tehing
+    private RequestResult newAccount() throws IOException, InterruptedException {
+        AccountDto accountDto = new AccountDto();
+        accountDto.setFirstName("Load");
+        accountDto.setLastName("New");
+        RequestResult result = client.openAccount(accountDto);
+        if (result.getError() != null) {
+            return result;
+        }
+        return client.newTransaction(transaction(TransactionService.NEW_ACCOUNT, result.getAccountId(), 0, null));
+    }
+
+    // Avatud tsükkel: i-nda päringu aeg on start + i / rate sekundit. Kui saatja ise jääb graafikust maha, lähevad
+    // hilinenud päringud kohe välja ja nende latentsus sisaldab hilinemist. Iga päring saab oma juhuslike arvude
+    // jada, seega on päringud sama seemnega samad ka siis, kui vastused tulevad teises järjekorras
+    private void schedule(ExecutorService requests, SplittableRandom random, long startNanos, long warmupEndNanos,
+                          long endNanos) throws InterruptedException {
+        for (long i = 0; ; i++) {
+            long scheduledNanos = startNanos + i * TimeUnit.SECONDS.toNanos(1) / config.rate;
+            if (scheduledNanos >= endNanos) {
+                return;
+            }
+            sleepUntil(scheduledNanos);
+            SplittableRandom requestRandom = random.split();
+            requests.submit(() -> {
+                request(requestRandom, scheduledNanos, warmupEndNanos);
+                return null;
+            });
+        }
+    }
+
+    // suletud tsükkel: kasutaja saadab järgmise päringu alles pärast eelmise vastust
+    private void user(SplittableRandom random, long warmupEndNanos, long endNanos) throws InterruptedException {
+        while (true) {
+            long sentNanos = System.nanoTime();
+            if (sentNanos >= endNanos) {
+                return;
+            }
+            request(random, sentNanos, warmupEndNanos);
+            if (!config.thinkTime.isZero()) {
+                Thread.sleep(config.thinkTime);
+            }
+        }
+    }
+
+    private void request(SplittableRandom random, long scheduledNanos, long warmupEndNanos) throws InterruptedException {
+        char operation = workload.nextOperation(random);
+        LoadStats.Outcome outcome = execute(operation, random);
+        if (scheduledNanos >= warmupEndNanos) {
+            stats.record(operation, outcome, System.nanoTime() - scheduledNanos);
+        }
+    }
+
+    private LoadStats.Outcome execute(char operation, SplittableRandom random) throws InterruptedException {
+        // juhuslikud arvud võetakse enne päringut ja alati samad, et jada ei sõltuks serveri vastustest
+        int account = workload.nextAccount(random);
+        int otherAccount = workload.nextOtherAccount(random, account);
+        long amount = workload.nextAmount(random);
+        try {
+            RequestResult result = switch (operation) {
+                case TransactionService.NEW_ACCOUNT -> newAccount();
+                case TransactionService.DEPOSIT, TransactionService.WITHDRAWAL -> client.newTransaction(
+                        transaction(operation, accountIds[account], amount, null));
+                case TransactionService.SEND_MONEY -> client.newTransaction(
+                        transaction(operation, accountIds[account], amount, accountNumbers[otherAccount]));
+                case TransactionService.RECEIVE_MONEY -> client.receiveTransaction(received(accountNumbers[account], amount));
+                default -> throw new IllegalArgumentException("Unknown operation " + operation);
+            };
+            if (result.getError() != null) {
+                return LoadStats.Outcome.REJECTED;
+            }
+            stats.acknowledged(operation, amount);
+            return LoadStats.Outcome.OK;
+        } catch (IOException e) {
+            stats.unknownOutcome();
+            return LoadStats.Outcome.FAILED;
+        }
+    }
+
+    private static TransactionDto transaction(char type, int accountId, long amount, String receiverAccountNumber) {
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setTransactionType(type);
+        transactionDto.setAccountId(accountId);
+        transactionDto.setAmount(amount);
+        transactionDto.setReceiverAccountNumber(receiverAccountNumber);
+        return transactionDto;
+    }
+
+    private static TransactionDto received(String receiverAccountNumber, long amount) {
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setSenderAccountNumber(EXTERNAL_SENDER);
+        transactionDto.setReceiverAccountNumber(receiverAccountNumber);
+        transactionDto.setAmount(amount);
+        return transactionDto;
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException {
+        long delay = nanos - System.nanoTime();
+        while (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+            delay = nanos - System.nanoTime();
+        }
+    }
+}
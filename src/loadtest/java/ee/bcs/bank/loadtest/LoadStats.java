@@ -0,0 +1,136 @@
+package ee.bcs.bank.loadtest;
+
+import ee.bcs.bank.restbank.TransactionService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Latentsused ja tulemused tehingu tüübi kaupa. Kasutajad kirjutavad Recorder-isse, aruande lõim võtab sealt
+// vahemiku histogrammi ja liidab selle kogu jooksu omale. Mõõdetakse ainult pärast soojendust,
+// raha ja tehingute arv loetakse kogu jooksu kohta, sest nende järgi kontrollitakse panga seisu.
+final class LoadStats {
+
+    enum Outcome { OK, REJECTED, FAILED }
+
+    private static final int DIGITS = 3;
+
+    private final String operations;
+    private final Recorder[] recorders = new Recorder[128];
+    private final Histogram[] histograms = new Histogram[128];
+    private final LongAdder[] rejected = new LongAdder[128];
+    private final LongAdder[] failed = new LongAdder[128];
+    private final LongAdder intervalRejected = new LongAdder();
+    private final LongAdder intervalFailed = new LongAdder();
+
+    // sissemaksed ja teisest pangast saabunud raha miinus väljamaksed, panga kinnitatud tehingute järgi
+    private final LongAdder netInflow = new LongAdder();
+    private final LongAdder acknowledgedRows = new LongAdder();
+    // päring ebaõnnestus ja pole teada, kas pank jõudis tehingu teha
+    private final LongAdder unknownOutcomes = new LongAdder();
+
+    LoadStats(String operations) {
+        this.operations = operations;
+        for (char operation : operations.toCharArray()) {
+            recorders[operation] = new Recorder(DIGITS);
+            histograms[operation] = new Histogram(DIGITS);
+            rejected[operation] = new LongAdder();
+            failed[operation] = new LongAdder();
+        }
+    }
+
+    void record(char operation, Outcome outcome, long latencyNanos) {
+        recorders[operation].recordValue(latencyNanos / 1000);
+        if (outcome == Outcome.REJECTED) {
+            rejected[operation].increment();
+            intervalRejected.increment();
+        } else if (outcome == Outcome.FAILED) {
+            failed[operation].increment();
+            intervalFailed.increment();
+        }
+    }
+
+    void acknowledged(char operation, long amount) {
+        switch (operation) {
+            case TransactionService.DEPOSIT, TransactionService.RECEIVE_MONEY -> {
+                netInflow.add(amount);
+                acknowledgedRows.increment();
+            }
+            case TransactionService.WITHDRAWAL -> {
+                netInflow.add(-amount);
+                acknowledgedRows.increment();
+            }
+            // saatja ja saaja rida
+            case TransactionService.SEND_MONEY -> acknowledgedRows.add(2);
+            case TransactionService.NEW_ACCOUNT -> acknowledgedRows.increment();
+            default -> throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    void unknownOutcome() {
+        unknownOutcomes.increment();
+    }
+
+    long netInflow() {
+        return netInflow.sum();
+    }
+
+    long acknowledgedRows() {
+        return acknowledgedRows.sum();
+    }
+
+    long unknownOutcomes() {
+        return unknownOutcomes.sum();
+    }
+
+    // üks rida iga aruande vahemiku kohta, et pikal jooksul oleks näha, kas midagi aja jooksul halveneb
+    void printInterval(long elapsedNanos, long intervalNanos) {
+        Histogram interval = new Histogram(DIGITS);
+        for (char operation : operations.toCharArray()) {
+            Histogram histogram = recorders[operation].getIntervalHistogram();
+            histograms[operation].add(histogram);
+            interval.add(histogram);
+        }
+        long requests = interval.getTotalCount();
+        System.out.printf("%6.0f s %10.0f req/s  p50 %8.2f ms  p99 %8.2f ms  rejected %5.1f %%  failed %d%n",
+                elapsedNanos / 1e9, requests / (intervalNanos / 1e9),
+                millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+                percent(intervalRejected.sumThenReset(), requests), intervalFailed.sumThenReset());
+    }
+
+    void printSummary(long durationNanos) {
+        Histogram all = new Histogram(DIGITS);
+        long allRejected = 0;
+        long allFailed = 0;
+        System.out.printf("%n%-4s %10s %10s %9s %8s %9s %9s %9s %9s %9s%n",
+                "op", "requests", "req/s", "rejected", "failed", "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (char operation : operations.toCharArray()) {
+            Histogram histogram = histograms[operation];
+            histogram.add(recorders[operation].getIntervalHistogram());
+            if (histogram.getTotalCount() > 0) {
+                printRow(String.valueOf(operation), histogram, rejected[operation].sum(), failed[operation].sum(), durationNanos);
+                all.add(histogram);
+                allRejected += rejected[operation].sum();
+                allFailed += failed[operation].sum();
+            }
+        }
+        printRow("all", all, allRejected, allFailed, durationNanos);
+    }
+
+    private static void printRow(String operation, Histogram histogram, long rejected, long failed, long durationNanos) {
+        long requests = histogram.getTotalCount();
+        System.out.printf("%-4s %10d %10.0f %7.1f %% %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                operation, requests, requests / (durationNanos / 1e9), percent(rejected, requests), failed,
+                histogram.getMean() / 1000, millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0 : 100.0 * count / total;
+    }
+}
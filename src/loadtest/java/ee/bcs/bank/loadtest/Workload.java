@@ -0,0 +1,72 @@
+package ee.bcs.bank.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Valib järgmise tehingu tüübi segu järgi ja konto Zipfi jaotuse järgi: konto i (alates 0) tõenäosus on
+// võrdeline 1 / (i + 1)^skew, seega väikese indeksiga kontod on "kuumad". Juhuslikkus tuleb kasutaja enda
+// SplittableRandom-ist, jaotused ise on ainult loetavad ja kõigi kasutajate vahel jagatud.
+final class Workload {
+
+    private final char[] operations;
+    private final int[] cumulativeWeights;
+    private final double[] cumulativeAccounts;
+    private final int accounts;
+    private final long maxAmount;
+
+    Workload(LoadConfig config) {
+        operations = new char[config.mix.size()];
+        cumulativeWeights = new int[config.mix.size()];
+        int index = 0;
+        int total = 0;
+        for (Map.Entry<Character, Integer> operation : config.mix.entrySet()) {
+            total += operation.getValue();
+            operations[index] = operation.getKey();
+            cumulativeWeights[index++] = total;
+        }
+
+        accounts = config.accounts;
+        maxAmount = config.maxAmount;
+        if (config.skew == 0) {
+            cumulativeAccounts = null;
+        } else {
+            cumulativeAccounts = new double[accounts];
+            double sum = 0;
+            for (int i = 0; i < accounts; i++) {
+                sum += 1 / Math.pow(i + 1, config.skew);
+                cumulativeAccounts[i] = sum;
+            }
+            for (int i = 0; i < accounts; i++) {
+                cumulativeAccounts[i] /= sum;
+            }
+        }
+    }
+
+    char nextOperation(SplittableRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = 0;
+        while (cumulativeWeights[index] <= value) {
+            index++;
+        }
+        return operations[index];
+    }
+
+    int nextAccount(SplittableRandom random) {
+        if (cumulativeAccounts == null) {
+            return random.nextInt(accounts);
+        }
+        int index = Arrays.binarySearch(cumulativeAccounts, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, accounts - 1);
+    }
+
+    // teine konto kui account, sama jaotusega
+    int nextOtherAccount(SplittableRandom random, int account) {
+        int other = nextAccount(random);
+        return other != account ? other : (other + 1) % accounts;
+    }
+
+    long nextAmount(SplittableRandom random) {
+        return random.nextLong(maxAmount) + 1;
+    }
+}
@@ -1,9 +1,20 @@
 package ee.bcs.bank;
 
+import io.swagger.v3.oas.annotations.OpenAPIDefinition;
+import io.swagger.v3.oas.annotations.info.Info;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 
-@SpringBootApplication
+// andmebaasi ühendus luuakse ainult bank.persistence=jdbc korral, vt JdbcPersistenceConfiguration.
+// API versioon 2: summad on long-id valuuta väikseimates ühikutes, versioonis 1 olid need int-id ilma valuuta ja ühikuta
+@SpringBootApplication(exclude = DataSourceAutoConfiguration.class)
+@OpenAPIDefinition(info = @Info(title = "Bank", version = "2", description = """
+		All money fields (amount, balance, volume, deposits, withdrawals) are JSON integers in the minor units \
+		of the account currency, e.g. cents for EUR: 12345 with currency EUR is 123.45 EUR. Version 1 of this API \
+		sent 32-bit integers with no currency and no defined unit. Values are 64-bit signed integers; JavaScript \
+		numbers are exact only up to 9007199254740991, so clients that can receive larger values must parse them \
+		as big integers. A transaction that would take a balance past the 64-bit range is rejected."""))
 public class BankApplication {
 
 	public static void main(String[] args) {
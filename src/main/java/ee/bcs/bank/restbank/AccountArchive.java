@@ -0,0 +1,344 @@
+package ee.bcs.bank.restbank;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Suletud kontode külm salvestus. Kui konto on olnud suletud kauem kui bank.archive.closed-for, kirjutab
+// taustatöö selle koos tehingutega arhiivi segmenti ja eemaldab tombstone-i ning tema indeksi mälust.
+// Segment archive-N.gz koosneb gzip-liikmetest, üks konto kohta (JournalRecords kirjed), ja archive-N.idx on
+// kontode id-d koos liikme algusega failis. Segment loetakse valmis, kui .idx on olemas, seega katkenud
+// töö jätab konto lihtsalt tombstone-iks ja järgmine töö kirjutab selle uuesti.
+// Arhiveeritud konto väljavõte loetakse arhiivist alles siis, kui seda küsitakse. Tehingute read on TransactionStore-is
+// reanumbri järgi (tehingu id), neid sealt ükshaaval ei eemaldata. Sama töö kirjutab hoopis kõik vanad täis segmendid
+// peale viimase bank.archive.hot-segments segmendi pakituna kettale ja vabastab nende mälu (TransactionStore.freeze).
+@Slf4j
+@Service
+public class AccountArchive {
+
+    private static final Pattern SEGMENT_INDEX_FILE = Pattern.compile("archive-(\\d+)\\.idx");
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${bank.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${bank.archive.directory:data/archive}")
+    private String directoryName;
+
+    @Value("${bank.archive.closed-for:30d}")
+    private Duration closedFor;
+
+    @Value("${bank.archive.interval:1h}")
+    private Duration interval;
+
+    @Value("${bank.archive.cached-statements:100}")
+    private int cachedStatements;
+
+    @Value("${bank.archive.hot-segments:2}")
+    private int hotSegments;
+
+    @Resource
+    private Bank bank;
+
+    // püsisalvestus taastab panga enne, kui arhiiv arhiveeritud kontod mälust eemaldab
+    @Resource
+    private BankPersistence bankPersistence;
+
+    // arhiveeritud konto asukoht: (segment + 1) << 40 | liikme algus failis, 0 = pole arhiivis
+    private final AccountCounters locations = new AccountCounters();
+    private Map<Integer, ArchivedAccount> statementCache;
+    private Path directory;
+    private int nextSegment;
+    private ScheduledExecutorService compactor;
+    private final ReentrantLock compactLock = new ReentrantLock();
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(directoryName);
+        Files.createDirectories(directory);
+        statementCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ArchivedAccount> eldest) {
+                return size() > cachedStatements;
+            }
+        });
+
+        int accounts = 0;
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_INDEX_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    int segment = Integer.parseInt(matcher.group(1));
+                    accounts += loadSegmentIndex(file, segment);
+                    nextSegment = Math.max(nextSegment, segment + 1);
+                }
+            }
+        }
+        log.info("Loaded account archive {} with {} accounts", directory, accounts);
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bank-archive-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (compactor != null) {
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    public boolean contains(int accountId) {
+        return enabled && locations.get(accountId) != 0;
+    }
+
+    // Viib piisavalt kaua suletud olnud kontod arhiivi ja tagastab nende arvu, seejärel vanad tehingute segmendid kettale.
+    public int compact() throws IOException {
+        compactLock.lock();
+        try {
+            if (!enabled) {
+                return 0;
+            }
+            int archived = archiveClosedAccounts();
+            int frozen = bank.getTransactionStore().freeze(hotSegments);
+            if (frozen > 0) {
+                log.info("Moved {} transaction segments to cold storage", frozen);
+            }
+            return archived;
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    private int archiveClosedAccounts() throws IOException {
+        LocalDateTime closedBefore = LocalDateTime.now().minus(closedFor);
+        List<AccountDto> closedAccounts = new ArrayList<>();
+        for (AccountDto account : bank.getAccountRepository().findAllClosed()) {
+            if (contains(account.getId())) {
+                // arhiveeriti juba enne taaskäivitust, tombstone tuli püsisalvestusest tagasi
+                purge(account.getId());
+            } else if (!account.getClosedAt().isAfter(closedBefore)) {
+                closedAccounts.add(account);
+            }
+        }
+        if (closedAccounts.isEmpty()) {
+            return 0;
+        }
+
+        int segment = nextSegment++;
+        Path segmentFile = directory.resolve("archive-" + segment + ".gz");
+        Path indexFile = directory.resolve("archive-" + segment + ".idx");
+        Path temporary = directory.resolve("archive-" + segment + ".idx.tmp");
+        long[] offsets = new long[closedAccounts.size()];
+
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            for (int i = 0; i < closedAccounts.size(); i++) {
+                out.flush();
+                offsets[i] = channel.position();
+                writeAccount(out, closedAccounts.get(i));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            for (int i = 0; i < closedAccounts.size(); i++) {
+                out.writeInt(closedAccounts.get(i).getId());
+                out.writeLong(offsets[i]);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (int i = 0; i < closedAccounts.size(); i++) {
+            int accountId = closedAccounts.get(i).getId();
+            locations.set(accountId, (long) (segment + 1) << OFFSET_BITS | offsets[i]);
+            purge(accountId);
+        }
+        log.info("Archived {} closed accounts to {}", closedAccounts.size(), segmentFile);
+        return closedAccounts.size();
+    }
+
+    // arhiveeritud konto väljavõte või null, kui kontot arhiivis pole
+    public BankStatementDto getStatement(int accountId, LocalDateTime from, LocalDateTime to) throws IOException {
+        ArchivedAccount archived = archived(accountId);
+        if (archived == null) {
+            return null;
+        }
+
+        List<TransactionDto> transactions = new ArrayList<>();
+        for (TransactionDto transaction : archived.transactions) {
+            LocalDateTime time = transaction.getLocalDateTime();
+            if ((from == null || !time.isBefore(from)) && (to == null || !time.isAfter(to))) {
+                transactions.add(transaction);
+            }
+        }
+        BankStatementDto bankStatementDto = new BankStatementDto();
+        bankStatementDto.setAccount(archived.account);
+        bankStatementDto.setTransactions(transactions);
+        return bankStatementDto;
+    }
+
+    // arhiveeritud konto suletud kujul või null, kui kontot arhiivis pole
+    public AccountDto getAccount(int accountId) throws IOException {
+        ArchivedAccount archived = archived(accountId);
+        return archived == null ? null : archived.account;
+    }
+
+    private ArchivedAccount archived(int accountId) throws IOException {
+        long location = enabled ? locations.get(accountId) : 0;
+        if (location == 0) {
+            return null;
+        }
+        ArchivedAccount archived = statementCache.get(accountId);
+        if (archived == null) {
+            archived = readAccount((int) (location >>> OFFSET_BITS) - 1, location & OFFSET_MASK);
+            statementCache.put(accountId, archived);
+        }
+        return archived;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.error("Archiving closed accounts failed", e);
+        }
+    }
+
+    // tombstone ja tema read indeksis eemaldatakse, nii et mälus pole suletud kontost enam midagi peale tehingute
+    private void purge(int accountId) {
+        bank.getAccountRepository().purge(accountId);
+        bank.getTransactionIndex().remove(accountId);
+    }
+
+    private int loadSegmentIndex(Path file, int segment) throws IOException {
+        int accounts = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long size = Files.size(file);
+            for (long read = 0; read < size; read += 12) {
+                int accountId = in.readInt();
+                long offset = in.readLong();
+                locations.set(accountId, (long) (segment + 1) << OFFSET_BITS | offset);
+                purge(accountId);
+                accounts++;
+            }
+        }
+        return accounts;
+    }
+
+    // üks gzip-liige: konto suletud kujul ja tema tehingud, iga kirje ees pikkus
+    private void writeAccount(OutputStream out, AccountDto account) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // segmendi fail jääb järgmise konto jaoks lahti
+                flush();
+            }
+        }, BUFFER_SIZE);
+        try (DataOutputStream data = new DataOutputStream(gzip)) {
+            writeRecord(data, JournalRecords.accountClosed(account));
+            TransactionStore transactionStore = bank.getTransactionStore();
+            for (int row : bank.getTransactionIndex().rows(account.getId())) {
+                TransactionDto transaction = transactionStore.get(row);
+                if (transaction != null) {
+                    writeRecord(data, JournalRecords.transaction(transaction));
+                }
+            }
+            data.writeInt(0);
+        }
+    }
+
+    private ArchivedAccount readAccount(int segment, long offset) throws IOException {
+        Path segmentFile = directory.resolve("archive-" + segment + ".gz");
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream member = new GZIPInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE), BUFFER_SIZE);
+            DataInputStream data = new DataInputStream(member);
+
+            ArchivedAccount archived = new ArchivedAccount();
+            DataInputStream record = readRecord(data);
+            archived.account = JournalRecords.readAccount(record, record.readByte());
+            for (record = readRecord(data); record != null; record = readRecord(data)) {
+                record.readByte();
+                archived.transactions.add(JournalRecords.readTransaction(record, record.readInt()));
+            }
+            return archived;
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+        out.writeInt(record.length);
+        out.write(record);
+    }
+
+    // järgmine kirje või null liikme lõpus. Liikme lõpp on 0-pikkusega kirje, sest GZIPInputStream loeks
+    // muidu edasi järgmise konto liikmesse
+    private static DataInputStream readRecord(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        in.readFully(record);
+        return new DataInputStream(new ByteArrayInputStream(record));
+    }
+
+    private static final class ArchivedAccount {
+
+        private AccountDto account;
+        private final List<TransactionDto> transactions = new ArrayList<>();
+    }
+}
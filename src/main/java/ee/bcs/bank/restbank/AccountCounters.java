@@ -0,0 +1,40 @@
+package ee.bcs.bank.restbank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Üks long iga konto id kohta. Mälu võetakse 64k konto kaupa alles siis, kui sinna kirjutatakse,
+// nii et miljonite kontode juures on see 8 baiti konto kohta ja lugemine ei vaja lukku.
+public class AccountCounters {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_COUNT = 1 << (31 - CHUNK_BITS);
+
+    private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(CHUNK_COUNT);
+
+    // konto väärtus, kirjutamata konto puhul 0
+    public long get(int accountId) {
+        AtomicLongArray chunk = chunks.get(accountId >>> CHUNK_BITS);
+        return chunk == null ? 0 : chunk.get(accountId & CHUNK_MASK);
+    }
+
+    public void set(int accountId, long value) {
+        chunk(accountId).set(accountId & CHUNK_MASK, value);
+    }
+
+    public boolean compareAndSet(int accountId, long expected, long value) {
+        return chunk(accountId).compareAndSet(accountId & CHUNK_MASK, expected, value);
+    }
+
+    private AtomicLongArray chunk(int accountId) {
+        int index = accountId >>> CHUNK_BITS;
+        AtomicLongArray chunk = chunks.get(index);
+        if (chunk == null) {
+            chunks.compareAndSet(index, null, new AtomicLongArray(CHUNK_SIZE));
+            chunk = chunks.get(index);
+        }
+        return chunk;
+    }
+}
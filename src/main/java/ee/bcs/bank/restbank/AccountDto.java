@@ -3,6 +3,8 @@ package ee.bcs.bank.restbank;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.LocalDateTime;
+
 @Setter
 @Getter
 
@@ -12,7 +14,24 @@ public class AccountDto {
     private String accountNumber;
     private String firstName;
     private String lastName;
-    private Integer balance;
+    // väikseimates ühikutes, vt Money
+    private long balance;
+    private String currency;
     private Boolean locked;
+    // suletud konto (tombstone) sulgemise aeg, avatud kontol null
+    private LocalDateTime closedAt;
 
+    // koopia selle hetke seisuga, et seda saaks hiljem ilma konto lukuta lugeda
+    public AccountDto copy() {
+        AccountDto copy = new AccountDto();
+        copy.setId(id);
+        copy.setAccountNumber(accountNumber);
+        copy.setFirstName(firstName);
+        copy.setLastName(lastName);
+        copy.setBalance(balance);
+        copy.setCurrency(currency);
+        copy.setLocked(locked);
+        copy.setClosedAt(closedAt);
+        return copy;
+    }
 }
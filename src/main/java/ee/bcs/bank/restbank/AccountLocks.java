@@ -0,0 +1,140 @@
+package ee.bcs.bank.restbank;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+// Kontode lukud triipudena: konto lukk on locks[id & MASK]. Ühe kirjutajaga pangas (bank.engine=sequencer)
+// asendab kõik triibud üks writerLock, mida täitja lõim hoiab terve käskude partii jooksul.
+public class AccountLocks {
+
+    private static final int STRIPES = 1024;
+    private static final int MASK = STRIPES - 1;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    // null, kuni pank kasutab triipe
+    private volatile ReentrantLock writerLock;
+
+    // saab teada, mitu nanosekundit tuli kinni oleva luku järel oodata
+    private volatile LongConsumer contentionListener = waitNanos -> {
+    };
+
+    public AccountLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public void setContentionListener(LongConsumer contentionListener) {
+        this.contentionListener = contentionListener;
+    }
+
+    // Lülitab panga ühe kirjutaja lukule. Kutsutakse käivitamisel, kui ükski lõim ei hoia veel ühtegi triipu.
+    public void useWriterLock() {
+        writerLock = new ReentrantLock();
+    }
+
+    // ühe kirjutaja lukk terve partii jaoks, partii käskude enda lukustamine on siis korduv võtmine ilma CAS-ita
+    public void lockWriter() {
+        acquire(writerLock);
+    }
+
+    public void unlockWriter() {
+        writerLock.unlock();
+    }
+
+    public void lock(int accountId) {
+        ReentrantLock writer = writerLock;
+        acquire(writer != null ? writer : locks[stripe(accountId)]);
+    }
+
+    public void unlock(int accountId) {
+        ReentrantLock writer = writerLock;
+        (writer != null ? writer : locks[stripe(accountId)]).unlock();
+    }
+
+    // kahe konto lukud võetakse alati kasvavas järjekorras, et vältida deadlocki
+    public void lockBoth(int firstAccountId, int secondAccountId) {
+        ReentrantLock writer = writerLock;
+        if (writer != null) {
+            acquire(writer);
+            return;
+        }
+        int first = stripe(firstAccountId);
+        int second = stripe(secondAccountId);
+        if (first == second) {
+            acquire(locks[first]);
+            return;
+        }
+        acquire(locks[Math.min(first, second)]);
+        acquire(locks[Math.max(first, second)]);
+    }
+
+    public void unlockBoth(int firstAccountId, int secondAccountId) {
+        ReentrantLock writer = writerLock;
+        if (writer != null) {
+            writer.unlock();
+            return;
+        }
+        int first = stripe(firstAccountId);
+        int second = stripe(secondAccountId);
+        if (first == second) {
+            locks[first].unlock();
+            return;
+        }
+        locks[Math.max(first, second)].unlock();
+        locks[Math.min(first, second)].unlock();
+    }
+
+    // mitme konto lukud võetakse samuti kasvavas järjekorras, iga lukk ainult üks kord
+    public void lockAll(int[] accountIds) {
+        ReentrantLock writer = writerLock;
+        if (writer != null) {
+            acquire(writer);
+            return;
+        }
+        int[] stripes = stripes(accountIds);
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                acquire(locks[stripes[i]]);
+            }
+        }
+    }
+
+    public void unlockAll(int[] accountIds) {
+        ReentrantLock writer = writerLock;
+        if (writer != null) {
+            writer.unlock();
+            return;
+        }
+        int[] stripes = stripes(accountIds);
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    private void acquire(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        contentionListener.accept(System.nanoTime() - start);
+    }
+
+    private int[] stripes(int[] accountIds) {
+        int[] stripes = new int[accountIds.length];
+        for (int i = 0; i < accountIds.length; i++) {
+            stripes[i] = stripe(accountIds[i]);
+        }
+        Arrays.sort(stripes);
+        return stripes;
+    }
+
+    private int stripe(int accountId) {
+        return accountId & MASK;
+    }
+}
@@ -0,0 +1,108 @@
+package ee.bcs.bank.restbank;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+// Kontonumbrid on Eesti IBAN-i kujul: EE + 2 kontrollnumbrit + 2-kohaline pangakood + 14-kohaline konto.
+// Konto osa tuleb konto id-st pööratava segamisega (id * MULTIPLIER + OFFSET) mod 10^14, nii et iga id annab
+// erineva numbri ilma otsimata ja ilma lukuta, kuid järjestikused kontod ei saa järjestikuseid numbreid.
+// Kliendi antud kontonumber peab olema selle panga kehtiv IBAN, et sinna tehtud ülekanded jõuaksid siia panka.
+@Component
+public class AccountNumberAllocator {
+
+    public static final String COUNTRY_CODE = "EE";
+
+    private static final int ACCOUNT_DIGITS = 14;
+    private static final long ACCOUNT_MODULUS = 100_000_000_000_000L;
+    // paaritu ja 5-ga jagumatu, seega pööratav mod 10^14; koos id < 2^31 ei tekita korrutis ületäitumist
+    private static final long MULTIPLIER = 2_654_435_761L;
+    private static final long OFFSET = 31_415_926_535_897L;
+    private static final int IBAN_LENGTH = 4 + 2 + ACCOUNT_DIGITS;
+
+    @Value("${bank.code:77}")
+    private String bankCode;
+
+    @Value("${bank.account-number.check-iban:true}")
+    private boolean checkIban;
+
+    public AccountNumberAllocator() {
+    }
+
+    AccountNumberAllocator(String bankCode) {
+        this.bankCode = bankCode;
+        this.checkIban = true;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (bankCode.length() != 2 || !Character.isDigit(bankCode.charAt(0)) || !Character.isDigit(bankCode.charAt(1))) {
+            throw new IllegalStateException("bank.code must be two digits: " + bankCode);
+        }
+    }
+
+    public String getBankCode() {
+        return bankCode;
+    }
+
+    public String accountNumber(int accountId) {
+        long account = (accountId * MULTIPLIER + OFFSET) % ACCOUNT_MODULUS;
+
+        StringBuilder bban = new StringBuilder(IBAN_LENGTH - 4).append(bankCode);
+        String digits = Long.toString(account);
+        for (int i = digits.length(); i < ACCOUNT_DIGITS; i++) {
+            bban.append('0');
+        }
+        bban.append(digits);
+
+        int checkDigits = 98 - mod97(bban, COUNTRY_CODE + "00");
+        return COUNTRY_CODE + (checkDigits < 10 ? "0" : "") + checkDigits + bban;
+    }
+
+    // kliendi antud kontonumbri viga või null
+    public String checkClientNumber(String accountNumber) {
+        if (!checkIban) {
+            return null;
+        }
+        if (!isValidIban(accountNumber)) {
+            return "Account number " + accountNumber + " is not a valid IBAN";
+        }
+        if (!accountNumber.startsWith(bankCode, 4)) {
+            return "Account number " + accountNumber + " does not belong to bank " + bankCode;
+        }
+        return null;
+    }
+
+    public static boolean isValidIban(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() != IBAN_LENGTH || !accountNumber.startsWith(COUNTRY_CODE)) {
+            return false;
+        }
+        for (int i = 2; i < IBAN_LENGTH; i++) {
+            if (!Character.isDigit(accountNumber.charAt(i))) {
+                return false;
+            }
+        }
+        return mod97(accountNumber.substring(4), accountNumber.substring(0, 4)) == 1;
+    }
+
+    // kehtiva IBAN-i pangakood, muidu null
+    public static String bankCodeOf(String accountNumber) {
+        return isValidIban(accountNumber) ? accountNumber.substring(4, 6) : null;
+    }
+
+    // ISO 13616: riigikood ja kontrollnumbrid tõstetakse lõppu, tähed asendatakse numbritega (A = 10)
+    private static int mod97(CharSequence bban, String countryAndCheck) {
+        int remainder = 0;
+        for (int i = 0; i < bban.length(); i++) {
+            remainder = (remainder * 10 + (bban.charAt(i) - '0')) % 97;
+        }
+        for (int i = 0; i < countryAndCheck.length(); i++) {
+            char c = countryAndCheck.charAt(i);
+            remainder = Character.isLetter(c)
+                    ? (remainder * 100 + (c - 'A' + 10)) % 97
+                    : (remainder * 10 + (c - '0')) % 97;
+        }
+        return remainder;
+    }
+}
@@ -0,0 +1,299 @@
+package ee.bcs.bank.restbank;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Suletud konto jääb oma id kohale alles (tombstone, closedAt != null), et tema tehingud ja väljavõte oleksid
+// id järgi leitavad, kuni AccountArchive selle külma salvestusse viib. findById, findByNumber, findAll ja size
+// näevad ainult avatud kontosid, suletud konto number vabaneb kohe.
+public class AccountRepository {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // omaniku nime indeksi ehitamisel lisatakse kontod korraga nii mitme kaupa
+    private static final int OWNER_NAMES_CHUNK = 1024;
+
+    // kontod on indekseeritud otse id järgi, id-d jagatakse järjest alates 1-st
+    private volatile AtomicReferenceArray<AccountDto> accountsById = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private final Map<String, AccountDto> accountsByNumber = new ConcurrentHashMap<>();
+    // avatud kontode id-d järjestatult: lehekülgede kaupa lugemine ei pea käima läbi suletud ja arhiveeritud kontode id-sid
+    private final NavigableSet<Integer> openIds = new ConcurrentSkipListSet<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AccountLocks locks = new AccountLocks();
+    // muutvad meetodid on writeLock-i all, lugemine käib lukuta
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Omaniku nime indeks luuakse esimese otsinguga, enne seda ei maksa kontode muutmine selle eest midagi.
+    // Indeks avaldatakse tühjana writeLock-i all ja sellest hetkest hoiavad seda ajakohasena kõik muutvad meetodid,
+    // olemasolevad kontod lisab otsija ilma writeLock-ita. Ühe konto kirjed indeksis muudetakse tema konto luku all
+    // (vt updateOwner), uus konto lisatakse indeksisse enne, kui see id järgi leitav on.
+    private volatile OwnerNameIndex ownerNames;
+    private volatile boolean ownerNamesReady;
+    // indeksi ehitamist ootavad ainult otsijad
+    private final ReentrantLock ownerNamesBuildLock = new ReentrantLock();
+
+    public boolean add(AccountDto accountDto) {
+        writeLock.lock();
+        try {
+            if (accountDto.getAccountNumber() != null
+                    && accountsByNumber.putIfAbsent(accountDto.getAccountNumber(), accountDto) != null) {
+                return false;
+            }
+            int accountId = accountDto.getId();
+            AtomicReferenceArray<AccountDto> accounts = accountsById;
+            if (accountId >= accounts.length()) {
+                accounts = grow(accounts, accountId + 1);
+            }
+            AccountDto previous = accounts.get(accountId);
+            boolean replacesOpen = previous != null && previous.getClosedAt() == null;
+            OwnerNameIndex index = ownerNames;
+            if (index != null) {
+                if (replacesOpen) {
+                    index.remove(previous.getLastName(), accountId);
+                }
+                index.add(accountDto);
+            }
+            accounts.set(accountId, accountDto);
+            if (!replacesOpen) {
+                size.incrementAndGet();
+                openIds.add(accountId);
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean existsById(int accountId) {
+        return findById(accountId) != null;
+    }
+
+    public AccountDto findById(int accountId) {
+        AccountDto account = slot(accountId);
+        return account == null || account.getClosedAt() != null ? null : account;
+    }
+
+    // suletud konto, mis pole veel arhiivis, või null
+    public AccountDto findClosedById(int accountId) {
+        AccountDto account = slot(accountId);
+        return account == null || account.getClosedAt() == null ? null : account;
+    }
+
+    public boolean existsByNumber(String accountNumber) {
+        return findByNumber(accountNumber) != null;
+    }
+
+    public AccountDto findByNumber(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        return accountsByNumber.get(accountNumber);
+    }
+
+    // Kutsuja hoiab konto lukku (AccountLocks), writeLock-i pole vaja: sulgemine käib sama luku all ja
+    // indeksit ehitav otsija võtab konto lisamiseks samuti selle luku
+    public void updateOwner(AccountDto account, String firstName, String lastName) {
+        OwnerNameIndex index = ownerNames;
+        boolean indexed = index != null && findById(account.getId()) == account;
+        if (indexed) {
+            index.remove(account.getLastName(), account.getId());
+        }
+        account.setFirstName(firstName);
+        account.setLastName(lastName);
+        if (indexed) {
+            index.add(account);
+        }
+    }
+
+    // avatud kontod omaniku nime järgi, vt OwnerNameIndex.find
+    public List<AccountDto> findByOwner(String lastName, boolean lastNamePrefix, String firstName, boolean firstNamePrefix,
+                                        int limit) {
+        OwnerNameIndex index = ownerNamesReady ? ownerNames : buildOwnerNames();
+        return index.find(lastName, lastNamePrefix, firstName, firstNamePrefix, limit);
+    }
+
+    public void remove(AccountDto account) {
+        writeLock.lock();
+        try {
+            int accountId = account.getId();
+            if (findById(accountId) != account) {
+                return;
+            }
+            accountsById.set(accountId, null);
+            size.decrementAndGet();
+            openIds.remove(accountId);
+            if (account.getAccountNumber() != null) {
+                accountsByNumber.remove(account.getAccountNumber(), account);
+            }
+            OwnerNameIndex index = ownerNames;
+            if (index != null) {
+                index.remove(account.getLastName(), accountId);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // konto jääb tombstone-ina id kohale, tehinguid sellega enam teha ei saa
+    public void close(AccountDto account, LocalDateTime closedAt) {
+        writeLock.lock();
+        try {
+            if (findById(account.getId()) != account) {
+                return;
+            }
+            account.setClosedAt(closedAt);
+            size.decrementAndGet();
+            openIds.remove(account.getId());
+            if (account.getAccountNumber() != null) {
+                accountsByNumber.remove(account.getAccountNumber(), account);
+            }
+            OwnerNameIndex index = ownerNames;
+            if (index != null) {
+                index.remove(account.getLastName(), account.getId());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // taastamisel: suletud konto lisatakse ainult id järgi, tema number võib olla juba uue konto oma
+    public void addClosed(AccountDto account) {
+        writeLock.lock();
+        try {
+            int accountId = account.getId();
+            AccountDto existing = slot(accountId);
+            if (existing != null && existing.getClosedAt() == null) {
+                close(existing, account.getClosedAt());
+                return;
+            }
+            AtomicReferenceArray<AccountDto> accounts = accountsById;
+            if (accountId >= accounts.length()) {
+                accounts = grow(accounts, accountId + 1);
+            }
+            accounts.set(accountId, account);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // arhiveeritud tombstone eemaldatakse mälust
+    public void purge(int accountId) {
+        writeLock.lock();
+        try {
+            if (findClosedById(accountId) != null) {
+                accountsById.set(accountId, null);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public List<AccountDto> findAll() {
+        AtomicReferenceArray<AccountDto> accounts = accountsById;
+        List<AccountDto> result = new ArrayList<>(size.get());
+        for (int i = 0; i < accounts.length(); i++) {
+            AccountDto account = accounts.get(i);
+            if (account != null && account.getClosedAt() == null) {
+                result.add(account);
+            }
+        }
+        return result;
+    }
+
+    // avatud kontod id järgi kasvavas järjekorras, id suurem kui afterId, kõige rohkem limit tükki
+    public List<AccountDto> findAfter(int afterId, int limit) {
+        List<AccountDto> result = new ArrayList<>();
+        for (Iterator<Integer> ids = openIds.tailSet(afterId, false).iterator(); ids.hasNext() && result.size() < limit; ) {
+            AccountDto account = findById(ids.next());
+            if (account != null) {
+                result.add(account);
+            }
+        }
+        return result;
+    }
+
+    public List<AccountDto> findAllClosed() {
+        AtomicReferenceArray<AccountDto> accounts = accountsById;
+        List<AccountDto> result = new ArrayList<>();
+        for (int i = 0; i < accounts.length(); i++) {
+            AccountDto account = accounts.get(i);
+            if (account != null && account.getClosedAt() != null) {
+                result.add(account);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public AccountLocks getLocks() {
+        return locks;
+    }
+
+    // Kontod lisatakse indeksisse id järjekorras, igaüks oma konto luku all ja ainult siis, kui see on veel avatud.
+    // Pärast indeksi avaldamist lisatud, suletud või ümber nimetatud kontod on indeksis juba muutvate meetodite kaudu
+    private OwnerNameIndex buildOwnerNames() {
+        ownerNamesBuildLock.lock();
+        try {
+            if (ownerNamesReady) {
+                return ownerNames;
+            }
+            writeLock.lock();
+            try {
+                ownerNames = new OwnerNameIndex();
+            } finally {
+                writeLock.unlock();
+            }
+            OwnerNameIndex index = ownerNames;
+            int afterId = 0;
+            for (List<AccountDto> chunk = findAfter(afterId, OWNER_NAMES_CHUNK); !chunk.isEmpty();
+                 chunk = findAfter(afterId, OWNER_NAMES_CHUNK)) {
+                for (AccountDto account : chunk) {
+                    locks.lock(account.getId());
+                    try {
+                        if (findById(account.getId()) == account) {
+                            index.add(account);
+                        }
+                    } finally {
+                        locks.unlock(account.getId());
+                    }
+                }
+                afterId = chunk.get(chunk.size() - 1).getId();
+            }
+            ownerNamesReady = true;
+            return index;
+        } finally {
+            ownerNamesBuildLock.unlock();
+        }
+    }
+
+    private AccountDto slot(int accountId) {
+        AtomicReferenceArray<AccountDto> accounts = accountsById;
+        if (accountId < 0 || accountId >= accounts.length()) {
+            return null;
+        }
+        return accounts.get(accountId);
+    }
+
+    private AtomicReferenceArray<AccountDto> grow(AtomicReferenceArray<AccountDto> accounts, int minCapacity) {
+        int capacity = accounts.length();
+        while (capacity < minCapacity) {
+            capacity *= 2;
+        }
+        AtomicReferenceArray<AccountDto> grown = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < accounts.length(); i++) {
+            grown.set(i, accounts.get(i));
+        }
+        accountsById = grown;
+        return grown;
+    }
+}
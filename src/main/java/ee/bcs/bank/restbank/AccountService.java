@@ -2,12 +2,26 @@ package ee.bcs.bank.restbank;
 
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Random;
+import jakarta.annotation.Resource;
 
 @Service
 public class AccountService {
 
+    @Resource
+    private BankPersistence bankPersistence;
+
+    @Resource
+    private LedgerMetrics ledgerMetrics;
+
+    @Resource
+    private ChangeFeed changeFeed;
+
+    @Resource
+    private BankClock bankClock;
+
+    @Resource
+    private AccountNumberAllocator accountNumberAllocator;
+
     // TODO: loo teenus createExampleAccount() mis loob uue AccountDto objekti:
     //  account number = random account number
     //  firstName "John"
@@ -15,123 +29,143 @@ public class AccountService {
     //  balance 0
     //  locked false
 
-    public AccountDto createExampleAccount() {
+    // näidise kontonumber on see, mille saaks järgmine loodav konto
+    public AccountDto createExampleAccount(Bank bank) {
         AccountDto accountDto = new AccountDto();
-        accountDto.setAccountNumber(createRandomAccountNumber());
+        accountDto.setAccountNumber(accountNumberAllocator.accountNumber(bank.getAccountIdCount()));
         accountDto.setFirstName("Juss");
         accountDto.setLastName("Kolm");
         accountDto.setBalance(0);
+        accountDto.setCurrency(Money.DEFAULT_CURRENCY);
         accountDto.setLocked(false);
 
         return accountDto;
     }
 
-    private String createRandomAccountNumber() {
-        //  Creates random account number between EE1000 -  EE9999
-        Random random = new Random();
-        return "EE" + (random.nextInt(9999) + 1000);
+    public boolean accountIdExists(AccountRepository accounts, int accountId) {
+        return accounts.existsById(accountId);
     }
 
-    public boolean accountIdExists(List<AccountDto> accounts, int accountId) {
-        for (AccountDto account : accounts) {
-            if (account.getId() == accountId) {
-                return true;
-            }
-        }
-
-        return false;
-
+    public AccountDto getAccountById(AccountRepository accounts, int accountId) {
+        return accounts.findById(accountId);
     }
 
-    public AccountDto getAccountById(List<AccountDto> accounts, int accountId) {
-        //käime läbi kõik kontod accounts listsi ja paneme iga konto muutujasse 'account'
-        for (AccountDto account : accounts) {
-            // kui leiame konto mille id on võrdne accountId-ga
-            if (account.getId() == accountId) {
-                //siis tagastame selle konto
-                return account;
-            }
-        }
-        return null;
+    public boolean accountNumberExists(AccountRepository accounts, String receiverAccountNumber) {
+        return accounts.existsByNumber(receiverAccountNumber);
     }
 
-    public boolean accountNumberExists(List<AccountDto> accounts, String receiverAccountNumber) {
-        for (AccountDto account : accounts) {
-            if (account.getAccountNumber().equals((receiverAccountNumber))) {
-                return true;
-            }
-        }
-        return false;
+    public AccountDto getAccountByNumber(AccountRepository accounts, String receiverAccountNumber) {
+        return accounts.findByNumber(receiverAccountNumber);
     }
 
-    public AccountDto getAccountByNumber(List<AccountDto> accounts, String receiverAccountNumber) {
-
-        for (AccountDto account : accounts) {
-            if (account.getAccountNumber().equals((receiverAccountNumber))) {
-                return account;
-            }
-        }
-        return null;
-    }
-
-    public RequestResult updateOwnerDetails(List<AccountDto> accounts, AccountDto accountDto) {
+    public RequestResult updateOwnerDetails(AccountRepository accounts, AccountDto accountDto) {
+        long start = System.nanoTime();
         RequestResult requestResult = new RequestResult();
 
         int accountId = accountDto.getId();
-        if (!accountIdExists(accounts, accountId)) {
-            requestResult.setError("Account ID " + accountId + " does not exist.");
-            requestResult.setAccountId(accountId);
-            return requestResult;
-
+        AccountLocks locks = accounts.getLocks();
+        locks.lock(accountId);
+        try {
+            AccountDto account = getAccountById(accounts, accountId);
+            if (account == null) {
+                return accountDoesNotExist(accountId);
+            }
+            bankPersistence.checkWritable();
+            accounts.updateOwner(account, accountDto.getFirstName(), accountDto.getLastName());
+            bankPersistence.writeAccount(account);
+            changeFeed.account(ChangeFeed.OWNER_UPDATED, account);
+        } finally {
+            locks.unlock(accountId);
         }
-
-        AccountDto account = getAccountById(accounts, accountId);
-        account.setFirstName(accountDto.getFirstName());
-        account.setLastName(accountDto.getLastName());
+        bankPersistence.sync();
 
         requestResult.setAccountId(accountId);
         requestResult.setMessage("Profile updated.");
+        ledgerMetrics.recordAccountOperation("update_owner", start);
+        return requestResult;
+    }
 
+    public RequestResult deleteAccount(AccountRepository accounts, int accountId) {
+        long start = System.nanoTime();
+        RequestResult requestResult = applyDeleteAccount(accounts, accountId);
+        if (requestResult.getError() == null) {
+            bankPersistence.sync();
+            ledgerMetrics.recordAccountOperation("delete", start);
+        }
         return requestResult;
     }
 
-    public RequestResult deleteAccount(List<AccountDto> accounts, int accountId) {
+    // teeb muudatuse ära, kuid ei oota journali sync-i ega salvesta mõõdikut
+    RequestResult applyDeleteAccount(AccountRepository accounts, int accountId) {
         RequestResult requestResult = new RequestResult();
 
-        if (!accountIdExists(accounts, accountId)) {
-            requestResult.setError("Account ID " + accountId + " does not exist.");
-            requestResult.setAccountId(accountId);
-            return requestResult;
+        AccountLocks locks = accounts.getLocks();
+        locks.lock(accountId);
+        try {
+            //konto loetakse luku all, teine samaaegne kustutamine on selle juba sulgenud
+            AccountDto account = getAccountById(accounts, accountId);
+            if (account == null) {
+                return accountDoesNotExist(accountId);
+            }
+            bankPersistence.checkWritable();
+            //konto jääb tombstone-ina alles, AccountArchive viib selle hiljem koos tehingutega arhiivi
+            accounts.close(account, bankClock.now());
+            bankPersistence.writeAccountClosed(account);
+            changeFeed.account(ChangeFeed.ACCOUNT_CLOSED, account);
+        } finally {
+            locks.unlock(accountId);
         }
 
-        AccountDto account = getAccountById(accounts, accountId);
-        accounts.remove(account);
-
         requestResult.setMessage("Account deleted.");
         requestResult.setAccountId(accountId);
         return requestResult;
     }
 
-    public RequestResult updateAccountLockStatus(List<AccountDto> accounts, int accountId) {
-        RequestResult requestResult = new RequestResult();
-        if (!accountIdExists(accounts, accountId)) {
-            requestResult.setError("Account ID " + accountId + " does not exist.");
-            requestResult.setAccountId(accountId);
-            return requestResult;
+    public RequestResult updateAccountLockStatus(AccountRepository accounts, int accountId) {
+        long start = System.nanoTime();
+        RequestResult requestResult = applyAccountLockStatus(accounts, accountId);
+        if (requestResult.getError() == null) {
+            bankPersistence.sync();
+            ledgerMetrics.recordAccountOperation("lock", start);
         }
+        return requestResult;
+    }
 
-        AccountDto account = getAccountById(accounts, accountId);
-        //kui on luks tee lukust lahti, kui ei ole, siis pane lukku
-        if (account.getLocked()) {
-            account.setLocked(false);
-            requestResult.setMessage("Account lock is removed.");
-        } else {
-            account.setLocked(true);
-            requestResult.setMessage("Account is locked.");
+    RequestResult applyAccountLockStatus(AccountRepository accounts, int accountId) {
+        RequestResult requestResult = new RequestResult();
+
+        AccountLocks locks = accounts.getLocks();
+        locks.lock(accountId);
+        try {
+            //suletud kontol lukku enam ei muudeta
+            AccountDto account = getAccountById(accounts, accountId);
+            if (account == null) {
+                return accountDoesNotExist(accountId);
+            }
+            bankPersistence.checkWritable();
+            //kui on luks tee lukust lahti, kui ei ole, siis pane lukku
+            if (account.getLocked()) {
+                account.setLocked(false);
+                requestResult.setMessage("Account lock is removed.");
+            } else {
+                account.setLocked(true);
+                requestResult.setMessage("Account is locked.");
+            }
+            bankPersistence.writeAccount(account);
+            changeFeed.account(ChangeFeed.LOCK_CHANGED, account);
+        } finally {
+            locks.unlock(accountId);
         }
 
         requestResult.setAccountId(accountId);
         return requestResult;
     }
 
+    private static RequestResult accountDoesNotExist(int accountId) {
+        RequestResult requestResult = new RequestResult();
+        requestResult.setError("Account ID " + accountId + " does not exist.");
+        requestResult.setAccountId(accountId);
+        return requestResult;
+    }
+
 }
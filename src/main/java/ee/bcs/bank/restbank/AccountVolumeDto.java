@@ -0,0 +1,15 @@
+package ee.bcs.bank.restbank;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class AccountVolumeDto {
+    private int accountId;
+    private String accountNumber;
+    private String currency;
+    private long count;
+    // kõigi konto tehingute summa väikseimates ühikutes, vt Money
+    private long volume;
+}
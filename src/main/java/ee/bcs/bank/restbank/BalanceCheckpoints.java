@@ -0,0 +1,340 @@
+package ee.bcs.bank.restbank;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Tehingute ridu loetakse järjest läbi ja iga interval rea järel jäetakse meelde kontrollpunkt: panga kohustused
+// valuutade kaupa ja nende kontode saldod, mis pärast eelmist kontrollpunkti muutusid. Iga BASE_EVERY-s kontrollpunkt
+// sisaldab kõigi kontode saldosid, nii et konto saldo leidmiseks tuleb vaadata kõige rohkem BASE_EVERY kontrollpunkti.
+// Hetke T seis = viimane kontrollpunkt, mille kõik read on T-st varasemad, pluss sealt edasi T-ni tehtud read.
+// Ridade aeg ei kasva rangelt, sest kellaaeg loetakse enne rea lisamist ja lõim võib vahepeal seisma jääda. Seepärast
+// loetakse ridu edasi seni, kuni tuleb vahemik, mille read ja kõik sellele järgnevad read on T-st hilisemad.
+// Kontrollpunkte teeb taustatöö iga catch-up-interval järel. Päring ei oota seda: viimase kontrollpunkti järel
+// olevad read loeb päring ise läbi. Rida, mis jääb hiljaks terve vahemiku jagu, on päringutes näha alles siis, kui
+// taustatöö on selle läbi lugenud.
+@Slf4j
+@Service
+public class BalanceCheckpoints {
+
+    private static final int BASE_EVERY = 16;
+
+    @Value("${bank.checkpoints.interval:65536}")
+    private int interval;
+
+    @Value("${bank.checkpoints.catch-up-interval:1s}")
+    private Duration catchUpInterval;
+
+    @Resource
+    private Bank bank;
+
+    @Resource
+    private AccountService accountService;
+
+    @Resource
+    private AccountArchive accountArchive;
+
+    private volatile Checkpoint[] checkpoints = new Checkpoint[0];
+    private ScheduledExecutorService catchUpExecutor;
+
+    // järgmise kontrollpunkti ehitamise seis, muudetakse ainult catchUp-is catchUpLock-i all
+    private final ReentrantLock catchUpLock = new ReentrantLock();
+    private int tailRow;
+    private long[] balances = new long[1024];
+    private int[] touchedIn = new int[1024];
+    private int[] touched = new int[64];
+    private int touchedCount;
+    private final Map<String, Long> totals = new TreeMap<>();
+    private long maxEpochMicros = Long.MIN_VALUE;
+    private long intervalMinEpochMicros = Long.MAX_VALUE;
+
+    public BalanceCheckpoints() {
+    }
+
+    // ilma Springita, taustatööta: kontrollpunkte teeb catchUp()
+    BalanceCheckpoints(Bank bank, int interval) {
+        this.bank = bank;
+        this.interval = interval;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (interval < 1) {
+            throw new IllegalStateException("bank.checkpoints.interval must be positive: " + interval);
+        }
+        catchUpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bank-checkpoints");
+            thread.setDaemon(true);
+            return thread;
+        });
+        catchUpExecutor.scheduleWithFixedDelay(this::catchUpQuietly, catchUpInterval.toMillis(), catchUpInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        catchUpExecutor.shutdown();
+        catchUpExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    // Konto saldo tuleb otse konto tehingute indeksist: viimane rida kuni hetkeni asOf. Arhiveeritud kontol
+    // indeksit enam pole, selle saldo tuleb arhiivist
+    public BalanceDto getAccountBalance(int accountId, LocalDateTime asOf) throws IOException {
+        TransactionStore transactionStore = bank.getTransactionStore();
+        AccountRepository accounts = bank.getAccountRepository();
+        AccountDto account = accountService.getAccountById(accounts, accountId);
+        if (account == null) {
+            account = accounts.findClosedById(accountId);
+        }
+        BalanceDto balanceDto = new BalanceDto();
+        balanceDto.setAccountId(accountId);
+        balanceDto.setAsOf(asOf);
+        BankStatementDto statement = account == null ? accountArchive.getStatement(accountId, null, asOf) : null;
+        if (statement != null) {
+            List<TransactionDto> transactions = statement.getTransactions();
+            balanceDto.setCurrency(statement.getAccount().getCurrency());
+            balanceDto.setBalance(transactions.isEmpty() ? 0 : transactions.get(transactions.size() - 1).getBalance());
+            return balanceDto;
+        }
+
+        int row = bank.getTransactionIndex().lastRow(accountId, TransactionStore.toEpochMicros(asOf), transactionStore);
+        if (row >= 0) {
+            balanceDto.setCurrency(transactionStore.currency(row));
+            balanceDto.setBalance(transactionStore.balance(row));
+        } else if (account != null) {
+            balanceDto.setCurrency(account.getCurrency());
+        } else {
+            balanceDto.setError("Account ID " + accountId + " does not exist.");
+        }
+        return balanceDto;
+    }
+
+    // panga kohustused (kõigi kontode saldode summa) valuutade kaupa hetke asOf seisuga
+    public List<BalanceDto> getTotalBalances(LocalDateTime asOf) {
+        TransactionStore transactionStore = bank.getTransactionStore();
+        long asOfMicros = TransactionStore.toEpochMicros(asOf);
+        Checkpoint[] all = checkpoints;
+
+        int start = findStart(all, asOfMicros);
+        Map<String, Long> result = new TreeMap<>(start < 0 ? Map.of() : all[start].totals);
+        Map<Integer, Long> replayed = new HashMap<>();
+
+        int row = start < 0 ? 0 : all[start].row;
+        int next = start + 1;
+        while (next < all.length && !isAfter(all[next], asOfMicros)) {
+            replay(transactionStore, all, start, row, all[next].row, asOfMicros, result, replayed);
+            row = all[next].row;
+            next++;
+        }
+        if (next == all.length) {
+            replay(transactionStore, all, start, row, transactionStore.committedRows(), asOfMicros, result, replayed);
+        }
+
+        List<BalanceDto> balanceDtos = new ArrayList<>(result.size());
+        for (Map.Entry<String, Long> total : result.entrySet()) {
+            BalanceDto balanceDto = new BalanceDto();
+            balanceDto.setCurrency(total.getKey());
+            balanceDto.setBalance(total.getValue());
+            balanceDto.setAsOf(asOf);
+            balanceDtos.add(balanceDto);
+        }
+        return balanceDtos;
+    }
+
+    // Read [from, to), mille hulgas on kõik read ajavahemikust fromMicros..toMicros. Enne from-i on ainult varasemad
+    // read, alates to-st ainult hilisemad, nii et aruanne ei pea lugema kogu pearaamatut läbi
+    public int[] rowRange(long fromMicros, long toMicros) {
+        Checkpoint[] all = checkpoints;
+        int start = findStart(all, fromMicros - 1);
+        int row = start < 0 ? 0 : all[start].row;
+        int fromRow = row;
+        int next = start + 1;
+        while (next < all.length && !isAfter(all[next], toMicros)) {
+            row = all[next].row;
+            next++;
+        }
+        return new int[]{fromRow, next == all.length ? bank.getTransactionStore().committedRows() : row};
+    }
+
+    public int checkpointCount() {
+        return checkpoints.length;
+    }
+
+    // loeb kõik valmis read kontrollpunktideks, pooliku vahemiku read jäävad järgmiseks korraks
+    public void catchUp() {
+        catchUpLock.lock();
+        try {
+            catchUpRows();
+        } finally {
+            catchUpLock.unlock();
+        }
+    }
+
+    private void catchUpQuietly() {
+        try {
+            catchUp();
+        } catch (RuntimeException e) {
+            log.error("Balance checkpoints catch-up failed", e);
+        }
+    }
+
+    private void catchUpRows() {
+        TransactionStore transactionStore = bank.getTransactionStore();
+        int committed = transactionStore.committedRows();
+        int checkpointNumber = checkpoints.length;
+
+        for (; tailRow < committed; tailRow++) {
+            int row = tailRow;
+            if (transactionStore.contains(row + 1)) {
+                int accountId = transactionStore.accountId(row);
+                long balance = transactionStore.balance(row);
+                ensureCapacity(accountId);
+                totals.merge(transactionStore.currency(row), balance - balances[accountId], Long::sum);
+                balances[accountId] = balance;
+                if (touchedIn[accountId] != checkpointNumber + 1) {
+                    touchedIn[accountId] = checkpointNumber + 1;
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = accountId;
+                }
+                long epochMicros = transactionStore.epochMicros(row);
+                maxEpochMicros = Math.max(maxEpochMicros, epochMicros);
+                intervalMinEpochMicros = Math.min(intervalMinEpochMicros, epochMicros);
+                lowerLaterMin(epochMicros);
+            }
+            if ((row + 1) % interval == 0) {
+                addCheckpoint(row + 1, checkpointNumber);
+                checkpointNumber++;
+            }
+        }
+    }
+
+    private void addCheckpoint(int row, int checkpointNumber) {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.row = row;
+        checkpoint.maxEpochMicros = maxEpochMicros;
+        checkpoint.laterMinEpochMicros = intervalMinEpochMicros;
+        checkpoint.totals = new TreeMap<>(totals);
+        if (checkpointNumber % BASE_EVERY == 0) {
+            checkpoint.balances = balances.clone();
+        } else {
+            int[] accountIds = Arrays.copyOf(touched, touchedCount);
+            Arrays.sort(accountIds);
+            long[] accountBalances = new long[accountIds.length];
+            for (int i = 0; i < accountIds.length; i++) {
+                accountBalances[i] = balances[accountIds[i]];
+            }
+            checkpoint.accountIds = accountIds;
+            checkpoint.balances = accountBalances;
+        }
+        touchedCount = 0;
+        intervalMinEpochMicros = Long.MAX_VALUE;
+
+        Checkpoint[] grown = Arrays.copyOf(checkpoints, checkpointNumber + 1);
+        grown[checkpointNumber] = checkpoint;
+        checkpoints = grown;
+    }
+
+    // Hilinenud rida: kontrollpunktide laterMinEpochMicros kasvab indeksiga, nii et alandada tuleb ainult lõpust
+    // alates neid, mis on rea ajast suuremad. Tavaliselt ei ole ükski.
+    private void lowerLaterMin(long epochMicros) {
+        Checkpoint[] all = checkpoints;
+        for (int i = all.length - 1; i >= 0 && all[i].laterMinEpochMicros > epochMicros; i--) {
+            all[i].laterMinEpochMicros = epochMicros;
+        }
+    }
+
+    private void ensureCapacity(int accountId) {
+        if (accountId >= balances.length) {
+            int capacity = balances.length;
+            while (capacity <= accountId) {
+                capacity *= 2;
+            }
+            balances = Arrays.copyOf(balances, capacity);
+            touchedIn = Arrays.copyOf(touchedIn, capacity);
+        }
+    }
+
+    // viimane kontrollpunkt, mille kõik read on hiljemalt asOfMicros, või -1
+    private static int findStart(Checkpoint[] all, long asOfMicros) {
+        int low = 0;
+        int high = all.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (all[middle].maxEpochMicros <= asOfMicros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    // kas kontrollpunkti vahemiku ja kõik sellele järgnevad läbi loetud read on hilisemad kui asOfMicros (kui ridu
+    // pole, siis ei ole)
+    private static boolean isAfter(Checkpoint checkpoint, long asOfMicros) {
+        long laterMinEpochMicros = checkpoint.laterMinEpochMicros;
+        return laterMinEpochMicros > asOfMicros && laterMinEpochMicros != Long.MAX_VALUE;
+    }
+
+    private static void replay(TransactionStore transactionStore, Checkpoint[] all, int start, int fromRow, int toRow,
+                               long asOfMicros, Map<String, Long> result, Map<Integer, Long> replayed) {
+        for (int row = fromRow; row < toRow; row++) {
+            if (!transactionStore.contains(row + 1) || transactionStore.epochMicros(row) > asOfMicros) {
+                continue;
+            }
+            int accountId = transactionStore.accountId(row);
+            long balance = transactionStore.balance(row);
+            Long previous = replayed.get(accountId);
+            long previousBalance = previous != null ? previous : balanceAt(all, start, accountId);
+            result.merge(transactionStore.currency(row), balance - previousBalance, Long::sum);
+            replayed.put(accountId, balance);
+        }
+    }
+
+    // konto saldo kontrollpunkti seisuga: muutunud kontode hulgast tagasi kuni täieliku kontrollpunktini
+    private static long balanceAt(Checkpoint[] all, int checkpoint, int accountId) {
+        for (int i = checkpoint; i >= 0; i--) {
+            Checkpoint candidate = all[i];
+            if (candidate.accountIds == null) {
+                return accountId < candidate.balances.length ? candidate.balances[accountId] : 0;
+            }
+            int position = Arrays.binarySearch(candidate.accountIds, accountId);
+            if (position >= 0) {
+                return candidate.balances[position];
+            }
+        }
+        return 0;
+    }
+
+    private static final class Checkpoint {
+
+        // read enne seda on kontrollpunktis
+        private int row;
+        private long maxEpochMicros;
+        // vahemiku ja kõigi järgnevate läbi loetud ridade vähim aeg, catchUp alandab seda hilinenud rea korral
+        private volatile long laterMinEpochMicros;
+        private Map<String, Long> totals;
+        // täieliku kontrollpunkti korral null ja balances on konto id järgi
+        private int[] accountIds;
+        private long[] balances;
+    }
+}
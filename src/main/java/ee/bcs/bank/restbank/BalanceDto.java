@@ -0,0 +1,18 @@
+package ee.bcs.bank.restbank;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// konto või kogu panga (accountId puudub) saldo mingi hetke seisuga
+@Getter
+@Setter
+public class BalanceDto {
+    private Integer accountId;
+    private String currency;
+    // väikseimates ühikutes, vt Money
+    private long balance;
+    private LocalDateTime asOf;
+    private String error;
+}
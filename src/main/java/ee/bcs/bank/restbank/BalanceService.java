@@ -5,7 +5,7 @@ import org.springframework.stereotype.Service;
 @Service
 public class BalanceService {
 
-    public boolean enoughMoneyOnAccount(Integer balance, Integer amount) {
-            return balance >= amount;
+    public boolean enoughMoneyOnAccount(long balance, long amount) {
+        return balance >= amount;
     }
 }
@@ -1,34 +1,77 @@
 package ee.bcs.bank.restbank;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// iga rakenduse kontekst on oma pank, nii saab ühes JVM-is käivitada mitu panka
+@Component
 @Setter
 @Getter
 public class Bank {
-    private List<AccountDto> accounts = new ArrayList<>();
-    private int accountIdCount = 1;
+    @JsonIgnore
+    private AccountRepository accountRepository = new AccountRepository();
+    private final AtomicInteger accountIdCount = new AtomicInteger(1);
 
-    private List<TransactionDto> transactions = new ArrayList<>();
-    private int  transactionIdCount = 1;
+    @JsonIgnore
+    private final TransactionIndex transactionIndex = new TransactionIndex();
 
-    public void incrementAccountId() {
-        accountIdCount++;
+    @JsonIgnore
+    private final TransactionStore transactionStore = new TransactionStore(transactionIndex);
+
+    public List<AccountDto> getAccounts() {
+        return accountRepository.findAll();
+    }
+
+    public int getAccountIdCount() {
+        return accountIdCount.get();
+    }
+
+    public int nextAccountId() {
+        return accountIdCount.getAndIncrement();
+    }
+
+    public void reserveAccountIds(int lastAccountId) {
+        accountIdCount.accumulateAndGet(lastAccountId + 1, Math::max);
+    }
+
+    // false, kui sama kontonumbriga konto on juba olemas
+    public boolean addAccountToAccounts(AccountDto accountDto) {
+        return accountRepository.add(accountDto);
+    }
+
+    public List<TransactionDto> getTransactions() {
+        return transactionStore.asList();
+    }
+
+    // tehingu id antakse tehingute hoidlas, tagastab lisatud tehingu id
+    public int addTransactionToTransactions(TransactionDto transactionDto) {
+        return transactionStore.append(transactionDto);
+    }
+
+    // ülekande mõlemad pooled, lugejad näevad kas mõlemat või kumbagi
+    public int addTransactionsToTransactions(TransactionDto transactionDto, TransactionDto receiverTransactionDto) {
+        return transactionStore.append(transactionDto, receiverTransactionDto);
     }
 
-    public void addAccountToAccounts(AccountDto accountDto) {
-        accounts.add(accountDto);
+    // kõigi kontode ja tehingute järjepidev vaade viimase valmis tehingu seisuga
+    public BankSnapshot snapshot() {
+        return new BankSnapshot(this, transactionStore.committedRows());
+    }
 
+    public void restoreTransaction(TransactionDto transactionDto) {
+        transactionStore.restore(transactionDto);
     }
 
-    public void addTransactionToTransactions(TransactionDto transactionDto) {
-        transactions.add(transactionDto);
+    public void reserveTransactionIds(int lastTransactionId) {
+        transactionStore.reserve(lastTransactionId);
     }
 
-    public void incrementTransactionId() {
-        transactionIdCount++;
+    public int getTransactionIdCount() {
+        return transactionStore.nextTransactionId();
     }
 }
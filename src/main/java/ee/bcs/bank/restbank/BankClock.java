@@ -0,0 +1,47 @@
+package ee.bcs.bank.restbank;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Tehingute kellaaeg millisekundi täpsusega, süsteemi ajavööndis nagu LocalDateTime.now().
+// LocalDateTime luuakse ainult siis, kui millisekund on vahetunud, nii et koormuse all jagavad sama millisekundi
+// tehingud ühte objekti ja tehingu tegemine ei loo kellaaja jaoks midagi.
+// Aeg ei lähe kunagi tagasi, ka siis mitte, kui süsteemi kella keeratakse tagasi: uus aeg pannakse paika ainult
+// compareAndSet-iga suuremaks kui eelmine. Kõik pearaamatu kellaajad tulevad siit, et need oleks samas järjekorras
+// tehingutega; TransactionStore hoiab aega mikrosekundites, kuid siit tulevad ainult terved millisekundid.
+@Component
+public class BankClock {
+
+    private final Clock clock;
+    private final AtomicReference<Tick> tick;
+
+    public BankClock() {
+        this(Clock.systemDefaultZone());
+    }
+
+    BankClock(Clock clock) {
+        this.clock = clock;
+        this.tick = new AtomicReference<>(new Tick(Long.MIN_VALUE, LocalDateTime.MIN));
+    }
+
+    public LocalDateTime now() {
+        long millis = clock.millis();
+        while (true) {
+            Tick current = tick.get();
+            if (millis <= current.millis) {
+                return current.localDateTime;
+            }
+            Tick next = new Tick(millis, LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), clock.getZone()));
+            if (tick.compareAndSet(current, next)) {
+                return next.localDateTime;
+            }
+        }
+    }
+
+    private record Tick(long millis, LocalDateTime localDateTime) {
+    }
+}
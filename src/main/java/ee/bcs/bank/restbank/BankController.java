@@ -1,15 +1,28 @@
 package ee.bcs.bank.restbank;
 
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.annotation.Resource;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/solution")
 public class BankController {
 
-    public static Bank bank = new Bank();
-
+    @Resource
+    private Bank bank;
 
     @Resource
     private AccountService accountService;
@@ -20,10 +33,51 @@ public class BankController {
     @Resource
     private BankService bankService;
 
+    @Resource
+    private LedgerStreamService ledgerStreamService;
+
+    @Resource
+    private BankStatementService bankStatementService;
+
+    @Resource
+    private LedgerEngine ledgerEngine;
+
+    @Resource
+    private IdempotencyCache idempotencyCache;
+
+    @Resource
+    private BalanceCheckpoints balanceCheckpoints;
+
+    @Resource
+    private ReportService reportService;
+
+    @Resource
+    private ChangeFeed changeFeed;
+
 
     @GetMapping("/bank")
-    public Bank getBank() {
-        return bank;
+    public BankSnapshot getBank() {
+        return bank.snapshot();
+    }
+
+    @GetMapping(value = "/accounts", produces = LedgerStreamService.NDJSON)
+    public StreamingResponseBody getAccounts(@RequestParam(defaultValue = "0") int afterId,
+                                             @RequestParam(defaultValue = "10000") int limit) {
+        return out -> ledgerStreamService.writeAccounts(bank, afterId, limit, out);
+    }
+
+    @GetMapping(value = "/transactions", produces = LedgerStreamService.NDJSON)
+    public StreamingResponseBody getTransactions(@RequestParam(defaultValue = "0") int afterId,
+                                                 @RequestParam(defaultValue = "10000") int limit) {
+        return out -> ledgerStreamService.writeTransactions(bank, afterId, limit, out);
+    }
+
+    // Muudatuste voog. EventSource jätkab ühenduse katkemisel ise Last-Event-ID päisega,
+    // teised kliendid saavad anda viimase saadud sündmuse id after parameetrina
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                 @RequestParam(required = false) String after) {
+        return changeFeed.subscribe(after != null ? after : lastEventId);
     }
 
     // TODO: et saada üks accounts JSON'i näidis,
@@ -34,7 +88,7 @@ public class BankController {
     @GetMapping("/example/account")
     public AccountDto getExampleAccount() {
 
-        return accountService.createExampleAccount();
+        return accountService.createExampleAccount(bank);
     }
 
     // TODO: et saada üks transaction JSON'i näidis,
@@ -60,39 +114,150 @@ public class BankController {
     }
 
     @PostMapping("/new/transaction")
-    public RequestResult addNewTransaction(@RequestBody TransactionDto transactionDto) {
-        return transactionService.addNewTransaction(bank, transactionDto);
+    public CompletableFuture<RequestResult> addNewTransaction(@RequestBody TransactionDto transactionDto,
+                                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                             HttpServletRequest request) {
+        RequestResult rejection = transactionService.checkClientRate(clientId(request));
+        if (rejection != null) {
+            return CompletableFuture.completedFuture(rejection);
+        }
+        return idempotencyCache.execute("new-transaction", clientId(request), idempotencyKey, transactionDto,
+                () -> ledgerEngine.addNewTransaction(bank, transactionDto));
 
     }
 
+    @PostMapping(value = "/new/transactions", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<RequestResult> addNewTransactions(@RequestBody List<TransactionDto> transactionDtos,
+                                                  @RequestParam(defaultValue = "false") boolean atomic,
+                                                  HttpServletRequest request) {
+        return transactionService.addNewTransactions(bank, clientId(request), transactionDtos, atomic);
+    }
+
+    // NDJSON sisse ja välja: iga tehingu tulemus on vastuses eraldi real samas järjekorras
+    @PostMapping(value = "/new/transactions", consumes = LedgerStreamService.NDJSON, produces = LedgerStreamService.NDJSON)
+    public void addNewTransactionStream(InputStream body,
+                                        @RequestParam(defaultValue = "false") boolean atomic,
+                                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(LedgerStreamService.NDJSON);
+        ledgerStreamService.addTransactions(bank, clientId(request), body, atomic, response.getOutputStream());
+    }
+
     @PostMapping("/receive/transaction")
-    public RequestResult receiveNewTransaction(@RequestBody TransactionDto transactionDto) {
-        return transactionService.receiveNewTransaction(bank, transactionDto);
+    public CompletableFuture<RequestResult> receiveNewTransaction(@RequestBody TransactionDto transactionDto,
+                                                                 @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                                 @RequestHeader(value = OutboundTransferService.BANK_CODE_HEADER, required = false) String bankCode,
+                                                                 HttpServletRequest request) {
+        return idempotencyCache.executeUntilExpired("receive-transaction", senderId(bankCode, request), idempotencyKey,
+                transactionDto, () -> ledgerEngine.receiveNewTransaction(bank, transactionDto));
+
+    }
 
+    @PostMapping("/receive/transactions")
+    public CompletableFuture<List<RequestResult>> receiveNewTransactions(@RequestBody List<TransactionDto> transactionDtos,
+                                                                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                                        @RequestHeader(value = OutboundTransferService.BANK_CODE_HEADER, required = false) String bankCode,
+                                                                        HttpServletRequest request) {
+        return idempotencyCache.executeUntilExpired("receive-transactions", senderId(bankCode, request), idempotencyKey,
+                transactionDtos, () -> CompletableFuture.completedFuture(transactionService.receiveNewTransactions(bank, transactionDtos)));
     }
 
     @PutMapping("/update/owner")
     public RequestResult updateOwnerDetails(@RequestBody AccountDto accountDto) {
 
-        return accountService.updateOwnerDetails(bank.getAccounts(), accountDto);
+        return accountService.updateOwnerDetails(bank.getAccountRepository(), accountDto);
     }
 
 //    TODO: tehke endpoint millega, saab kontot lukustada/avada, kontrollige ID olemasolu (lock/status)
 
     @PutMapping("/lock/account")
-    public RequestResult updateAccountLockStatus(@RequestParam int accountId) {
+    public CompletableFuture<RequestResult> updateAccountLockStatus(@RequestParam int accountId) {
 
-        return accountService.updateAccountLockStatus(bank.getAccounts(), accountId);
+        return ledgerEngine.updateAccountLockStatus(bank, accountId);
     }
 
     @DeleteMapping("/delete/account")
-    public RequestResult deleteAccount(@RequestParam int accountId) {
-        return accountService.deleteAccount(bank.getAccounts(), accountId);
+    public CompletableFuture<RequestResult> deleteAccount(@RequestParam int accountId) {
+        return ledgerEngine.deleteAccount(bank, accountId);
     }
 
     //  loo transactionService alla uus teenus                                      createTransactionForNewAccount()
     //  loo bankService alla uus teenus                                             addTransaction()
 
-//TODO: loo endpoint /bankstatement/by/lastname
+    @GetMapping("/bankstatement/by/id")
+    public BankStatementDto getStatementByAccountId(@RequestParam int accountId,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return bankStatementService.getStatementByAccountId(bank, accountId, from, to);
+    }
+
+    @GetMapping("/bankstatement/by/number")
+    public BankStatementDto getStatementByAccountNumber(@RequestParam String accountNumber,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return bankStatementService.getStatementByAccountNumber(bank, accountNumber, from, to);
+    }
+
+    @GetMapping("/bankstatement/by/lastname")
+    public List<BankStatementDto> getStatementsByLastName(@RequestParam String lastName,
+                                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return bankStatementService.getStatementsByLastName(bank, lastName, from, to);
+    }
+
+    // tõstutundetu otsing perekonnanime (lastNamePrefix=true korral nime alguse) ja soovi korral eesnime
+    // (firstNamePrefix=true korral nime alguse) järgi, iga leitud kontoga tuleb kaasa tema viimased transactions tehingut
+    @GetMapping("/accounts/by/owner")
+    public List<BankStatementDto> searchAccountsByOwner(@RequestParam String lastName,
+                                                        @RequestParam(required = false) String firstName,
+                                                        @RequestParam(defaultValue = "false") boolean lastNamePrefix,
+                                                        @RequestParam(defaultValue = "false") boolean firstNamePrefix,
+                                                        @RequestParam(defaultValue = "10") int transactions,
+                                                        @RequestParam(defaultValue = "100") int limit) {
+        return bankStatementService.searchByOwner(bank, lastName, lastNamePrefix, firstName, firstNamePrefix, transactions, limit);
+    }
+
+    // saldo mingi hetke seisuga, asOf puudumisel praegune
+    @GetMapping("/balance/by/id")
+    public BalanceDto getAccountBalance(@RequestParam int accountId,
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf) throws IOException {
+        return balanceCheckpoints.getAccountBalance(accountId, asOf == null ? LocalDateTime.now() : asOf);
+    }
+
+    @GetMapping("/balance/total")
+    public List<BalanceDto> getTotalBalances(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf) {
+        return balanceCheckpoints.getTotalBalances(asOf == null ? LocalDateTime.now() : asOf);
+    }
+
+    @GetMapping("/report/daily")
+    public List<DailyTotalDto> getDailyTotals(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                              @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return reportService.getDailyTotals(from, to);
+    }
+
+    @GetMapping("/report/cashflow")
+    public List<DailyCashFlowDto> getDailyCashFlow(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return reportService.getDailyCashFlow(from, to);
+    }
+
+    @GetMapping("/report/top/accounts")
+    public List<AccountVolumeDto> getTopAccounts(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                 @RequestParam(defaultValue = "10") int limit) {
+        return reportService.getTopAccounts(from, to, limit);
+    }
+
+    // klient on autenditud kasutaja või selle puudumisel IP-aadress, mitte midagi, mida klient saaks ise valida.
+    // Proxy taga peab IP-aadressi jaoks olema seatud server.forward-headers-strategy
+    private static String clientId(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : request.getRemoteAddr();
+    }
+
+    // Teine pank kordab pakki ükskõik millise oma aadressi kaudu, seega on tema võtmed pangakoodi all.
+    // Päringu sisu on võtmega seotud, võõra pangakoodiga päring sama võtmega saab 422 vastuse
+    private static String senderId(String bankCode, HttpServletRequest request) {
+        return bankCode != null && !bankCode.isBlank() ? "bank:" + bankCode : clientId(request);
+    }
 
 }
@@ -0,0 +1,405 @@
+package ee.bcs.bank.restbank;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "journal", matchIfMissing = true)
+public class BankJournal implements BankPersistence {
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("journal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${bank.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${bank.journal.directory:data/journal}")
+    private String directoryName;
+
+    @Value("${bank.journal.snapshot-interval:100000}")
+    private long snapshotInterval;
+
+    @Resource
+    private Bank bank;
+
+    // appendLock kaitseb puhvreid ja järjenumbreid, flusher kirjutab kogunenud kirjed korraga kettale
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition recordsPending = appendLock.newCondition();
+    private final Condition recordsDurable = appendLock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private long appendedSequence;
+    private long durableSequence;
+    private long recordsSinceSnapshot;
+    private boolean rotateRequested;
+    private boolean snapshotInProgress;
+    private boolean running;
+    private volatile IOException failure;
+
+    private Path directory;
+    private int segment;
+    private FileChannel channel;
+    private Thread flusher;
+    private ExecutorService snapshotExecutor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(directoryName);
+        Files.createDirectories(directory);
+        recover();
+
+        channel = openSegment(segment);
+        running = true;
+        snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "bank-journal-snapshot"));
+        flusher = new Thread(this::flushLoop, "bank-journal-flusher");
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!enabled) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            running = false;
+            recordsPending.signal();
+        } finally {
+            appendLock.unlock();
+        }
+        flusher.join();
+        snapshotExecutor.shutdown();
+        snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        channel.close();
+    }
+
+    // kirje tehakse valmis ainult siis, kui journal on sees, muidu ei maksa kirjutamine midagi
+    @Override
+    public void writeAccount(AccountDto account) {
+        if (enabled) {
+            append(JournalRecords.account(account));
+        }
+    }
+
+    @Override
+    public void writeAccountClosed(AccountDto account) {
+        if (enabled) {
+            append(JournalRecords.accountClosed(account));
+        }
+    }
+
+    @Override
+    public void writeTransaction(TransactionDto transaction) {
+        if (enabled) {
+            append(JournalRecords.transaction(transaction));
+        }
+    }
+
+    @Override
+    public void checkWritable() {
+        IOException error = failure;
+        if (error != null) {
+            throw new IllegalStateException("Journal is not writable", error);
+        }
+    }
+
+    // ootab, kuni kõik seni lisatud kirjed on kettale fsync-itud
+    @Override
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            long target = appendedSequence;
+            while (durableSequence < target) {
+                if (failure != null) {
+                    throw new IllegalStateException("Journal is not writable", failure);
+                }
+                recordsDurable.awaitUninterruptibly();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void append(byte[] record) {
+        if (!enabled) {
+            return;
+        }
+        int checksum = checksum(record);
+        appendLock.lock();
+        try {
+            if (pending.remaining() < record.length + 8) {
+                pending = grow(pending, record.length + 8);
+            }
+            pending.putInt(record.length);
+            pending.putInt(checksum);
+            pending.put(record);
+            appendedSequence++;
+
+            if (++recordsSinceSnapshot >= snapshotInterval && !snapshotInProgress) {
+                recordsSinceSnapshot = 0;
+                snapshotInProgress = true;
+                rotateRequested = true;
+            }
+            recordsPending.signal();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchSequence;
+            boolean rotate;
+
+            appendLock.lock();
+            try {
+                while (running && pending.position() == 0 && !rotateRequested) {
+                    recordsPending.awaitUninterruptibly();
+                }
+                if (!running && pending.position() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                batchSequence = appendedSequence;
+                rotate = rotateRequested;
+                rotateRequested = false;
+            } finally {
+                appendLock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+                if (rotate) {
+                    channel.close();
+                    segment++;
+                    channel = openSegment(segment);
+                }
+            } catch (IOException e) {
+                log.error("Writing bank journal segment {} failed", segment, e);
+                error = e;
+            }
+
+            appendLock.lock();
+            try {
+                batch.clear();
+                spare = batch;
+                if (error == null) {
+                    durableSequence = batchSequence;
+                } else {
+                    failure = error;
+                }
+                recordsDurable.signalAll();
+            } finally {
+                appendLock.unlock();
+            }
+
+            if (rotate && error == null) {
+                int snapshotSegment = segment;
+                snapshotExecutor.execute(() -> writeSnapshot(snapshotSegment));
+            }
+        }
+    }
+
+    // snapshot on "hägune": tehingud kirjutatakse enne kontosid ja iga konto loetakse tema luku all,
+    // nii et snapshotis olev balance sisaldab vähemalt kõiki snapshotis olevaid tehinguid.
+    // Tehingutest võetakse kõik juba valmis read, ka need, mille eel on veel pooleli ridu.
+    // Taastamisel mängitakse segmendid alates snapshotSegment-ist uuesti peale.
+    private void writeSnapshot(int snapshotSegment) {
+        Path target = directory.resolve(snapshotName(snapshotSegment));
+        Path temporary = directory.resolve(snapshotName(snapshotSegment) + ".tmp");
+        try {
+            TransactionStore transactions = bank.getTransactionStore();
+            int rows = transactions.reservedRows();
+            int written = 0;
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+                writeFrame(out, JournalRecords.counters(bank));
+                for (int row = 0; row < rows; row++) {
+                    TransactionDto transaction = transactions.get(row);
+                    if (transaction != null) {
+                        writeFrame(out, JournalRecords.transaction(transaction));
+                        written++;
+                    }
+                }
+                AccountLocks locks = bank.getAccountRepository().getLocks();
+                for (AccountDto account : bank.getAccountRepository().findAllClosed()) {
+                    writeFrame(out, JournalRecords.accountClosed(account));
+                }
+                for (AccountDto account : bank.getAccounts()) {
+                    byte[] record;
+                    locks.lock(account.getId());
+                    try {
+                        record = JournalRecords.account(account);
+                    } finally {
+                        locks.unlock(account.getId());
+                    }
+                    writeFrame(out, record);
+                }
+            }
+            try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                snapshotChannel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            for (int oldSegment : listFiles(SEGMENT_FILE)) {
+                if (oldSegment < snapshotSegment) {
+                    Files.deleteIfExists(directory.resolve(segmentName(oldSegment)));
+                }
+            }
+            for (int oldSnapshot : listFiles(SNAPSHOT_FILE)) {
+                if (oldSnapshot < snapshotSegment) {
+                    Files.deleteIfExists(directory.resolve(snapshotName(oldSnapshot)));
+                }
+            }
+            log.info("Wrote bank snapshot {} with {} transactions", target, written);
+        } catch (IOException e) {
+            log.error("Writing bank snapshot {} failed", target, e);
+        } finally {
+            appendLock.lock();
+            try {
+                snapshotInProgress = false;
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Integer> segments = listFiles(SEGMENT_FILE);
+        List<Integer> snapshots = listFiles(SNAPSHOT_FILE);
+
+        int firstSegment = 0;
+        if (!snapshots.isEmpty()) {
+            firstSegment = snapshots.get(snapshots.size() - 1);
+            readFrames(directory.resolve(snapshotName(firstSegment)));
+        }
+        int lastSegment = firstSegment;
+        for (int journalSegment : segments) {
+            if (journalSegment >= firstSegment) {
+                readFrames(directory.resolve(segmentName(journalSegment)));
+            }
+            lastSegment = Math.max(lastSegment, journalSegment);
+        }
+        segment = lastSegment + 1;
+        bank.getTransactionStore().sealGaps();
+        log.info("Recovered bank from {}: {} accounts, {} transactions",
+                directory, bank.getAccountRepository().size(), bank.getTransactions().size());
+    }
+
+    private void readFrames(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    int checksum = in.readInt();
+                    byte[] record = new byte[length];
+                    in.readFully(record);
+                    if (checksum(record) != checksum) {
+                        log.warn("Checksum mismatch in {}, ignoring the rest of the file", file);
+                        return;
+                    }
+                    JournalRecords.apply(bank, record);
+                } catch (EOFException e) {
+                    log.warn("Incomplete record at the end of {}, ignoring it", file);
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<Integer> listFiles(Pattern pattern) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Integer.parseInt(matcher.group(1)));
+                }
+            });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(directory.resolve(segmentName(number)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] record) throws IOException {
+        out.writeInt(record.length);
+        out.writeInt(checksum(record));
+        out.write(record);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static String segmentName(int number) {
+        return String.format("journal-%09d.log", number);
+    }
+
+    private static String snapshotName(int number) {
+        return String.format("snapshot-%09d.bin", number);
+    }
+}
@@ -0,0 +1,26 @@
+package ee.bcs.bank.restbank;
+
+// Panga muudatuste püsisalvestus. Pank ise on mälus, siia kirjutatakse iga muudatus ja käivitamisel
+// taastatakse siit panga olek. Kirjed lisatakse konto luku all, sync ootab, kuni kõik seni lisatu on salvestatud.
+// Valitakse bank.persistence järgi: journal (vaikimisi, vt BankJournal) või jdbc (vt JdbcBankPersistence).
+//
+// See ei ole write-ahead log: muudatus tehakse mälus enne, kui selle kirje on salvestatud, ja teised päringud
+// näevad seda juba enne sync-i. Päringule vastatakse alles pärast sync-i, nii et kinnitatud muudatused on alati
+// salvestatud. Kui salvestamine ebaõnnestub, jäävad selle ja järgmiste sync-ideni tehtud muudatused ainult mällu
+// ja nende päringud saavad vea. Pärast seda keeldutakse kõigist muudatustest (checkWritable), et mälus olev pank
+// ei läheks salvestatust rohkem lahku; uuesti kirjutama hakkamiseks tuleb pank taaskäivitada.
+public interface BankPersistence {
+
+    // viskab IllegalStateException-i, kui mõni varasem kirjutamine ebaõnnestus. Kutsutakse konto luku all enne
+    // mälus muutmist
+    void checkWritable();
+
+    void writeAccount(AccountDto account);
+
+    // konto suleti (account.closedAt on määratud), vt AccountRepository.close
+    void writeAccountClosed(AccountDto account);
+
+    void writeTransaction(TransactionDto transaction);
+
+    void sync();
+}
@@ -1,26 +1,77 @@
 package ee.bcs.bank.restbank;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.Resource;
+
 @Service
 public class BankService {
 
+    @Resource
+    private BankPersistence bankPersistence;
+
+    @Resource
+    private ChangeFeed changeFeed;
+
+    @Resource
+    private AccountNumberAllocator accountNumberAllocator;
+
+    @Value("${bank.currency:EUR}")
+    private String defaultCurrency;
+
     // TODO: loo teenus addAccountToBank() mis lisab uue konto bank accounts'i alla
     //  enne seda võta bank alt järgmine account id ja lisa see ka kontole
     //  ära unusta siis pärast seda accountIdCount'id suurendada
     public RequestResult addAccountToBank(Bank bank, AccountDto accountDto) {
+        if (accountDto.getCurrency() == null) {
+            accountDto.setCurrency(defaultCurrency);
+        } else if (!Money.isKnownCurrency(accountDto.getCurrency())) {
+            RequestResult requestResult = new RequestResult();
+            requestResult.setError("Unknown currency: " + accountDto.getCurrency());
+            return requestResult;
+        }
+        String accountNumberError = accountDto.getAccountNumber() == null
+                ? null : accountNumberAllocator.checkClientNumber(accountDto.getAccountNumber());
+        if (accountNumberError != null) {
+            RequestResult requestResult = new RequestResult();
+            requestResult.setError(accountNumberError);
+            return requestResult;
+        }
 
-        int accountId = bank.getAccountIdCount();
-        accountDto.setId(accountId);
+        // kontonumber tuleb konto id-st; kui keegi on sama numbri ise varem kasutanud, võetakse järgmine id
+        boolean allocateNumber = accountDto.getAccountNumber() == null;
         accountDto.setBalance(0);
         accountDto.setLocked(false);
-        bank.addAccountToAccounts(accountDto);
-        bank.incrementAccountId();
+        AccountLocks locks = bank.getAccountRepository().getLocks();
+        boolean added;
+        do {
+            int accountId = bank.nextAccountId();
+            accountDto.setId(accountId);
+            if (allocateNumber) {
+                accountDto.setAccountNumber(accountNumberAllocator.accountNumber(accountId));
+            }
+            locks.lock(accountId);
+            try {
+                bankPersistence.checkWritable();
+                added = bank.addAccountToAccounts(accountDto);
+                if (added) {
+                    bankPersistence.writeAccount(accountDto);
+                    changeFeed.account(ChangeFeed.ACCOUNT_OPENED, accountDto);
+                }
+            } finally {
+                locks.unlock(accountId);
+            }
+        } while (!added && allocateNumber);
 
         RequestResult requestResult = new RequestResult();
-        requestResult.setAccountId(accountDto.getId());
+        if (!added) {
+            requestResult.setError("Account number " + accountDto.getAccountNumber() + " already exists");
+            return requestResult;
+        }
+        bankPersistence.sync();
 
-        //todo: kontrolli, kas konto on juba olemas, kui jah, lisa vastav error.
+        requestResult.setAccountId(accountDto.getId());
         requestResult.setMessage("Added new account.");
         return requestResult;
 
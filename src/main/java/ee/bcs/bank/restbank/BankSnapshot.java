@@ -0,0 +1,108 @@
+package ee.bcs.bank.restbank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Panga vaade versiooni seisuga: versioon on TransactionStore-i committedRows ehk ridade arv, mis on kõik valmis.
+// Read ei muutu pärast valmimist, seega ei pea vaate loomine ega lugemine kirjutajaid ootama.
+// Konto saldo võetakse tema viimasest reast enne versiooni, nii et saldo klapib alati näidatud tehingutega.
+// Ülekande mõlemad pooled valmivad korraga (vt TransactionStore.append), seega pole vaates poolikuid ülekandeid.
+// Konto muud andmed (omanik, lukk) on vaate loomise hetke omad.
+public class BankSnapshot {
+
+    private final Bank bank;
+    private final int version;
+
+    BankSnapshot(Bank bank, int version) {
+        this.bank = bank;
+        this.version = version;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public List<AccountDto> getAccounts() {
+        List<AccountDto> accounts = bank.getAccountRepository().findAll();
+        List<AccountDto> copies = new ArrayList<>(accounts.size());
+        for (AccountDto account : accounts) {
+            copies.add(copy(account));
+        }
+        return copies;
+    }
+
+    // avatud kontode koopiad id järgi, vt AccountRepository.findAfter
+    public List<AccountDto> getAccounts(int afterId, int limit) {
+        List<AccountDto> accounts = bank.getAccountRepository().findAfter(afterId, limit);
+        List<AccountDto> copies = new ArrayList<>(accounts.size());
+        for (AccountDto account : accounts) {
+            copies.add(copy(account));
+        }
+        return copies;
+    }
+
+    public int getAccountIdCount() {
+        return bank.getAccountIdCount();
+    }
+
+    public List<TransactionDto> getTransactions() {
+        return bank.getTransactionStore().asList(version);
+    }
+
+    public int getTransactionIdCount() {
+        return version + 1;
+    }
+
+    // konto koopia versiooni aegse saldoga või null
+    public AccountDto getAccount(int accountId) {
+        AccountDto account = bank.getAccountRepository().findById(accountId);
+        return account == null ? null : copy(account);
+    }
+
+    // suletud, kuid veel arhiveerimata konto koopia või null
+    public AccountDto getClosedAccount(int accountId) {
+        AccountDto account = bank.getAccountRepository().findClosedById(accountId);
+        return account == null ? null : copy(account);
+    }
+
+    public AccountDto getAccount(String accountNumber) {
+        AccountDto account = bank.getAccountRepository().findByNumber(accountNumber);
+        return account == null ? null : copy(account);
+    }
+
+    // omaniku nime järgi leitud kontode koopiad, vt AccountRepository.findByOwner
+    public List<AccountDto> getAccountsByOwner(String lastName, boolean lastNamePrefix, String firstName, boolean firstNamePrefix,
+                                               int limit) {
+        List<AccountDto> accounts = bank.getAccountRepository().findByOwner(lastName, lastNamePrefix, firstName, firstNamePrefix, limit);
+        List<AccountDto> copies = new ArrayList<>(accounts.size());
+        for (AccountDto account : accounts) {
+            copies.add(copy(account));
+        }
+        return copies;
+    }
+
+    public long getBalance(int accountId) {
+        int lastRow = bank.getTransactionIndex().lastRowBefore(accountId, version);
+        return lastRow < 0 ? 0 : bank.getTransactionStore().balance(lastRow);
+    }
+
+    // konto read enne versiooni, mille aeg on vahemikus [fromMicros, toMicros]
+    public int[] getRows(int accountId, long fromMicros, long toMicros) {
+        TransactionIndex transactionIndex = bank.getTransactionIndex();
+        int[] rows = fromMicros == Long.MIN_VALUE && toMicros == Long.MAX_VALUE
+                ? transactionIndex.rows(accountId)
+                : transactionIndex.rows(accountId, fromMicros, toMicros, bank.getTransactionStore());
+        int count = rows.length;
+        while (count > 0 && rows[count - 1] >= version) {
+            count--;
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    private AccountDto copy(AccountDto account) {
+        AccountDto copy = account.copy();
+        copy.setBalance(getBalance(account.getId()));
+        return copy;
+    }
+}
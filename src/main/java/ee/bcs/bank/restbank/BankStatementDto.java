@@ -0,0 +1,14 @@
+package ee.bcs.bank.restbank;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class BankStatementDto {
+    private AccountDto account;
+    private List<TransactionDto> transactions;
+    private String error;
+}
@@ -0,0 +1,111 @@
+package ee.bcs.bank.restbank;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+@Service
+public class BankStatementService {
+
+    @Resource
+    private AccountArchive accountArchive;
+
+    // suletud konto väljavõte tuleb id järgi tombstone-ist või arhiivist
+    public BankStatementDto getStatementByAccountId(Bank bank, int accountId, LocalDateTime from, LocalDateTime to) {
+        BankSnapshot snapshot = bank.snapshot();
+        AccountDto account = snapshot.getAccount(accountId);
+        if (account == null) {
+            account = snapshot.getClosedAccount(accountId);
+        }
+        if (account != null) {
+            return createStatement(bank, snapshot, account, from, to);
+        }
+
+        BankStatementDto bankStatementDto;
+        try {
+            bankStatementDto = accountArchive.getStatement(accountId, from, to);
+        } catch (IOException e) {
+            log.error("Reading archived account {} failed", accountId, e);
+            bankStatementDto = new BankStatementDto();
+            bankStatementDto.setError("Statement of closed account ID " + accountId + " is not available.");
+            return bankStatementDto;
+        }
+        if (bankStatementDto == null) {
+            bankStatementDto = new BankStatementDto();
+            bankStatementDto.setError("Account ID " + accountId + " does not exist.");
+        }
+        return bankStatementDto;
+    }
+
+    public BankStatementDto getStatementByAccountNumber(Bank bank, String accountNumber, LocalDateTime from, LocalDateTime to) {
+        BankSnapshot snapshot = bank.snapshot();
+        AccountDto account = snapshot.getAccount(accountNumber);
+        if (account == null) {
+            BankStatementDto bankStatementDto = new BankStatementDto();
+            bankStatementDto.setError("No such account in our bank: " + accountNumber);
+            return bankStatementDto;
+        }
+        return createStatement(bank, snapshot, account, from, to);
+    }
+
+    // kontod leitakse omaniku nime indeksist, teiste kontode andmeid ei loeta
+    public List<BankStatementDto> getStatementsByLastName(Bank bank, String lastName, LocalDateTime from, LocalDateTime to) {
+        BankSnapshot snapshot = bank.snapshot();
+        List<BankStatementDto> statements = new ArrayList<>();
+        for (AccountDto account : snapshot.getAccountsByOwner(lastName, false, null, false, Integer.MAX_VALUE)) {
+            statements.add(createStatement(bank, snapshot, account, from, to));
+        }
+        return statements;
+    }
+
+    // omaniku nime (...Prefix korral nime alguse) järgi leitud kontod koos nende viimase recentTransactions tehinguga
+    public List<BankStatementDto> searchByOwner(Bank bank, String lastName, boolean lastNamePrefix, String firstName,
+                                                boolean firstNamePrefix, int recentTransactions, int limit) {
+        if (OwnerNameIndex.normalize(lastName).isEmpty() || recentTransactions < 0 || limit < 1) {
+            BankStatementDto bankStatementDto = new BankStatementDto();
+            bankStatementDto.setError("Last name must not be empty, transactions must not be negative and limit must be positive.");
+            return List.of(bankStatementDto);
+        }
+        BankSnapshot snapshot = bank.snapshot();
+        TransactionStore transactionStore = bank.getTransactionStore();
+        List<BankStatementDto> statements = new ArrayList<>();
+        for (AccountDto account : snapshot.getAccountsByOwner(lastName, lastNamePrefix, firstName, firstNamePrefix, limit)) {
+            int[] rows = snapshot.getRows(account.getId(), Long.MIN_VALUE, Long.MAX_VALUE);
+            List<TransactionDto> transactions = new ArrayList<>(Math.min(rows.length, recentTransactions));
+            for (int i = Math.max(rows.length - recentTransactions, 0); i < rows.length; i++) {
+                transactions.add(transactionStore.get(rows[i]));
+            }
+
+            BankStatementDto bankStatementDto = new BankStatementDto();
+            bankStatementDto.setAccount(account);
+            bankStatementDto.setTransactions(transactions);
+            statements.add(bankStatementDto);
+        }
+        return statements;
+    }
+
+    // väljavõte võtab konto tehingud indeksist, seega sõltub selle hind ainult konto tehingute arvust.
+    // Tehingud ja saldo on sama vaate seisuga, nii et saldo vastab alati viimasele tehingule.
+    private BankStatementDto createStatement(Bank bank, BankSnapshot snapshot, AccountDto account, LocalDateTime from, LocalDateTime to) {
+        TransactionStore transactionStore = bank.getTransactionStore();
+        long fromMicros = from == null ? Long.MIN_VALUE : TransactionStore.toEpochMicros(from);
+        long toMicros = to == null ? Long.MAX_VALUE : TransactionStore.toEpochMicros(to);
+        int[] rows = snapshot.getRows(account.getId(), fromMicros, toMicros);
+
+        List<TransactionDto> transactions = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            transactions.add(transactionStore.get(row));
+        }
+
+        BankStatementDto bankStatementDto = new BankStatementDto();
+        bankStatementDto.setAccount(account);
+        bankStatementDto.setTransactions(transactions);
+        return bankStatementDto;
+    }
+}
@@ -0,0 +1,18 @@
+package ee.bcs.bank.restbank;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Üks muudatus muudatuste voos (vt ChangeFeed). Tehingu puhul on täidetud transaction,
+// konto muudatuse puhul account - konto seis pärast muudatust. Sündmuse koht voos on SSE sündmuse id.
+@Setter
+@Getter
+public class ChangeEventDto {
+
+    private String type;
+    private LocalDateTime localDateTime;
+    private AccountDto account;
+    private TransactionDto transaction;
+}
@@ -0,0 +1,476 @@
+package ee.bcs.bank.restbank;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Panga muudatuste voog (Server-Sent Events) tehingutest ja konto muudatustest.
+// Tehingud loetakse otse TransactionStore-ist rea kaupa, seega on tehingu asukoht voos tema püsiv id ja voogu saab
+// jätkata ka pärast panga taaskäivitust. Konto muudatustel püsivat id-d pole, need on mälus ringis, kus igal
+// muudatusel on järjekorranumber (offset). Pesa kirjutamine on nagu seqlock: kirjutaja võtab pesa endale
+// compareAndSet-iga eelmise ringi muudatuse valmis olekust pooleliolevaks (-(offset + 1)), siis kirjutab andmed
+// ja lõpuks offset + 1. Kui eelmise ringi kirjutaja on sama pesaga veel pooleli, ootab järgmine, nii et kaks
+// kirjutajat ei kirjuta kunagi samasse pesasse korraga. Lugeja kontrollib pärast andmete lugemist, et pesa olek
+// pole vahepeal muutunud. Konto muudatus jätab meelde tehingute ridade arvu oma tegemise hetkel ja saadetakse
+// enne neid ridu, nii et sama konto tehingud ja muudatused tulevad voos selles järjekorras, nagu need tehti.
+// Saata tohib ainult püsivaks saanud muudatusi. Selle piiri (durable) hoiab üks sync lõim kõigi tellijate jaoks:
+// ta loeb kirjutatud tehingute ja konto muudatuste piiri, teeb ühe sync-i ja nihutab siis durable edasi.
+// Igal tellijal on oma virtuaalne lõim, mis loeb oma kohast edasi ja kirjutab kliendile, seega aeglane
+// klient ei jõua tehinguteni. Kui tellija jääb konto muudatustest maha rohkem kui ringi suurus, saab ta reset
+// sündmuse ja jätkab konto muudatustega praegusest kohast, tehingud tulevad ikka kõik.
+// Kirjutatud tehingute ring ei pane kirjutajat ootama: kui rida pole ringi jagu hiljem ikka kirjutatud (nt
+// journalisse kirjutamine ebaõnnestus), kirjutab järgmise ringi rida selle pesa üle ja piir liigub sellest mööda.
+// Sellise rea asemel saab tellija reset sündmuse, sest ei ole teada, kas see rida üldse püsivaks sai.
+@Slf4j
+@Service
+public class ChangeFeed {
+
+    public static final String TRANSACTION = "transaction";
+    public static final String ACCOUNT_OPENED = "account_opened";
+    public static final String LOCK_CHANGED = "lock_changed";
+    public static final String OWNER_UPDATED = "owner_updated";
+    public static final String ACCOUNT_CLOSED = "account_closed";
+    // Osa konto muudatusi jäi saatmata (pank käivitati vahepeal uuesti või tellija jäi liiga palju maha) või
+    // tehing jäeti vahele, sest see ei jõudnud õigel ajal püsisalvestusse. Muud tehingud jätkuvad vahele jätmata.
+    // Kui sündmuse id-st ei saa üldse jätkata, suletakse pärast reset sündmust voog.
+    // Sündmuse id on koht, kust voog jätkub
+    public static final String RESET = "reset";
+    // tellijaid on liiga palju, klient proovib hiljem sama id-ga uuesti
+    public static final String REJECTED = "rejected";
+
+    @Value("${bank.feed.enabled:true}")
+    private boolean enabled;
+
+    @Value("${bank.feed.capacity:65536}")
+    private int capacity;
+
+    @Value("${bank.feed.max-subscribers:100}")
+    private int maxSubscribers;
+
+    @Value("${bank.feed.batch-size:256}")
+    private int batchSize;
+
+    @Value("${bank.feed.heartbeat:15s}")
+    private Duration heartbeat;
+
+    @Value("${bank.feed.timeout:30m}")
+    private Duration timeout;
+
+    @Resource
+    private Bank bank;
+
+    @Resource
+    private BankPersistence bankPersistence;
+
+    @Resource
+    private BankClock bankClock;
+
+    // Sündmuse id on "<tehingu id>-<käivitus>-<offset>": saadetud tehingute ridade arv (tehingu sündmuses tema enda id)
+    // ja järgmine konto muudatuse offset. Offsetid algavad igal käivitusel nullist, tehingu id-d mitte.
+    // Ainult tehingu id-ga jätkates tulevad konto muudatused alates praegusest hetkest
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong nextOffset = new AtomicLong();
+    // read, millest kõik on püsisalvestusse kirjutatud (ChangeFeed.transaction on kutsutud)
+    private final AtomicInteger writtenRows = new AtomicInteger();
+    // read, millest kirjutatud ridade piir läks mööda ilma, et ChangeFeed.transaction oleks kutsutud. Neid on
+    // ainult tõrgete korral, seega jäävad need alles kogu käivituse ajaks, et ka hiljem jätkav tellija neid näeks
+    private final Set<Integer> skippedRows = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition changesPublished = waitLock.newCondition();
+    private final Condition changesDurable = waitLock.newCondition();
+    private volatile boolean syncWaiting;
+    private volatile int waitingSubscribers;
+    private volatile boolean stopped;
+    private volatile Durable durable;
+    private volatile RuntimeException syncFailure;
+    private Thread syncThread;
+    // pesa muudatuse offset + 1, kirjutamise ajal -(offset + 1), 0 kui pesa on tühi
+    private AtomicLongArray offsets;
+    private AtomicReferenceArray<Change> accountChanges;
+    // written[row & mask] == row + 1, kui rida on kirjutatud, suurem väärtus, kui pesa on järgmise ringi real
+    private AtomicIntegerArray written;
+    private int mask;
+
+    @PostConstruct
+    public void init() {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalStateException("bank.feed.capacity must be a power of two");
+        }
+        offsets = new AtomicLongArray(capacity);
+        accountChanges = new AtomicReferenceArray<>(capacity);
+        written = new AtomicIntegerArray(capacity);
+        mask = capacity - 1;
+        // taastatud tehingud on juba püsivad
+        writtenRows.set(bank.getTransactionStore().reservedRows());
+        durable = new Durable(writtenRows.get(), 0);
+        if (enabled) {
+            syncThread = Thread.ofPlatform().daemon().name("bank-change-feed-sync").start(this::syncLoop);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopped = true;
+        signal(changesPublished);
+        signal(changesDurable);
+        if (syncThread != null) {
+            syncThread.join();
+        }
+    }
+
+    // Kutsutakse konto luku all pärast püsisalvestusse kirjutamist, seega on tehing püsiv pärast järgmist sync-i
+    public void transaction(int transactionId) {
+        if (!enabled) {
+            return;
+        }
+        int row = transactionId - 1;
+        // hiljaks jäänud rida ei kirjuta üle järgmise ringi rida, mis on juba sama pesa võtnud
+        written.accumulateAndGet(row & mask, transactionId, Math::max);
+        advanceWrittenRows();
+        if (syncWaiting) {
+            signal(changesPublished);
+        }
+    }
+
+    // Kutsutakse konto luku all pärast püsisalvestusse kirjutamist. Kirjutamine on enne offseti võtmist,
+    // seega on muudatus püsiv, kui lõpeb mõni sync, mis algas pärast seda.
+    public void account(String type, AccountDto account) {
+        if (enabled) {
+            publish(new Change(type, account.copy(), bankClock.now(), bank.getTransactionStore().reservedRows()));
+        }
+    }
+
+    // lastEventId puudumisel saadetakse muudatused alates praegusest hetkest
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        if (!enabled || subscriberCount.incrementAndGet() > maxSubscribers) {
+            if (enabled) {
+                subscriberCount.decrementAndGet();
+            }
+            closeQuietly(emitter, SseEmitter.event().name(REJECTED)
+                    .data(error("Change feed has no free subscriptions."), MediaType.APPLICATION_JSON));
+            return emitter;
+        }
+
+        Subscriber subscriber = new Subscriber(emitter, writtenRows.get(), nextOffset.get());
+        boolean resumable = true;
+        boolean accountChangesLost = false;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            String[] position = lastEventId.split("-");
+            long row = parse(position[0]);
+            long offset = position.length == 3 && position[1].equals(runId) ? parse(position[2]) : -1;
+            if (row < 0 || row > bank.getTransactionStore().reservedRows() || position.length != 1 && position.length != 3
+                    || offset > subscriber.offset) {
+                resumable = false;
+            } else {
+                subscriber.row = (int) row;
+                if (offset >= 0) {
+                    subscriber.offset = offset;
+                } else {
+                    accountChangesLost = position.length == 3;
+                }
+            }
+        }
+
+        emitter.onCompletion(() -> subscriber.open = false);
+        emitter.onTimeout(() -> subscriber.open = false);
+        emitter.onError(error -> subscriber.open = false);
+        if (!resumable) {
+            subscriberCount.decrementAndGet();
+            closeQuietly(emitter, resetEvent(subscriber, "Change feed cannot continue after event " + lastEventId + "."));
+            return emitter;
+        }
+        boolean reset = accountChangesLost;
+        Thread.ofVirtual().name("bank-change-feed-" + subscriber.row).start(() -> deliver(subscriber, reset));
+        signal(changesPublished);
+        return emitter;
+    }
+
+    private void publish(Change accountChange) {
+        long offset = nextOffset.getAndIncrement();
+        int slot = (int) offset & mask;
+        long previous = offset < capacity ? 0 : offset - capacity + 1;
+        while (!offsets.compareAndSet(slot, previous, -(offset + 1))) {
+            // eelmise ringi kirjutaja on selle pesaga pooleli, tavaliselt on tema lõim protsessorilt ära võetud
+            Thread.yield();
+        }
+        accountChanges.set(slot, accountChange);
+        offsets.set(slot, offset + 1);
+        if (syncWaiting) {
+            signal(changesPublished);
+        }
+    }
+
+    // Liigutab kirjutatud ridade piiri üle kõigi järjest kirjutatud ridade, seda võib teha iga lõim. Tühjaks
+    // märgitud rida (lisamine ebaõnnestus) pole kunagi olemas, sellest minnakse vaikselt mööda. Rida, mille pesa
+    // on järgmise ringi rida üle kirjutanud, jäetakse vahele ja tellija saab selle asemel reset sündmuse
+    private void advanceWrittenRows() {
+        TransactionStore transactions = bank.getTransactionStore();
+        int rows = writtenRows.get();
+        while (true) {
+            int state = written.get(rows & mask);
+            if (state < rows + 1 && (rows >= transactions.committedRows() || transactions.contains(rows + 1))) {
+                return;
+            }
+            if (state > rows + 1) {
+                skippedRows.add(rows);
+            }
+            if (writtenRows.compareAndSet(rows, rows + 1)) {
+                rows++;
+            } else {
+                rows = writtenRows.get();
+            }
+        }
+    }
+
+    // Üks sync kõigi tellijate jaoks. Read loetakse enne offsetit: kui rida on kirjutatud, on ka sama konto
+    // varasem muudatus juba offseti saanud ja jääb durable piiri sisse.
+    private void syncLoop() {
+        while (!stopped) {
+            Durable current = durable;
+            waitLock.lock();
+            try {
+                syncWaiting = true;
+                while (!stopped && (subscriberCount.get() == 0
+                        || writtenRows.get() == current.rows && nextOffset.get() == current.offset)) {
+                    changesPublished.awaitUninterruptibly();
+                }
+            } finally {
+                syncWaiting = false;
+                waitLock.unlock();
+            }
+            if (stopped) {
+                return;
+            }
+
+            int rows = writtenRows.get();
+            long offset = nextOffset.get();
+            try {
+                bankPersistence.sync();
+            } catch (RuntimeException e) {
+                log.error("Change feed stopped, changes cannot be made durable", e);
+                syncFailure = e;
+                signal(changesDurable);
+                return;
+            }
+            durable = new Durable(rows, offset);
+            if (waitingSubscribers > 0) {
+                signal(changesDurable);
+            }
+        }
+    }
+
+    private void deliver(Subscriber subscriber, boolean accountChangesLost) {
+        TransactionStore transactions = bank.getTransactionStore();
+        try {
+            if (accountChangesLost) {
+                subscriber.emitter.send(resetEvent(subscriber, "Account changes made before the bank restarted were not sent."));
+            }
+            boolean needsRows = false;
+            while (subscriber.open && !stopped) {
+                Durable current = awaitDurable(subscriber, needsRows);
+                if (syncFailure != null) {
+                    throw syncFailure;
+                }
+                if (current.rows <= subscriber.row && (needsRows || current.offset <= subscriber.offset)) {
+                    // kommentaar hoiab ühendust lahti ja annab teada, kui klient on ära läinud
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                    continue;
+                }
+                needsRows = false;
+                for (int sent = 0; sent < batchSize; sent++) {
+                    Change accountChange = null;
+                    if (subscriber.offset < current.offset) {
+                        int slot = (int) subscriber.offset & mask;
+                        long expected = subscriber.offset + 1;
+                        long state = offsets.get(slot);
+                        if (Math.abs(state) < expected || state == -expected) {
+                            // offset on võetud, kuid muudatus pole veel ringis
+                            Thread.yield();
+                            break;
+                        }
+                        accountChange = accountChanges.get(slot);
+                        if (state != expected || offsets.get(slot) != expected) {
+                            subscriber.offset = nextOffset.get();
+                            subscriber.emitter.send(resetEvent(subscriber,
+                                    "Change feed subscriber fell more than " + capacity + " account changes behind."));
+                            break;
+                        }
+                    }
+                    if (accountChange != null && accountChange.rows <= subscriber.row) {
+                        subscriber.offset++;
+                        subscriber.emitter.send(accountEvent(subscriber, accountChange));
+                    } else if (subscriber.row < current.rows) {
+                        if (skippedRows.contains(subscriber.row)) {
+                            int skipped = ++subscriber.row;
+                            subscriber.emitter.send(resetEvent(subscriber,
+                                    "Transaction " + skipped + " was not written in time and was not sent."));
+                            continue;
+                        }
+                        TransactionDto transaction = transactions.get(subscriber.row++);
+                        if (transaction != null) {
+                            subscriber.emitter.send(transactionEvent(subscriber, transaction));
+                        }
+                    } else {
+                        // konto muudatusele eelnevad tehingud pole veel püsivad
+                        needsRows = accountChange != null;
+                        break;
+                    }
+                }
+            }
+            subscriber.emitter.complete();
+        } catch (IOException | RuntimeException e) {
+            // klient läks ära või püsisalvestus ei tööta
+            log.debug("Change feed subscriber at {} closed", eventId(subscriber), e);
+            subscriber.emitter.completeWithError(e);
+        } catch (InterruptedException e) {
+            subscriber.emitter.complete();
+        } finally {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    // Ootab, kuni durable on tellijast ees, kuid mitte kauem kui heartbeat. needsRows: tellija ootab tehinguid,
+    // konto muudatustest üksi ei piisa
+    private Durable awaitDurable(Subscriber subscriber, boolean needsRows) throws InterruptedException {
+        Durable current = durable;
+        if (isAhead(current, subscriber, needsRows)) {
+            return current;
+        }
+        waitLock.lock();
+        try {
+            waitingSubscribers++;
+            long nanos = heartbeat.toNanos();
+            while (!isAhead(current = durable, subscriber, needsRows) && nanos > 0 && !stopped && syncFailure == null) {
+                nanos = changesDurable.awaitNanos(nanos);
+            }
+            return current;
+        } finally {
+            waitingSubscribers--;
+            waitLock.unlock();
+        }
+    }
+
+    private static boolean isAhead(Durable current, Subscriber subscriber, boolean needsRows) {
+        return current.rows > subscriber.row || !needsRows && current.offset > subscriber.offset;
+    }
+
+    private void signal(Condition condition) {
+        waitLock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private SseEmitter.SseEventBuilder transactionEvent(Subscriber subscriber, TransactionDto transaction) {
+        ChangeEventDto changeEventDto = new ChangeEventDto();
+        changeEventDto.setType(TRANSACTION);
+        changeEventDto.setTransaction(transaction);
+        changeEventDto.setLocalDateTime(transaction.getLocalDateTime());
+        return event(subscriber, changeEventDto);
+    }
+
+    private SseEmitter.SseEventBuilder accountEvent(Subscriber subscriber, Change accountChange) {
+        ChangeEventDto changeEventDto = new ChangeEventDto();
+        changeEventDto.setType(accountChange.type);
+        changeEventDto.setAccount(accountChange.account);
+        changeEventDto.setLocalDateTime(accountChange.localDateTime);
+        return event(subscriber, changeEventDto);
+    }
+
+    private SseEmitter.SseEventBuilder event(Subscriber subscriber, ChangeEventDto changeEventDto) {
+        return SseEmitter.event()
+                .id(eventId(subscriber))
+                .name(changeEventDto.getType())
+                .data(changeEventDto, MediaType.APPLICATION_JSON);
+    }
+
+    private SseEmitter.SseEventBuilder resetEvent(Subscriber subscriber, String error) {
+        return SseEmitter.event()
+                .id(eventId(subscriber))
+                .name(RESET)
+                .data(error(error), MediaType.APPLICATION_JSON);
+    }
+
+    private static void closeQuietly(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            emitter.complete();
+        } catch (IOException | RuntimeException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private String eventId(Subscriber subscriber) {
+        return subscriber.row + "-" + runId + "-" + subscriber.offset;
+    }
+
+    private static long parse(String number) {
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static RequestResult error(String error) {
+        RequestResult requestResult = new RequestResult();
+        requestResult.setError(error);
+        return requestResult;
+    }
+
+    private static final class Change {
+
+        private final String type;
+        private final AccountDto account;
+        private final LocalDateTime localDateTime;
+        // tehingute read, mis olid muudatuse tegemise ajal olemas; muudatus saadetakse pärast neid
+        private final int rows;
+
+        private Change(String type, AccountDto account, LocalDateTime localDateTime, int rows) {
+            this.type = type;
+            this.account = account;
+            this.localDateTime = localDateTime;
+            this.rows = rows;
+        }
+    }
+
+    private record Durable(int rows, long offset) {
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+        private volatile boolean open = true;
+        // järgmine saadetav tehingu rida ja konto muudatuse offset
+        private int row;
+        private long offset;
+
+        private Subscriber(SseEmitter emitter, int row, long offset) {
+            this.emitter = emitter;
+            this.row = row;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ee.bcs.bank.restbank;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+public class DailyCashFlowDto {
+    private LocalDate day;
+    private String currency;
+    // väikseimates ühikutes, vt Money
+    private long deposits;
+    private long withdrawals;
+}
@@ -0,0 +1,17 @@
+package ee.bcs.bank.restbank;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+public class DailyTotalDto {
+    private LocalDate day;
+    private Character transactionType;
+    private String currency;
+    private long count;
+    // väikseimates ühikutes, vt Money
+    private long amount;
+}
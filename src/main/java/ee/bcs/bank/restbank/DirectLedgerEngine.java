@@ -0,0 +1,38 @@
+package ee.bcs.bank.restbank;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+@ConditionalOnProperty(name = "bank.engine", havingValue = "direct", matchIfMissing = true)
+public class DirectLedgerEngine implements LedgerEngine {
+
+    @Resource
+    private TransactionService transactionService;
+
+    @Resource
+    private AccountService accountService;
+
+    @Override
+    public CompletableFuture<RequestResult> addNewTransaction(Bank bank, TransactionDto transactionDto) {
+        return CompletableFuture.completedFuture(transactionService.addNewTransaction(bank, transactionDto));
+    }
+
+    @Override
+    public CompletableFuture<RequestResult> receiveNewTransaction(Bank bank, TransactionDto transactionDto) {
+        return CompletableFuture.completedFuture(transactionService.receiveNewTransaction(bank, transactionDto));
+    }
+
+    @Override
+    public CompletableFuture<RequestResult> updateAccountLockStatus(Bank bank, int accountId) {
+        return CompletableFuture.completedFuture(accountService.updateAccountLockStatus(bank.getAccountRepository(), accountId));
+    }
+
+    @Override
+    public CompletableFuture<RequestResult> deleteAccount(Bank bank, int accountId) {
+        return CompletableFuture.completedFuture(accountService.deleteAccount(bank.getAccountRepository(), accountId));
+    }
+}
@@ -0,0 +1,207 @@
+package ee.bcs.bank.restbank;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+// Meeles peetakse Idempotency-Key järgi tehtud päringute tulemused, et kliendi kordus ei teeks tehingut teist korda.
+// Võti kehtib ainult sama kliendi ja sama päringu sisu kohta: teise sisuga päring sama võtmega saab 422 vastuse.
+// Kirjete arv on piiratud: uus kirje kirjutab ringis üle kõige vanema ja see eemaldatakse ka map-ist.
+// Teiste pankade ülekannete kirjed (executeUntilExpired) on eraldi järjekorras, mida kirjete arv ei piira: saatja
+// pank kordab teadmata olekus pakki oma bank.outbound.unknown-timeout lõpuni ja võti peab nii kaua alles olema.
+// Aegunud kirjed eemaldatakse iga expiry-interval järel ringi ja järjekorra vanemast otsast, aegunud kirjet ei
+// kasutata ka enne seda.
+@Component
+public class IdempotencyCache {
+
+    @Value("${bank.idempotency.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${bank.idempotency.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${bank.idempotency.expiry-interval:1m}")
+    private Duration expiryInterval;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong insertions = new AtomicLong();
+    // executeUntilExpired kirjed lisamise järjekorras
+    private final Queue<Entry> unboundedEntries = new ConcurrentLinkedQueue<>();
+    private AtomicReferenceArray<Entry> insertionOrder;
+    private long ttlNanos;
+    // esimene ringi kirje, mida pole veel aegumise pärast eemaldatud, seda kasutab ainult expiry lõim
+    private long expiredInsertions;
+    private ScheduledExecutorService expiry;
+
+    @PostConstruct
+    public void init() {
+        insertionOrder = new AtomicReferenceArray<>(maxEntries);
+        ttlNanos = ttl.toNanos();
+        expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bank-idempotency-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiry.scheduleWithFixedDelay(this::expire, expiryInterval.toMillis(), expiryInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        expiry.shutdownNow();
+    }
+
+    // kui key on null, tehakse action lihtsalt ära. request on päringu sisu, millega kordust võrreldakse
+    public <T> CompletableFuture<T> execute(String namespace, String clientId, String key, Object request,
+                                            Supplier<CompletableFuture<T>> action) {
+        return execute(namespace, clientId, key, request, action, true);
+    }
+
+    // nagu execute, kuid kirje eemaldatakse ainult aegumisel, mitte siis, kui kirjeid on max-entries jagu
+    public <T> CompletableFuture<T> executeUntilExpired(String namespace, String clientId, String key, Object request,
+                                                        Supplier<CompletableFuture<T>> action) {
+        return execute(namespace, clientId, key, request, action, false);
+    }
+
+    private <T> CompletableFuture<T> execute(String namespace, String clientId, String key, Object request,
+                                             Supplier<CompletableFuture<T>> action, boolean bounded) {
+        if (key == null) {
+            return action.get();
+        }
+        String cacheKey = namespace + ':' + clientId + ':' + key;
+        CompletableFuture<T> promise = new CompletableFuture<>();
+        Entry entry = new Entry(cacheKey, requestHash(request), promise, System.nanoTime());
+
+        while (true) {
+            Entry existing = entries.putIfAbsent(cacheKey, entry);
+            if (existing == null) {
+                break;
+            }
+            if (!existing.isExpired(entry.createdNanos, ttlNanos)) {
+                if (!MessageDigest.isEqual(existing.requestHash, entry.requestHash)) {
+                    return CompletableFuture.failedFuture(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                            "Idempotency-Key " + key + " was already used with a different request"));
+                }
+                return existing.result();
+            }
+            if (entries.replace(cacheKey, existing, entry)) {
+                break;
+            }
+        }
+        if (bounded) {
+            remember(entry);
+        } else {
+            unboundedEntries.add(entry);
+        }
+
+        // ebaõnnestunud päringut ei jäeta meelde, et klient saaks seda uuesti proovida
+        try {
+            action.get().whenComplete((result, failure) -> {
+                if (failure != null) {
+                    entries.remove(cacheKey, entry);
+                    promise.completeExceptionally(failure);
+                } else {
+                    promise.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            entries.remove(cacheKey, entry);
+            promise.completeExceptionally(e);
+        }
+        return promise;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void remember(Entry entry) {
+        long insertion = insertions.getAndIncrement();
+        entry.insertion = insertion;
+        Entry evicted = insertionOrder.getAndSet((int) (insertion % maxEntries), entry);
+        if (evicted != null) {
+            entries.remove(evicted.key, evicted);
+        }
+    }
+
+    // Kirjed on ringis lisamise järjekorras, seega aegunud kirjed on ringi vanemas otsas. Eemaldamine lõpeb esimese
+    // kirje juures, mis pole veel aegunud või mida pole veel ringi kirjutatud.
+    void expire() {
+        long now = System.nanoTime();
+        long end = insertions.get();
+        long insertion = Math.max(expiredInsertions, end - maxEntries);
+        for (; insertion < end; insertion++) {
+            int slot = (int) (insertion % maxEntries);
+            Entry entry = insertionOrder.get(slot);
+            if (entry == null || entry.insertion != insertion || !entry.isExpired(now, ttlNanos)) {
+                break;
+            }
+            if (insertionOrder.compareAndSet(slot, entry, null)) {
+                entries.remove(entry.key, entry);
+            }
+        }
+        expiredInsertions = insertion;
+
+        Entry entry;
+        while ((entry = unboundedEntries.peek()) != null && entry.isExpired(now, ttlNanos)) {
+            unboundedEntries.poll();
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private byte[] requestHash(Object request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot hash request", e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final byte[] requestHash;
+        private final CompletableFuture<?> result;
+        private final long createdNanos;
+        // mitmes kirje ringis, pannakse enne ringi kirjutamist
+        private volatile long insertion = -1;
+
+        private Entry(String key, byte[] requestHash, CompletableFuture<?> result, long createdNanos) {
+            this.key = key;
+            this.requestHash = requestHash;
+            this.result = result;
+            this.createdNanos = createdNanos;
+        }
+
+        private boolean isExpired(long nowNanos, long ttlNanos) {
+            return nowNanos - createdNanos > ttlNanos;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> CompletableFuture<T> result() {
+            return (CompletableFuture<T>) result;
+        }
+    }
+}
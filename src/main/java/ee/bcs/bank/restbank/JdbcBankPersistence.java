@@ -0,0 +1,376 @@
+package ee.bcs.bank.restbank;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Kontod ja tehingud andmebaasis (bank_account, bank_transaction, vt schema-bank.sql).
+// Kirjed kogutakse mällu ja flusher kirjutab kõik kogunenud kirjed ühe andmebaasi tehinguna pakkidena:
+// tehingud INSERT-idena, kontod iga konto viimase seisuga. Konto rida uuendatakse ainult siis, kui tema version
+// on see, mille me ise viimati kirjutasime, nii et teise kirjutaja muudatus ei jää märkamata.
+// Nagu journali puhul, on andmebaas ainult püsisalvestus: käivitamisel loetakse sealt pank mällu.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "jdbc")
+public class JdbcBankPersistence implements BankPersistence {
+
+    private static final String SELECT_ACCOUNTS = "SELECT id, account_number, first_name, last_name, balance, currency, locked, closed_at, version"
+            + " FROM bank_account";
+    private static final String SELECT_TRANSACTIONS = "SELECT id, account_id, sender_account_number, receiver_account_number, currency,"
+            + " amount, balance, created_at, transaction_type FROM bank_transaction ORDER BY id";
+    private static final String INSERT_ACCOUNT = "INSERT INTO bank_account (id, account_number, first_name, last_name, balance, currency,"
+            + " locked, closed_at, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0)";
+    private static final String UPDATE_ACCOUNT = "UPDATE bank_account SET first_name = ?, last_name = ?, balance = ?, locked = ?,"
+            + " version = version + 1 WHERE id = ? AND version = ?";
+    private static final String UPDATE_BALANCE = "UPDATE bank_account SET balance = ?, version = version + 1 WHERE id = ? AND version = ?";
+    private static final String CLOSE_ACCOUNT = "UPDATE bank_account SET balance = ?, closed_at = ?, version = version + 1 WHERE id = ? AND version = ?";
+    private static final String INSERT_TRANSACTION = "INSERT INTO bank_transaction (id, account_id, sender_account_number,"
+            + " receiver_account_number, currency, amount, balance, created_at, transaction_type) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Value("${bank.jdbc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${bank.jdbc.initialize-schema:true}")
+    private boolean initializeSchema;
+
+    @Resource
+    private Bank bank;
+
+    @Resource
+    private DataSource bankDataSource;
+
+    @Resource
+    private JdbcTemplate bankJdbcTemplate;
+
+    @Resource
+    private TransactionTemplate bankTransactionTemplate;
+
+    // appendLock kaitseb kogunevaid kirjeid ja järjenumbreid, flusher kirjutab need korraga andmebaasi
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition recordsPending = appendLock.newCondition();
+    private final Condition recordsDurable = appendLock.newCondition();
+    private Map<Integer, AccountChange> pendingAccounts = new LinkedHashMap<>();
+    private List<TransactionDto> pendingTransactions = new ArrayList<>();
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean running;
+    private volatile RuntimeException failure;
+    private Thread flusher;
+
+    // andmebaasis olevate kontode versioonid, neid kasutab ainult flusher
+    private final Map<Integer, Long> versions = new HashMap<>();
+
+    @PostConstruct
+    public void start() {
+        if (initializeSchema) {
+            new ResourceDatabasePopulator(new ClassPathResource("schema-bank.sql")).execute(bankDataSource);
+        }
+        recover();
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "bank-jdbc-flusher");
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        appendLock.lock();
+        try {
+            running = false;
+            recordsPending.signal();
+        } finally {
+            appendLock.unlock();
+        }
+        flusher.join();
+    }
+
+    @Override
+    public void writeAccount(AccountDto account) {
+        AccountDto copy = account.copy();
+        appendLock.lock();
+        try {
+            AccountChange change = pendingAccounts.computeIfAbsent(account.getId(), id -> new AccountChange());
+            change.account = copy;
+            change.balance = copy.getBalance();
+            change.balanceChanged = true;
+            appended();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // konto kirje on kaasas, et samas pakis loodud ja suletud konto saaks kohe suletuna lisada
+    @Override
+    public void writeAccountClosed(AccountDto account) {
+        AccountDto copy = account.copy();
+        appendLock.lock();
+        try {
+            AccountChange change = pendingAccounts.computeIfAbsent(account.getId(), id -> new AccountChange());
+            change.account = copy;
+            change.balance = copy.getBalance();
+            change.closedAt = copy.getClosedAt();
+            appended();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void writeTransaction(TransactionDto transaction) {
+        appendLock.lock();
+        try {
+            pendingTransactions.add(transaction);
+            AccountChange change = pendingAccounts.computeIfAbsent(transaction.getAccountId(), id -> new AccountChange());
+            change.balance = transaction.getBalance();
+            change.balanceChanged = true;
+            appended();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // ootab, kuni kõik seni lisatud kirjed on andmebaasis commit-itud
+    @Override
+    public void checkWritable() {
+        RuntimeException error = failure;
+        if (error != null) {
+            throw new IllegalStateException("Bank database is not writable", error);
+        }
+    }
+
+    @Override
+    public void sync() {
+        appendLock.lock();
+        try {
+            long target = appendedSequence;
+            while (durableSequence < target) {
+                if (failure != null) {
+                    throw new IllegalStateException("Bank database is not writable", failure);
+                }
+                recordsDurable.awaitUninterruptibly();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void appended() {
+        appendedSequence++;
+        recordsPending.signal();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Map<Integer, AccountChange> accounts;
+            List<TransactionDto> transactions;
+            long batchSequence;
+            boolean failed;
+
+            appendLock.lock();
+            try {
+                while (running && pendingAccounts.isEmpty() && pendingTransactions.isEmpty()) {
+                    recordsPending.awaitUninterruptibly();
+                }
+                if (!running && pendingAccounts.isEmpty() && pendingTransactions.isEmpty()) {
+                    return;
+                }
+                accounts = pendingAccounts;
+                transactions = pendingTransactions;
+                pendingAccounts = new LinkedHashMap<>();
+                pendingTransactions = new ArrayList<>();
+                batchSequence = appendedSequence;
+                failed = failure != null;
+            } finally {
+                appendLock.unlock();
+            }
+
+            // pärast esimest viga ei kirjutata enam midagi, sync() annab kõigile edasi sama vea
+            RuntimeException error = null;
+            if (!failed) {
+                try {
+                    versions.putAll(bankTransactionTemplate.execute(status -> write(accounts, transactions)));
+                } catch (RuntimeException e) {
+                    log.error("Writing {} transactions to the bank database failed", transactions.size(), e);
+                    error = e;
+                }
+            }
+
+            appendLock.lock();
+            try {
+                if (error == null && failure == null) {
+                    durableSequence = batchSequence;
+                } else if (failure == null) {
+                    failure = error;
+                }
+                recordsDurable.signalAll();
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+
+    // kirjutab paki ühes andmebaasi tehingus, tagastab muutunud kontode uued versioonid
+    private Map<Integer, Long> write(Map<Integer, AccountChange> accounts, List<TransactionDto> transactions) {
+        List<AccountChange> inserts = new ArrayList<>();
+        List<AccountChange> updates = new ArrayList<>();
+        List<AccountChange> balanceUpdates = new ArrayList<>();
+        List<AccountChange> closes = new ArrayList<>();
+        Map<Integer, Long> written = new HashMap<>();
+
+        for (Map.Entry<Integer, AccountChange> entry : accounts.entrySet()) {
+            AccountChange change = entry.getValue();
+            change.accountId = entry.getKey();
+            Long version = versions.get(change.accountId);
+            change.version = version == null ? 0 : version;
+
+            if (version == null) {
+                // konto, mida andmebaasis pole, saab lisada ainult tema enda kirje järgi (ka kohe suletuna)
+                if (change.account != null) {
+                    inserts.add(change);
+                    written.put(change.accountId, 0L);
+                }
+            } else if (change.closedAt != null) {
+                closes.add(change);
+                written.put(change.accountId, version + 1);
+            } else if (change.account != null || change.balanceChanged) {
+                (change.account != null ? updates : balanceUpdates).add(change);
+                written.put(change.accountId, version + 1);
+            }
+        }
+
+        bankJdbcTemplate.batchUpdate(INSERT_TRANSACTION, transactions, batchSize, (statement, transaction) -> {
+            statement.setInt(1, transaction.getId());
+            statement.setInt(2, transaction.getAccountId());
+            statement.setString(3, transaction.getSenderAccountNumber());
+            statement.setString(4, transaction.getReceiverAccountNumber());
+            statement.setString(5, transaction.getCurrency());
+            statement.setLong(6, transaction.getAmount());
+            statement.setLong(7, transaction.getBalance());
+            statement.setTimestamp(8, Timestamp.valueOf(transaction.getLocalDateTime()));
+            statement.setString(9, String.valueOf(transaction.getTransactionType()));
+        });
+        bankJdbcTemplate.batchUpdate(INSERT_ACCOUNT, inserts, batchSize, (statement, change) -> {
+            AccountDto account = change.account;
+            statement.setInt(1, change.accountId);
+            statement.setString(2, account.getAccountNumber());
+            statement.setString(3, account.getFirstName());
+            statement.setString(4, account.getLastName());
+            statement.setLong(5, change.balance);
+            statement.setString(6, account.getCurrency());
+            statement.setBoolean(7, Boolean.TRUE.equals(account.getLocked()));
+            statement.setTimestamp(8, change.closedAt == null ? null : Timestamp.valueOf(change.closedAt));
+        });
+        checkVersions(updates, bankJdbcTemplate.batchUpdate(UPDATE_ACCOUNT, updates, batchSize, (statement, change) -> {
+            AccountDto account = change.account;
+            statement.setString(1, account.getFirstName());
+            statement.setString(2, account.getLastName());
+            statement.setLong(3, change.balance);
+            statement.setBoolean(4, Boolean.TRUE.equals(account.getLocked()));
+            statement.setInt(5, change.accountId);
+            statement.setLong(6, change.version);
+        }));
+        checkVersions(balanceUpdates, bankJdbcTemplate.batchUpdate(UPDATE_BALANCE, balanceUpdates, batchSize, (statement, change) -> {
+            statement.setLong(1, change.balance);
+            statement.setInt(2, change.accountId);
+            statement.setLong(3, change.version);
+        }));
+        checkVersions(closes, bankJdbcTemplate.batchUpdate(CLOSE_ACCOUNT, closes, batchSize, (statement, change) -> {
+            statement.setLong(1, change.balance);
+            statement.setTimestamp(2, Timestamp.valueOf(change.closedAt));
+            statement.setInt(3, change.accountId);
+            statement.setLong(4, change.version);
+        }));
+        return written;
+    }
+
+    // 0 muudetud rida tähendab, et konto versioon andmebaasis pole see, mille me viimati kirjutasime
+    private static void checkVersions(List<AccountChange> changes, int[][] counts) {
+        int index = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                if (count == 0) {
+                    throw new OptimisticLockingFailureException("Account " + changes.get(index).accountId
+                            + " was changed in the database by someone else");
+                }
+                index++;
+            }
+        }
+    }
+
+    private void recover() {
+        AccountRepository accounts = bank.getAccountRepository();
+        AtomicInteger lastAccountId = new AtomicInteger();
+
+        bankJdbcTemplate.query(SELECT_ACCOUNTS, resultSet -> {
+            AccountDto account = new AccountDto();
+            account.setId(resultSet.getInt("id"));
+            account.setAccountNumber(resultSet.getString("account_number"));
+            account.setFirstName(resultSet.getString("first_name"));
+            account.setLastName(resultSet.getString("last_name"));
+            account.setBalance(resultSet.getLong("balance"));
+            account.setCurrency(resultSet.getString("currency"));
+            account.setLocked(resultSet.getBoolean("locked"));
+            Timestamp closedAt = resultSet.getTimestamp("closed_at");
+            if (closedAt == null) {
+                accounts.add(account);
+            } else {
+                account.setClosedAt(closedAt.toLocalDateTime());
+                accounts.addClosed(account);
+            }
+            versions.put(account.getId(), resultSet.getLong("version"));
+            // suletud konto id-d ei tohi uuesti kasutada
+            lastAccountId.accumulateAndGet(account.getId(), Math::max);
+        });
+
+        bankJdbcTemplate.query(SELECT_TRANSACTIONS, resultSet -> {
+            TransactionDto transaction = new TransactionDto();
+            transaction.setId(resultSet.getInt("id"));
+            transaction.setAccountId(resultSet.getInt("account_id"));
+            transaction.setSenderAccountNumber(resultSet.getString("sender_account_number"));
+            transaction.setReceiverAccountNumber(resultSet.getString("receiver_account_number"));
+            transaction.setCurrency(resultSet.getString("currency"));
+            transaction.setAmount(resultSet.getLong("amount"));
+            transaction.setBalance(resultSet.getLong("balance"));
+            transaction.setLocalDateTime(resultSet.getTimestamp("created_at").toLocalDateTime());
+            transaction.setTransactionType(resultSet.getString("transaction_type").charAt(0));
+            bank.restoreTransaction(transaction);
+        });
+
+        bank.reserveAccountIds(lastAccountId.get());
+        bank.getTransactionStore().sealGaps();
+        log.info("Recovered bank from the database: {} accounts, {} transactions",
+                accounts.size(), bank.getTransactions().size());
+    }
+
+    // konto muudatus pakis: konto enda kirje (omanik, lukk) ja/või tehingutest tulnud uus saldo
+    private static final class AccountChange {
+
+        private AccountDto account;
+        private long balance;
+        private boolean balanceChanged;
+        private LocalDateTime closedAt;
+        private int accountId;
+        private long version;
+    }
+}
@@ -0,0 +1,35 @@
+package ee.bcs.bank.restbank;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+// bank.persistence=jdbc korral ühenduste kogum (bank.jdbc.hikari.*) ja selle peal JdbcTemplate.
+// Spring Booti enda DataSource on välja lülitatud (vt BankApplication), et vaikimisi režiim andmebaasi ei vajaks.
+@Configuration
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "jdbc")
+public class JdbcPersistenceConfiguration {
+
+    @Bean
+    @ConfigurationProperties(prefix = "bank.jdbc.hikari")
+    public HikariDataSource bankDataSource() {
+        return new HikariDataSource();
+    }
+
+    @Bean
+    public JdbcTemplate bankJdbcTemplate(DataSource bankDataSource) {
+        return new JdbcTemplate(bankDataSource);
+    }
+
+    @Bean
+    public TransactionTemplate bankTransactionTemplate(DataSource bankDataSource) {
+        return new TransactionTemplate(new DataSourceTransactionManager(bankDataSource));
+    }
+}
@@ -0,0 +1,202 @@
+package ee.bcs.bank.restbank;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+public class JournalRecords {
+
+    // 2 on vana kustutamise kirje, enne tombstone-e, see eemaldab konto täielikult
+    public static final byte ACCOUNT_DELETED = 2;
+    public static final byte COUNTERS = 4;
+    public static final byte ACCOUNT = 5;
+    public static final byte TRANSACTION = 6;
+    // suletud konto kõigi andmetega, et tombstone-i saaks taastada ka siis, kui tema number on juba uuel kontol
+    public static final byte ACCOUNT_CLOSED = 7;
+
+    public static byte[] account(AccountDto account) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ACCOUNT);
+            out.writeInt(account.getId());
+            writeString(out, account.getAccountNumber());
+            writeString(out, account.getFirstName());
+            writeString(out, account.getLastName());
+            out.writeLong(account.getBalance());
+            writeString(out, account.getCurrency());
+            out.writeBoolean(Boolean.TRUE.equals(account.getLocked()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] accountClosed(AccountDto account) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ACCOUNT_CLOSED);
+            out.writeInt(account.getId());
+            writeString(out, account.getAccountNumber());
+            writeString(out, account.getFirstName());
+            writeString(out, account.getLastName());
+            out.writeLong(account.getBalance());
+            writeString(out, account.getCurrency());
+            out.writeBoolean(Boolean.TRUE.equals(account.getLocked()));
+            writeTime(out, account.getClosedAt());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] transaction(TransactionDto transaction) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TRANSACTION);
+            out.writeInt(transaction.getId());
+            out.writeInt(transaction.getAccountId());
+            writeString(out, transaction.getSenderAccountNumber());
+            writeString(out, transaction.getReceiverAccountNumber());
+            writeString(out, transaction.getCurrency());
+            out.writeLong(transaction.getAmount());
+            out.writeLong(transaction.getBalance());
+            writeTime(out, transaction.getLocalDateTime());
+            out.writeChar(transaction.getTransactionType());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] counters(Bank bank) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(COUNTERS);
+            out.writeInt(bank.getAccountIdCount());
+            out.writeInt(bank.getTransactionIdCount());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // taastamisel rakendatakse kirje panga olekule. Snapshotis juba olevad tehingud jäetakse vahele,
+    // konto kirje uuendab olemasoleva konto puhul ainult omaniku andmeid ja lukku, balance tuleb tehingutest
+    public static void apply(Bank bank, byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        AccountRepository accounts = bank.getAccountRepository();
+        byte type = in.readByte();
+        switch (type) {
+            case ACCOUNT: {
+                AccountDto restored = readAccount(in, type);
+                AccountDto account = accounts.findById(restored.getId());
+                if (account == null) {
+                    accounts.add(restored);
+                } else {
+                    accounts.updateOwner(account, restored.getFirstName(), restored.getLastName());
+                    account.setLocked(restored.getLocked());
+                }
+                bank.reserveAccountIds(restored.getId());
+                break;
+            }
+            case ACCOUNT_CLOSED: {
+                AccountDto restored = readAccount(in, type);
+                AccountDto account = accounts.findById(restored.getId());
+                if (account != null) {
+                    accounts.close(account, restored.getClosedAt());
+                } else {
+                    accounts.addClosed(restored);
+                }
+                bank.reserveAccountIds(restored.getId());
+                break;
+            }
+            case ACCOUNT_DELETED: {
+                int accountId = in.readInt();
+                AccountDto account = accounts.findById(accountId);
+                if (account != null) {
+                    accounts.remove(account);
+                }
+                bank.reserveAccountIds(accountId);
+                break;
+            }
+            case TRANSACTION: {
+                int transactionId = in.readInt();
+                if (bank.getTransactionStore().contains(transactionId)) {
+                    break;
+                }
+                TransactionDto transaction = readTransaction(in, transactionId);
+                bank.restoreTransaction(transaction);
+
+                AccountDto account = accounts.findById(transaction.getAccountId());
+                if (account != null) {
+                    account.setBalance(transaction.getBalance());
+                }
+                break;
+            }
+            case COUNTERS:
+                bank.reserveAccountIds(in.readInt() - 1);
+                bank.reserveTransactionIds(in.readInt() - 1);
+                break;
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    // konto kirje (ACCOUNT või ACCOUNT_CLOSED) pärast tüübi baiti
+    public static AccountDto readAccount(DataInputStream in, byte type) throws IOException {
+        AccountDto account = new AccountDto();
+        account.setId(in.readInt());
+        account.setAccountNumber(readString(in));
+        account.setFirstName(readString(in));
+        account.setLastName(readString(in));
+        account.setBalance(in.readLong());
+        account.setCurrency(readString(in));
+        account.setLocked(in.readBoolean());
+        if (type == ACCOUNT_CLOSED) {
+            account.setClosedAt(readTime(in));
+        }
+        return account;
+    }
+
+    // tehingu kirje pärast tüübi baiti ja id-d
+    public static TransactionDto readTransaction(DataInputStream in, int transactionId) throws IOException {
+        TransactionDto transaction = new TransactionDto();
+        transaction.setId(transactionId);
+        transaction.setAccountId(in.readInt());
+        transaction.setSenderAccountNumber(readString(in));
+        transaction.setReceiverAccountNumber(readString(in));
+        transaction.setCurrency(readString(in));
+        transaction.setAmount(in.readLong());
+        transaction.setBalance(in.readLong());
+        transaction.setLocalDateTime(readTime(in));
+        transaction.setTransactionType(in.readChar());
+        return transaction;
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        long epochSecond = in.readLong();
+        int nano = in.readInt();
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,17 @@
+package ee.bcs.bank.restbank;
+
+import java.util.concurrent.CompletableFuture;
+
+// Kontot muutvate käskude täitja. bank.engine=direct täidab käsu päringu lõimes,
+// bank.engine=sequencer annab käsud ühele lõimele, mis täidab need järjekorras.
+public interface LedgerEngine {
+
+    CompletableFuture<RequestResult> addNewTransaction(Bank bank, TransactionDto transactionDto);
+
+    CompletableFuture<RequestResult> receiveNewTransaction(Bank bank, TransactionDto transactionDto);
+
+    CompletableFuture<RequestResult> updateAccountLockStatus(Bank bank, int accountId);
+
+    CompletableFuture<RequestResult> deleteAccount(Bank bank, int accountId);
+
+}
@@ -0,0 +1,130 @@
+package ee.bcs.bank.restbank;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Mõõdikud on nähtavad /actuator/prometheus all. Taimerid luuakse ette, et kuumal teel poleks otsinguid ega registreerimist.
+@Component
+public class LedgerMetrics {
+
+    public static final String ACCOUNT_NOT_FOUND = "account_not_found";
+    public static final String RECEIVER_NOT_FOUND = "receiver_not_found";
+    public static final String NOT_ENOUGH_MONEY = "not_enough_money";
+    public static final String UNKNOWN_TYPE = "unknown_type";
+    public static final String NO_ROUTE = "no_route";
+    public static final String OUTBOUND_QUEUE_FULL = "outbound_queue_full";
+    public static final String INVALID_AMOUNT = "invalid_amount";
+    public static final String CURRENCY_MISMATCH = "currency_mismatch";
+    public static final String RATE_LIMITED = "rate_limited";
+    public static final String DAILY_LIMIT = "daily_limit";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private Bank bank;
+
+    private final Timer[] transactionTimers = new Timer[128];
+    private final Map<String, Counter> rejectionCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> accountTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> outboundCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void register() {
+        for (char transactionType : new char[]{TransactionService.NEW_ACCOUNT, TransactionService.DEPOSIT,
+                TransactionService.WITHDRAWAL, TransactionService.SEND_MONEY, TransactionService.RECEIVE_MONEY}) {
+            transactionTimers[transactionType] = latencyTimer("bank.transactions")
+                    .tag("type", String.valueOf(transactionType))
+                    .register(meterRegistry);
+        }
+        for (String operation : new String[]{"update_owner", "lock", "delete"}) {
+            accountTimers.put(operation, latencyTimer("bank.account.operations")
+                    .tag("operation", operation)
+                    .register(meterRegistry));
+        }
+        for (String reason : new String[]{ACCOUNT_NOT_FOUND, RECEIVER_NOT_FOUND, NOT_ENOUGH_MONEY, UNKNOWN_TYPE,
+                NO_ROUTE, OUTBOUND_QUEUE_FULL, INVALID_AMOUNT, CURRENCY_MISMATCH, RATE_LIMITED, DAILY_LIMIT}) {
+            rejectionCounter(reason);
+        }
+
+        Gauge.builder("bank.accounts", bank, ledger -> ledger.getAccountRepository().size())
+                .register(meterRegistry);
+        Gauge.builder("bank.transactions.count", bank, ledger -> ledger.getTransactionStore().committedRows())
+                .register(meterRegistry);
+        Gauge.builder("bank.heap.live", LedgerMetrics::liveHeapBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("bank.ledger.mapped", bank, ledger -> ledger.getTransactionStore().mappedBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        Timer lockWaitTimer = latencyTimer("bank.account.lock.wait").register(meterRegistry);
+        bank.getAccountRepository().getLocks().setContentionListener(waitNanos -> lockWaitTimer.record(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    public void recordTransaction(Character transactionType, long startNanos) {
+        if (transactionType == null || transactionType >= transactionTimers.length || transactionTimers[transactionType] == null) {
+            return;
+        }
+        transactionTimers[transactionType].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordAccountOperation(String operation, long startNanos) {
+        accountTimers.get(operation).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRejection(String reason) {
+        rejectionCounter(reason).increment();
+    }
+
+    public void registerOutboundQueue(String destination, AtomicInteger pending) {
+        Gauge.builder("bank.outbound.pending", pending, AtomicInteger::get)
+                .tag("destination", destination)
+                .register(meterRegistry);
+    }
+
+    public void recordOutboundTransfer(String outcome) {
+        outboundCounters.computeIfAbsent(outcome, key -> Counter.builder("bank.outbound.transfers")
+                .tag("outcome", key)
+                .register(meterRegistry)).increment();
+    }
+
+    private Counter rejectionCounter(String reason) {
+        return rejectionCounters.computeIfAbsent(reason, key -> Counter.builder("bank.transactions.rejected")
+                .tag("reason", key)
+                .register(meterRegistry));
+    }
+
+    private static Timer.Builder latencyTimer(String name) {
+        return Timer.builder(name)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram();
+    }
+
+    // Heapi pulkade kasutus viimase prügikoristuse järel ehk elus andmed, suurema osa neist moodustavad pank ja
+    // indeksid. Tehingute read on heapist väljas, need on bank.ledger.mapped all
+    private static double liveHeapBytes() {
+        long bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                bytes += usage.getUsed();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,97 @@
+package ee.bcs.bank.restbank;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// kirjutab kontod ja tehingud NDJSON-ina otse vastuse voogu, id järgi lehekülgede kaupa (afterId = eelmise lehe viimane id)
+@Service
+public class LedgerStreamService {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    // nii mitu tehingut loetakse korraga, enne kui need tehakse ja vastused kirjutatakse
+    static final int CHUNK_SIZE = 256;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private TransactionService transactionService;
+
+    public List<TransactionDto> readTransactions(InputStream in) throws IOException {
+        List<TransactionDto> transactions = new ArrayList<>();
+        try (MappingIterator<TransactionDto> iterator = objectMapper.readerFor(TransactionDto.class).readValues(in)) {
+            while (iterator.hasNextValue()) {
+                transactions.add(iterator.nextValue());
+            }
+        }
+        return transactions;
+    }
+
+    // loeb NDJSON tehingud voost tükkide kaupa ja kirjutab iga tehingu tulemuse kohe vastusesse, nii et kogu keha
+    // pole korraga mälus. atomic puhul peab kogu pakett enne tegemist loetud olema, siis tehakse see ühe korraga.
+    public void addTransactions(Bank bank, String clientId, InputStream in, boolean atomic, OutputStream out) throws IOException {
+        if (atomic) {
+            writeResults(transactionService.addNewTransactions(bank, clientId, readTransactions(in), true), out);
+            return;
+        }
+        List<TransactionDto> chunk = new ArrayList<>(CHUNK_SIZE);
+        try (MappingIterator<TransactionDto> iterator = objectMapper.readerFor(TransactionDto.class).readValues(in)) {
+            while (iterator.hasNextValue()) {
+                chunk.add(iterator.nextValue());
+                if (chunk.size() == CHUNK_SIZE) {
+                    writeResults(transactionService.addNewTransactions(bank, clientId, chunk, false), out);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeResults(transactionService.addNewTransactions(bank, clientId, chunk, false), out);
+        }
+    }
+
+    public void writeResults(List<RequestResult> requestResults, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writer();
+        for (RequestResult requestResult : requestResults) {
+            out.write(writer.writeValueAsBytes(requestResult));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    public void writeAccounts(Bank bank, int afterId, int limit, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writer();
+        for (AccountDto account : bank.snapshot().getAccounts(afterId, limit)) {
+            out.write(writer.writeValueAsBytes(account));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    public void writeTransactions(Bank bank, int afterId, int limit, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writer();
+        TransactionStore transactions = bank.getTransactionStore();
+        int committedRows = transactions.committedRows();
+        int written = 0;
+
+        // tehingu id on rea number + 1, seega afterId on järgmise rea number
+        for (int row = Math.max(afterId, 0); row < committedRows && written < limit; row++) {
+            TransactionDto transaction = transactions.get(row);
+            if (transaction != null) {
+                out.write(writer.writeValueAsBytes(transaction));
+                out.write('\n');
+                written++;
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,54 @@
+package ee.bcs.bank.restbank;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+// Rahasummad on long-ina valuuta väikseimates ühikutes (EUR puhul sentides), et vältida ümardamist ja boxingut.
+// Liitmine ja lahutamine kontrollivad ületäitumist ja viskavad ArithmeticException-i.
+public final class Money {
+
+    public static final String DEFAULT_CURRENCY = "EUR";
+
+    private Money() {
+    }
+
+    public static long add(long balance, long amount) {
+        return Math.addExact(balance, amount);
+    }
+
+    public static long subtract(long balance, long amount) {
+        return Math.subtractExact(balance, amount);
+    }
+
+    public static boolean canAdd(long balance, long amount) {
+        long sum = balance + amount;
+        return ((balance ^ sum) & (amount ^ sum)) >= 0;
+    }
+
+    public static boolean isValidAmount(long amount) {
+        return amount >= 0;
+    }
+
+    public static boolean isKnownCurrency(String currency) {
+        if (currency == null) {
+            return false;
+        }
+        try {
+            Currency.getInstance(currency);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // null valuuta tähendab konto valuutat
+    public static boolean sameCurrency(String currency, String accountCurrency) {
+        return currency == null || currency.equals(accountCurrency);
+    }
+
+    // näiteks 12345 EUR -> "123.45 EUR"
+    public static String format(long amount, String currency) {
+        int digits = isKnownCurrency(currency) ? Math.max(Currency.getInstance(currency).getDefaultFractionDigits(), 0) : 2;
+        return BigDecimal.valueOf(amount, digits).toPlainString() + " " + currency;
+    }
+}
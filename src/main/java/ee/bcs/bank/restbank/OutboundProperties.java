@@ -0,0 +1,37 @@
+package ee.bcs.bank.restbank;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// bank.outbound.banks.<IBAN-i pangakood>=<teise panga /solution aadress>
+// bank.outbound.routes.<kontonumbri prefiks>=<aadress> vanemat kujul kontonumbrite jaoks
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "bank.outbound")
+public class OutboundProperties {
+
+    private Map<String, String> banks = new HashMap<>();
+    private Map<String, String> routes = new HashMap<>();
+
+    // ühe sihtpanga kohta
+    private int batchSize = 100;
+    private int maxInFlight = 4;
+    private int queueCapacity = 10000;
+
+    private int maxAttempts = 6;
+    private Duration initialBackoff = Duration.ofMillis(200);
+    private Duration maxBackoff = Duration.ofSeconds(10);
+    private Duration requestTimeout = Duration.ofSeconds(5);
+
+    // teadmata tulemusega pakk saadetakse sama võtmega uuesti, kuni unknownTimeout on möödas
+    private Duration unknownRetryInterval = Duration.ofMinutes(1);
+    private Duration unknownTimeout = Duration.ofHours(12);
+
+}
@@ -0,0 +1,452 @@
+package ee.bcs.bank.restbank;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Teise panka saadetud raha läheb sihtpanga järjekorda ja sealt pakkidena teise panga /receive/transactions-i.
+// Igale sihtpangale on korraga teel kuni maxInFlight pakki, ebaõnnestunud pakki proovitakse sama
+// Idempotency-Key-ga uuesti. Raha kantakse saatjale tagasi ainult siis, kui teine pank tehingu selgelt tagasi lükkab.
+// Aegunud päring, katkenud ühendus või 5xx vastus ei ütle, kas teine pank raha sai. Kui katsed saavad otsa,
+// jääb pakk teadmata olekusse: see ei võta enam teel olevate pakkide kohta ja seda saadetakse unknownRetryInterval
+// järel sama võtmega uuesti. Teine pank vastab korduvale võtmele meelde jäetud tulemusega, nii et see on ühtlasi
+// oleku päring. unknownTimeout peab olema lühem kui teise panga bank.idempotency.ttl; kui see möödub, jäetakse
+// ülekanded käsitsi lahendamiseks (logi ja unresolved mõõdik) ja raha tagasi ei kanta.
+// Koht järjekorras võetakse enne raha mahavõtmist (reserve), nii et täis järjekorda ülekandeid ei lisata.
+// Järjekord on mälus: pärast krahhi pooleli jäänud ülekandeid uuesti ei saadeta.
+@Slf4j
+@Service
+public class OutboundTransferService {
+
+    public static final String CONFIRMED = "confirmed";
+    public static final String REVERSED = "reversed";
+    public static final String RETRIED = "retried";
+    public static final String UNKNOWN = "unknown";
+    public static final String UNRESOLVED = "unresolved";
+    // saatja panga kood, teine pank hoiab Idempotency-Key-d selle all, mitte ühenduse aadressi all
+    public static final String BANK_CODE_HEADER = "Bank-Code";
+
+    private static final TypeReference<List<RequestResult>> RESULTS = new TypeReference<>() {
+    };
+
+    @Resource
+    private OutboundProperties outboundProperties;
+
+    @Resource
+    private BankPersistence bankPersistence;
+
+    @Resource
+    private ChangeFeed changeFeed;
+
+    @Resource
+    private BankClock bankClock;
+
+    @Resource
+    private LedgerMetrics ledgerMetrics;
+
+    @Resource
+    private VelocityLimits velocityLimits;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private AccountNumberAllocator accountNumberAllocator;
+
+    private final Map<String, Destination> destinationsByBankCode = new HashMap<>();
+    private final List<Destination> destinations = new ArrayList<>();
+    private HttpClient httpClient;
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        for (Map.Entry<String, String> bank : outboundProperties.getBanks().entrySet()) {
+            Destination destination = new Destination(bank.getKey(), bank.getValue(),
+                    outboundProperties.getMaxInFlight(), outboundProperties.getQueueCapacity());
+            destinationsByBankCode.put(bank.getKey(), destination);
+            ledgerMetrics.registerOutboundQueue(destination.prefix, destination.pending);
+        }
+        for (Map.Entry<String, String> route : outboundProperties.getRoutes().entrySet()) {
+            Destination destination = new Destination(route.getKey(), route.getValue(),
+                    outboundProperties.getMaxInFlight(), outboundProperties.getQueueCapacity());
+            destinations.add(destination);
+            ledgerMetrics.registerOutboundQueue(destination.prefix, destination.pending);
+        }
+        // pikem prefiks enne, et leida kõige täpsem marsruut
+        destinations.sort((first, second) -> second.prefix.length() - first.prefix.length());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "bank-outbound-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(outboundProperties.getRequestTimeout())
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(outboundProperties.getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        List<Destination> all = new ArrayList<>(destinations);
+        all.addAll(destinationsByBankCode.values());
+        for (Destination destination : all) {
+            if (destination.pending.get() > 0) {
+                log.warn("{} outbound transfers to {} were not delivered", destination.pending.get(), destination.prefix);
+            }
+        }
+    }
+
+    // IBAN-i korral sihtpank pangakoodi järgi, muidu see, kelle prefiksiga kontonumber algab, või null
+    Destination route(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        String bankCode = AccountNumberAllocator.bankCodeOf(accountNumber);
+        if (bankCode != null) {
+            Destination destination = destinationsByBankCode.get(bankCode);
+            if (destination != null) {
+                return destination;
+            }
+        }
+        for (Destination destination : destinations) {
+            if (accountNumber.startsWith(destination.prefix)) {
+                return destination;
+            }
+        }
+        return null;
+    }
+
+    // võtab sihtpanga järjekorras koha enne raha mahavõtmist, false, kui järjekord on täis või panka pole
+    public boolean reserve(String receiverAccountNumber) {
+        Destination destination = route(receiverAccountNumber);
+        return destination != null && destination.tryReserve();
+    }
+
+    // reserve-ga võetud koht, mida ei kasutatud
+    public void release(String receiverAccountNumber) {
+        route(receiverAccountNumber).pending.decrementAndGet();
+    }
+
+    // kutsutakse saatja konto luku all pärast seda, kui raha on kontolt maha võetud, koht on reserve-ga võetud
+    public void enqueue(Bank bank, TransactionDto transactionDto) {
+        Destination destination = route(transactionDto.getReceiverAccountNumber());
+        destination.queue.add(new OutboundTransfer(bank, transactionDto));
+        scheduleDispatch(destination);
+    }
+
+    private void scheduleDispatch(Destination destination) {
+        if (!destination.dispatchScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                destination.dispatchScheduled.set(false);
+                dispatch(destination);
+            });
+        } catch (RejectedExecutionException e) {
+            destination.dispatchScheduled.set(false);
+        }
+    }
+
+    private void dispatch(Destination destination) {
+        while (destination.inFlight.tryAcquire()) {
+            List<OutboundTransfer> transfers = new ArrayList<>();
+            OutboundTransfer transfer;
+            while (transfers.size() < outboundProperties.getBatchSize() && (transfer = destination.queue.poll()) != null) {
+                transfers.add(transfer);
+            }
+            if (transfers.isEmpty()) {
+                destination.inFlight.release();
+                if (destination.queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            // raha lahkub pangast alles siis, kui mahavõtmine on journalis kettal
+            Batch batch = new Batch(transfers);
+            try {
+                bankPersistence.sync();
+                batch.body = objectMapper.writeValueAsBytes(payload(transfers));
+            } catch (IOException | RuntimeException e) {
+                // pakk pole pangast lahkunud, raha võib tagasi kanda
+                log.error("Preparing outbound batch to {} failed", destination.prefix, e);
+                settle(destination, batch, null, e.getMessage());
+                continue;
+            }
+            send(destination, batch, 1);
+        }
+    }
+
+    private void send(Destination destination, Batch batch, int attempt) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(destination.baseUrl + "/receive/transactions"))
+                .timeout(outboundProperties.getRequestTimeout())
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", batch.key)
+                .header(BANK_CODE_HEADER, accountNumberAllocator.getBankCode())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(batch.body))
+                .build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenCompleteAsync((response, failure) -> handleResponse(destination, batch, attempt, response, failure), executor);
+    }
+
+    private void handleResponse(Destination destination, Batch batch, int attempt, HttpResponse<byte[]> response, Throwable failure) {
+        String error;
+        boolean retryable;
+        if (failure != null) {
+            error = failure.toString();
+            retryable = true;
+        } else if (response.statusCode() == 200) {
+            try {
+                List<RequestResult> results = objectMapper.readValue(response.body(), RESULTS);
+                if (results.size() != batch.transfers.size()) {
+                    throw new IOException("Expected " + batch.transfers.size() + " results, got " + results.size());
+                }
+                settle(destination, batch, results, null);
+                return;
+            } catch (IOException e) {
+                error = e.getMessage();
+                retryable = true;
+            }
+        } else {
+            error = "HTTP " + response.statusCode();
+            retryable = response.statusCode() >= 500 || response.statusCode() == 429;
+        }
+
+        if (!retryable) {
+            // teine pank vastas, et pakki ei võetud vastu
+            log.warn("{} transfers to {} were rejected: {}", batch.transfers.size(), destination.prefix, error);
+            settle(destination, batch, null, error);
+            return;
+        }
+        try {
+            if (attempt < outboundProperties.getMaxAttempts()) {
+                ledgerMetrics.recordOutboundTransfer(RETRIED);
+                executor.schedule(() -> send(destination, batch, attempt + 1), backoffMillis(attempt), TimeUnit.MILLISECONDS);
+                return;
+            }
+            if (System.nanoTime() - batch.createdNanos < outboundProperties.getUnknownTimeout().toNanos()) {
+                if (!batch.parked) {
+                    park(destination, batch, attempt, error);
+                }
+                executor.schedule(() -> send(destination, batch, attempt + 1),
+                        outboundProperties.getUnknownRetryInterval().toMillis(), TimeUnit.MILLISECONDS);
+                return;
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("Outbound transfers are shutting down, {} transfers to {} stay unsent", batch.transfers.size(), destination.prefix);
+            return;
+        }
+        log.error("Outcome of transfers {} to {} is still unknown after {}: {}. Leaving them for manual reconciliation",
+                transactionIds(batch), destination.prefix, outboundProperties.getUnknownTimeout(), error);
+        for (int i = 0; i < batch.transfers.size(); i++) {
+            ledgerMetrics.recordOutboundTransfer(UNRESOLVED);
+        }
+        finish(destination, batch);
+    }
+
+    // teadmata olekus pakk ei võta teel olevate pakkide kohta, et teised pakid saaksid minna
+    private void park(Destination destination, Batch batch, int attempt, String error) {
+        batch.parked = true;
+        log.warn("Delivering transfers {} to {} failed after {} attempts: {}. Outcome unknown, resending with the same key",
+                transactionIds(batch), destination.prefix, attempt, error);
+        for (int i = 0; i < batch.transfers.size(); i++) {
+            ledgerMetrics.recordOutboundTransfer(UNKNOWN);
+        }
+        destination.inFlight.release();
+        scheduleDispatch(destination);
+    }
+
+    // results == null korral lükati kogu pakk tagasi ja kõik ülekanded kantakse tagasi
+    private void settle(Destination destination, Batch batch, List<RequestResult> results, String error) {
+        try {
+            boolean reversed = false;
+            for (int i = 0; i < batch.transfers.size(); i++) {
+                OutboundTransfer transfer = batch.transfers.get(i);
+                if (results != null && results.get(i).getError() == null) {
+                    ledgerMetrics.recordOutboundTransfer(CONFIRMED);
+                } else {
+                    reverse(transfer, results == null ? error : results.get(i).getError());
+                    reversed = true;
+                }
+            }
+            if (reversed) {
+                bankPersistence.sync();
+            }
+        } finally {
+            finish(destination, batch);
+        }
+    }
+
+    private void finish(Destination destination, Batch batch) {
+        destination.pending.addAndGet(-batch.transfers.size());
+        if (!batch.parked) {
+            destination.inFlight.release();
+        }
+        scheduleDispatch(destination);
+    }
+
+    private void reverse(OutboundTransfer transfer, String reason) {
+        Bank bank = transfer.bank;
+        AccountRepository accounts = bank.getAccountRepository();
+        AccountLocks locks = accounts.getLocks();
+        locks.lock(transfer.accountId);
+        try {
+            bankPersistence.checkWritable();
+            AccountDto account = accounts.findById(transfer.accountId);
+            if (account == null) {
+                log.error("Transfer {} was rejected ({}), but account {} no longer exists to return {} to",
+                        transfer.transactionId, reason, transfer.accountId, transfer.amount);
+                return;
+            }
+            long newBalance = Money.add(account.getBalance(), transfer.amount);
+
+            TransactionDto reversal = new TransactionDto();
+            reversal.setAccountId(transfer.accountId);
+            reversal.setSenderAccountNumber(transfer.receiverAccountNumber);
+            reversal.setReceiverAccountNumber(transfer.senderAccountNumber);
+            reversal.setAmount(transfer.amount);
+            reversal.setCurrency(transfer.currency);
+            reversal.setBalance(newBalance);
+            reversal.setLocalDateTime(bankClock.now());
+            reversal.setTransactionType(TransactionService.REVERSAL);
+
+            int reversalId = bank.addTransactionToTransactions(reversal);
+            bankPersistence.writeTransaction(reversal);
+            changeFeed.transaction(reversalId);
+            account.setBalance(newBalance);
+            //tagasi tulnud raha ei loe ülekande päeva limiidi hulka
+            velocityLimits.refundSpent(transfer.accountId, TransactionService.SEND_MONEY, transfer.epochDay, transfer.amount);
+        } finally {
+            locks.unlock(transfer.accountId);
+        }
+        log.info("Transfer {} to {} reversed: {}", transfer.transactionId, transfer.receiverAccountNumber, reason);
+        ledgerMetrics.recordOutboundTransfer(REVERSED);
+    }
+
+    private long backoffMillis(int attempt) {
+        long backoff = outboundProperties.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20);
+        backoff = Math.min(backoff, outboundProperties.getMaxBackoff().toMillis());
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private static List<Integer> transactionIds(Batch batch) {
+        List<Integer> transactionIds = new ArrayList<>(batch.transfers.size());
+        for (OutboundTransfer transfer : batch.transfers) {
+            transactionIds.add(transfer.transactionId);
+        }
+        return transactionIds;
+    }
+
+    private static List<TransactionDto> payload(List<OutboundTransfer> transfers) {
+        List<TransactionDto> transactionDtos = new ArrayList<>(transfers.size());
+        for (OutboundTransfer transfer : transfers) {
+            TransactionDto transactionDto = new TransactionDto();
+            transactionDto.setSenderAccountNumber(transfer.senderAccountNumber);
+            transactionDto.setReceiverAccountNumber(transfer.receiverAccountNumber);
+            transactionDto.setAmount(transfer.amount);
+            transactionDto.setCurrency(transfer.currency);
+            transactionDtos.add(transactionDto);
+        }
+        return transactionDtos;
+    }
+
+    static final class Destination {
+
+        private final String prefix;
+        private final String baseUrl;
+        private final ConcurrentLinkedQueue<OutboundTransfer> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+        private final Semaphore inFlight;
+        private final int queueCapacity;
+
+        private Destination(String prefix, String baseUrl, int maxInFlight, int queueCapacity) {
+            this.prefix = prefix;
+            this.baseUrl = baseUrl;
+            this.inFlight = new Semaphore(maxInFlight);
+            this.queueCapacity = queueCapacity;
+        }
+
+        String getPrefix() {
+            return prefix;
+        }
+
+        // ootel on järjekorras, teel ja teadmata olekus olevad ülekanded. Kontroll ja koha võtmine on üks compareAndSet
+        private boolean tryReserve() {
+            int current;
+            do {
+                current = pending.get();
+                if (current >= queueCapacity) {
+                    return false;
+                }
+            } while (!pending.compareAndSet(current, current + 1));
+            return true;
+        }
+    }
+
+    private static final class OutboundTransfer {
+
+        private final Bank bank;
+        private final int transactionId;
+        private final int accountId;
+        private final String senderAccountNumber;
+        private final String receiverAccountNumber;
+        private final long amount;
+        private final String currency;
+        private final long epochDay;
+
+        private OutboundTransfer(Bank bank, TransactionDto transactionDto) {
+            this.bank = bank;
+            this.transactionId = transactionDto.getId();
+            this.accountId = transactionDto.getAccountId();
+            this.senderAccountNumber = transactionDto.getSenderAccountNumber();
+            this.receiverAccountNumber = transactionDto.getReceiverAccountNumber();
+            this.amount = transactionDto.getAmount();
+            this.currency = transactionDto.getCurrency();
+            this.epochDay = transactionDto.getLocalDateTime().toLocalDate().toEpochDay();
+        }
+    }
+
+    // sama võti ja sisu kõigil katsetel, ka teadmata olekus uuesti saatmisel
+    private static final class Batch {
+
+        private final String key = UUID.randomUUID().toString();
+        private final long createdNanos = System.nanoTime();
+        private final List<OutboundTransfer> transfers;
+        private byte[] body;
+        private volatile boolean parked;
+
+        private Batch(List<OutboundTransfer> transfers) {
+            this.transfers = transfers;
+        }
+    }
+}
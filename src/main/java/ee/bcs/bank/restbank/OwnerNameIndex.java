@@ -0,0 +1,65 @@
+package ee.bcs.bank.restbank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Avatud kontod omaniku perekonnanime järgi. Võti on (normaliseeritud nimi, konto id), seega on sama nimega ja
+// sama algusega nimed kaardis järjest ning otsing loeb ainult neid. Indeksit muudab AccountRepository
+// (vt ownerNames), otsida saab lukuta.
+class OwnerNameIndex {
+
+    private record Key(String name, int accountId) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int result = name.compareTo(other.name);
+            return result != 0 ? result : Integer.compare(accountId, other.accountId);
+        }
+    }
+
+    private final ConcurrentSkipListMap<Key, AccountDto> accounts = new ConcurrentSkipListMap<>();
+
+    // tõstutundetu võrdlus, tühikud alguses ja lõpus ei loe
+    static String normalize(String name) {
+        return name == null ? "" : name.strip().toLowerCase(Locale.ROOT);
+    }
+
+    static boolean matches(String name, String normalizedName, boolean prefix) {
+        String normalized = normalize(name);
+        return prefix ? normalized.startsWith(normalizedName) : normalized.equals(normalizedName);
+    }
+
+    void add(AccountDto account) {
+        accounts.put(new Key(normalize(account.getLastName()), account.getId()), account);
+    }
+
+    void remove(String lastName, int accountId) {
+        accounts.remove(new Key(normalize(lastName), accountId));
+    }
+
+    // Kontod, mille perekonnanimi on lastName või (lastNamePrefix korral) algab sellega, eesnime kontroll
+    // (firstNamePrefix korral nime algus) ainult nende peal. Tulemus on nime ja id järjekorras, kuni limit kontot
+    List<AccountDto> find(String lastName, boolean lastNamePrefix, String firstName, boolean firstNamePrefix, int limit) {
+        String name = normalize(lastName);
+        String normalizedFirstName = firstName == null ? null : normalize(firstName);
+        List<AccountDto> result = new ArrayList<>();
+        for (Map.Entry<Key, AccountDto> entry : accounts.tailMap(new Key(name, Integer.MIN_VALUE)).entrySet()) {
+            String key = entry.getKey().name();
+            if (lastNamePrefix ? !key.startsWith(name) : !key.equals(name)) {
+                break;
+            }
+            AccountDto account = entry.getValue();
+            // ümbernimetamine võib käia otsinguga samal ajal, seega kontrollitakse ka konto praegust nime
+            if (matches(account.getLastName(), name, lastNamePrefix)
+                    && (normalizedFirstName == null || matches(account.getFirstName(), normalizedFirstName, firstNamePrefix))) {
+                result.add(account);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
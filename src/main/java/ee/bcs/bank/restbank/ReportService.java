@@ -0,0 +1,344 @@
+package ee.bcs.bank.restbank;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Aruanded arvutatakse fork-join tükeldatud läbimisena üle tehingute ridade kuni committedRows piirini: need read
+// enam ei muutu, seega pole vaja lukke ja kirjutajad ei pea ootama. Loetakse ainult ridu, mis BalanceCheckpoints-i
+// järgi võivad aruande ajavahemikku jääda. Kontode edetabel loetakse samuti ridadest, nii et selles on ka
+// suletud ja arhiveeritud kontod. Lõppenud päevade tulemused jäetakse meelde.
+@Service
+public class ReportService {
+
+    private static final long MICROS_PER_DAY = 86_400_000_000L;
+    private static final int SPLIT_ROWS = 1 << 16;
+    private static final int SPLIT_ACCOUNTS = 1024;
+    private static final int TYPES = 128;
+    private static final int COUNT = 0;
+    private static final int VOLUME = 1;
+    private static final int LAST_ROW = 2;
+    // päev loetakse lõppenuks veidi pärast keskööd, et ka enne keskööd alustatud tehingud oleksid kirjas
+    private static final Duration CLOSE_DELAY = Duration.ofMinutes(1);
+
+    @Value("${bank.reports.parallelism:0}")
+    private int parallelism;
+
+    @Value("${bank.reports.cached-days:400}")
+    private int cachedDays;
+
+    @Resource
+    private Bank bank;
+
+    @Resource
+    private BalanceCheckpoints balanceCheckpoints;
+
+    @Resource
+    private AccountArchive accountArchive;
+
+    private ForkJoinPool pool;
+    // päev -> valuuta -> loendurid tehingu tüübi järgi: [tüüp] arv, [TYPES + tüüp] summa
+    private Map<LocalDate, Map<String, long[]>> dayCache;
+    private Map<String, List<AccountVolumeDto>> topAccountsCache;
+
+    @PostConstruct
+    public void start() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        dayCache = boundedCache(cachedDays);
+        topAccountsCache = boundedCache(cachedDays);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdown();
+    }
+
+    public List<DailyTotalDto> getDailyTotals(LocalDate from, LocalDate to) {
+        List<DailyTotalDto> dailyTotals = new ArrayList<>();
+        for (Map.Entry<LocalDate, Map<String, long[]>> day : dayReports(from, to).entrySet()) {
+            for (Map.Entry<String, long[]> currency : new TreeMap<>(day.getValue()).entrySet()) {
+                long[] totals = currency.getValue();
+                for (char type = 0; type < TYPES; type++) {
+                    if (totals[type] > 0) {
+                        DailyTotalDto dailyTotalDto = new DailyTotalDto();
+                        dailyTotalDto.setDay(day.getKey());
+                        dailyTotalDto.setTransactionType(type);
+                        dailyTotalDto.setCurrency(currency.getKey());
+                        dailyTotalDto.setCount(totals[type]);
+                        dailyTotalDto.setAmount(totals[TYPES + type]);
+                        dailyTotals.add(dailyTotalDto);
+                    }
+                }
+            }
+        }
+        return dailyTotals;
+    }
+
+    public List<DailyCashFlowDto> getDailyCashFlow(LocalDate from, LocalDate to) {
+        List<DailyCashFlowDto> cashFlows = new ArrayList<>();
+        for (Map.Entry<LocalDate, Map<String, long[]>> day : dayReports(from, to).entrySet()) {
+            for (Map.Entry<String, long[]> currency : new TreeMap<>(day.getValue()).entrySet()) {
+                long[] totals = currency.getValue();
+                if (totals[TransactionService.DEPOSIT] == 0 && totals[TransactionService.WITHDRAWAL] == 0) {
+                    continue;
+                }
+                DailyCashFlowDto cashFlowDto = new DailyCashFlowDto();
+                cashFlowDto.setDay(day.getKey());
+                cashFlowDto.setCurrency(currency.getKey());
+                cashFlowDto.setDeposits(totals[TYPES + TransactionService.DEPOSIT]);
+                cashFlowDto.setWithdrawals(totals[TYPES + TransactionService.WITHDRAWAL]);
+                cashFlows.add(cashFlowDto);
+            }
+        }
+        return cashFlows;
+    }
+
+    // limit kontot, mille tehingute summa päevadel from..to on kõige suurem
+    public List<AccountVolumeDto> getTopAccounts(LocalDate from, LocalDate to, int limit) {
+        if (from.isAfter(to) || limit < 1) {
+            return List.of();
+        }
+        String key = from + "/" + to + "/" + limit;
+        List<AccountVolumeDto> topAccounts = topAccountsCache.get(key);
+        if (topAccounts != null) {
+            return topAccounts;
+        }
+
+        TransactionStore transactionStore = bank.getTransactionStore();
+        long fromMicros = from.toEpochDay() * MICROS_PER_DAY;
+        long toMicros = (to.toEpochDay() + 1) * MICROS_PER_DAY - 1;
+        int[] rows = balanceCheckpoints.rowRange(fromMicros, toMicros);
+        Map<Integer, long[]> volumes = pool.invoke(new AccountVolumesTask(transactionStore, rows[0], rows[1], fromMicros, toMicros));
+
+        // väikseim ees, et selle saaks suurema vastu välja vahetada
+        PriorityQueue<Map.Entry<Integer, long[]>> top = new PriorityQueue<>(limit + 1,
+                Comparator.comparingLong((Map.Entry<Integer, long[]> volume) -> volume.getValue()[VOLUME]));
+        for (Map.Entry<Integer, long[]> volume : volumes.entrySet()) {
+            top.add(volume);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        topAccounts = new ArrayList<>(top.size());
+        for (Map.Entry<Integer, long[]> volume : top) {
+            topAccounts.add(accountVolume(transactionStore, volume.getKey(), volume.getValue()));
+        }
+        topAccounts.sort(Comparator.comparingLong(AccountVolumeDto::getVolume).reversed());
+        topAccounts = Collections.unmodifiableList(topAccounts);
+        if (isClosed(to)) {
+            topAccountsCache.put(key, topAccounts);
+        }
+        return topAccounts;
+    }
+
+    private Map<LocalDate, Map<String, long[]>> dayReports(LocalDate from, LocalDate to) {
+        Map<LocalDate, Map<String, long[]>> reports = new TreeMap<>();
+        LocalDate firstMissing = null;
+        LocalDate lastMissing = null;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            Map<String, long[]> report = dayCache.get(day);
+            if (report != null) {
+                reports.put(day, report);
+            } else {
+                firstMissing = firstMissing == null ? day : firstMissing;
+                lastMissing = day;
+            }
+        }
+        if (firstMissing == null) {
+            return reports;
+        }
+
+        TransactionStore transactionStore = bank.getTransactionStore();
+        int[] rows = balanceCheckpoints.rowRange(firstMissing.toEpochDay() * MICROS_PER_DAY,
+                (lastMissing.toEpochDay() + 1) * MICROS_PER_DAY - 1);
+        Map<Long, Map<String, long[]>> scanned = pool.invoke(new DayTotalsTask(transactionStore, rows[0], rows[1],
+                firstMissing.toEpochDay(), lastMissing.toEpochDay()));
+        for (LocalDate day = firstMissing; !day.isAfter(lastMissing); day = day.plusDays(1)) {
+            if (reports.containsKey(day)) {
+                continue;
+            }
+            Map<String, long[]> report = scanned.getOrDefault(day.toEpochDay(), Map.of());
+            reports.put(day, report);
+            if (isClosed(day)) {
+                dayCache.put(day, report);
+            }
+        }
+        return reports;
+    }
+
+    // konto number tuleb avatud või suletud kontolt või arhiivist, valuuta konto viimaselt realt
+    private AccountVolumeDto accountVolume(TransactionStore transactionStore, int accountId, long[] volume) {
+        AccountVolumeDto accountVolumeDto = new AccountVolumeDto();
+        accountVolumeDto.setAccountId(accountId);
+        accountVolumeDto.setAccountNumber(accountNumber(accountId));
+        accountVolumeDto.setCurrency(transactionStore.currency((int) volume[LAST_ROW]));
+        accountVolumeDto.setCount(volume[COUNT]);
+        accountVolumeDto.setVolume(volume[VOLUME]);
+        return accountVolumeDto;
+    }
+
+    private String accountNumber(int accountId) {
+        AccountRepository accounts = bank.getAccountRepository();
+        AccountDto account = accounts.findById(accountId);
+        if (account == null) {
+            account = accounts.findClosedById(accountId);
+        }
+        if (account == null) {
+            try {
+                account = accountArchive.getAccount(accountId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return account == null ? null : account.getAccountNumber();
+    }
+
+    private static boolean isClosed(LocalDate day) {
+        return LocalDateTime.now().minus(CLOSE_DELAY).toLocalDate().isAfter(day);
+    }
+
+    private static <K, V> Map<K, V> boundedCache(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    private static final class DayTotalsTask extends RecursiveTask<Map<Long, Map<String, long[]>>> {
+
+        private final TransactionStore transactionStore;
+        private final int fromRow;
+        private final int toRow;
+        private final long firstDay;
+        private final long lastDay;
+
+        private DayTotalsTask(TransactionStore transactionStore, int fromRow, int toRow, long firstDay, long lastDay) {
+            this.transactionStore = transactionStore;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+        }
+
+        @Override
+        protected Map<Long, Map<String, long[]>> compute() {
+            if (toRow - fromRow > SPLIT_ROWS) {
+                int middle = (fromRow + toRow) >>> 1;
+                DayTotalsTask second = new DayTotalsTask(transactionStore, middle, toRow, firstDay, lastDay);
+                second.fork();
+                Map<Long, Map<String, long[]>> days = new DayTotalsTask(transactionStore, fromRow, middle, firstDay, lastDay).compute();
+                merge(days, second.join());
+                return days;
+            }
+
+            Map<Long, Map<String, long[]>> days = new HashMap<>();
+            for (int row = fromRow; row < toRow; row++) {
+                if (!transactionStore.contains(row + 1)) {
+                    continue;
+                }
+                long day = Math.floorDiv(transactionStore.epochMicros(row), MICROS_PER_DAY);
+                if (day < firstDay || day > lastDay) {
+                    continue;
+                }
+                char type = transactionStore.transactionType(row);
+                if (type >= TYPES) {
+                    continue;
+                }
+                long[] totals = days.computeIfAbsent(day, d -> new HashMap<>())
+                        .computeIfAbsent(transactionStore.currency(row), c -> new long[TYPES * 2]);
+                totals[type]++;
+                totals[TYPES + type] += transactionStore.amount(row);
+            }
+            return days;
+        }
+
+        private static void merge(Map<Long, Map<String, long[]>> days, Map<Long, Map<String, long[]>> other) {
+            for (Map.Entry<Long, Map<String, long[]>> day : other.entrySet()) {
+                Map<String, long[]> currencies = days.computeIfAbsent(day.getKey(), d -> new HashMap<>());
+                for (Map.Entry<String, long[]> currency : day.getValue().entrySet()) {
+                    long[] totals = currencies.putIfAbsent(currency.getKey(), currency.getValue());
+                    if (totals != null) {
+                        long[] otherTotals = currency.getValue();
+                        for (int i = 0; i < totals.length; i++) {
+                            totals[i] += otherTotals[i];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // konto id -> [COUNT] ridade arv, [VOLUME] summa, [LAST_ROW] viimane rida
+    private static final class AccountVolumesTask extends RecursiveTask<Map<Integer, long[]>> {
+
+        private final TransactionStore transactionStore;
+        private final int fromRow;
+        private final int toRow;
+        private final long fromMicros;
+        private final long toMicros;
+
+        private AccountVolumesTask(TransactionStore transactionStore, int fromRow, int toRow, long fromMicros, long toMicros) {
+            this.transactionStore = transactionStore;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.fromMicros = fromMicros;
+            this.toMicros = toMicros;
+        }
+
+        @Override
+        protected Map<Integer, long[]> compute() {
+            if (toRow - fromRow > SPLIT_ROWS) {
+                int middle = (fromRow + toRow) >>> 1;
+                AccountVolumesTask second = new AccountVolumesTask(transactionStore, middle, toRow, fromMicros, toMicros);
+                second.fork();
+                Map<Integer, long[]> volumes = new AccountVolumesTask(transactionStore, fromRow, middle, fromMicros, toMicros).compute();
+                for (Map.Entry<Integer, long[]> other : second.join().entrySet()) {
+                    long[] volume = volumes.putIfAbsent(other.getKey(), other.getValue());
+                    if (volume != null) {
+                        volume[COUNT] += other.getValue()[COUNT];
+                        volume[VOLUME] += other.getValue()[VOLUME];
+                        volume[LAST_ROW] = Math.max(volume[LAST_ROW], other.getValue()[LAST_ROW]);
+                    }
+                }
+                return volumes;
+            }
+
+            Map<Integer, long[]> volumes = new HashMap<>();
+            for (int row = fromRow; row < toRow; row++) {
+                if (!transactionStore.contains(row + 1)) {
+                    continue;
+                }
+                long epochMicros = transactionStore.epochMicros(row);
+                if (epochMicros < fromMicros || epochMicros > toMicros) {
+                    continue;
+                }
+                long[] volume = volumes.computeIfAbsent(transactionStore.accountId(row), accountId -> new long[3]);
+                volume[COUNT]++;
+                volume[VOLUME] += transactionStore.amount(row);
+                volume[LAST_ROW] = row;
+            }
+            return volumes;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ee.bcs.bank.restbank;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -10,4 +11,23 @@ public class RequestResult {
     private int transactionId;
     private String message;
     private String error;
+    // sõnumi lõpp, mis liidetakse alles getMessage-is ehk JSON-i kirjutamisel, vt setMessage(String, String)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String messageArgument;
+
+    public String getMessage() {
+        return messageArgument == null ? message : message + messageArgument;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+        this.messageArgument = null;
+    }
+
+    // konstantne algus ja üks väärtus, tehingu tegemisel sõne kokku ei panda
+    public void setMessage(String message, String messageArgument) {
+        this.message = message;
+        this.messageArgument = messageArgument;
+    }
 }
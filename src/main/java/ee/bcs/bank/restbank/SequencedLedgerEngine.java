@@ -0,0 +1,292 @@
+package ee.bcs.bank.restbank;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Päringu lõimed kirjutavad käsud eelnevalt loodud ringpuhvrisse, üks lõim täidab need järjekorras.
+// Pesa võetakse CAS-iga, valmis pesa avaldatakse tema järjenumbri kirjutamisega published massiivi.
+// Täitja võtab korraga kõik järjest avaldatud käsud, teeb neile ühe journali sync-i ja alles siis
+// vastab. Kontode triiplukke see mootor ei kasuta: pank läheb ühe kirjutaja lukule (AccountLocks.useWriterLock),
+// mida täitja võtab partii kohta üks kord. Väljaspool mootorit kirjutajad (paketid, tagasipööramised, snapshot)
+// võtavad sama luku ja ootavad partii lõpuni.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "bank.engine", havingValue = "sequencer")
+public class SequencedLedgerEngine implements LedgerEngine {
+
+    private static final int NEW_TRANSACTION = 1;
+    private static final int RECEIVE_TRANSACTION = 2;
+    private static final int LOCK_ACCOUNT = 3;
+    private static final int DELETE_ACCOUNT = 4;
+    private static final int SPINS = 1000;
+
+    @Value("${bank.engine.ring-size:16384}")
+    private int ringSize;
+
+    @Resource
+    private TransactionService transactionService;
+
+    @Resource
+    private AccountService accountService;
+
+    @Resource
+    private BankPersistence bankPersistence;
+
+    @Resource
+    private LedgerMetrics ledgerMetrics;
+
+    @Resource
+    private Bank bank;
+
+    private Command[] ring;
+    private AtomicLongArray published;
+    private int mask;
+
+    // järgmine välja antav järjenumber ja esimene, mida täitja pole veel lõpetanud
+    private final AtomicLong claimed = new AtomicLong();
+    // lõimed, mis on running-u kontrollinud, kuid pole veel käsku avaldanud; täitja ei lõpeta enne, kui neid pole
+    private final AtomicInteger publishers = new AtomicInteger();
+    private AccountLocks locks;
+    private volatile long consumed;
+    private volatile boolean consumerWaiting;
+    private volatile boolean running;
+    private Thread consumer;
+
+    @PostConstruct
+    public void start() {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new IllegalStateException("bank.engine.ring-size must be a power of two: " + ringSize);
+        }
+        ring = new Command[ringSize];
+        published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new Command();
+            published.set(i, -1);
+        }
+        mask = ringSize - 1;
+        locks = bank.getAccountRepository().getLocks();
+        locks.useWriterLock();
+
+        running = true;
+        consumer = new Thread(this::consumeLoop, "bank-ledger-sequencer");
+        consumer.start();
+    }
+
+    // uusi käske enam vastu ei võeta, juba avaldatud käsud täidetakse ja neile vastatakse enne, kui täitja lõpetab
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(consumer);
+        consumer.join();
+    }
+
+    @Override
+    public CompletableFuture<RequestResult> addNewTransaction(Bank bank, TransactionDto transactionDto) {
+        return publish(NEW_TRANSACTION, bank, transactionDto, transactionDto.getAccountId());
+    }
+
+    @Override
+    public CompletableFuture<RequestResult> receiveNewTransaction(Bank bank, TransactionDto transactionDto) {
+        return publish(RECEIVE_TRANSACTION, bank, transactionDto, 0);
+    }
+
+    @Override
+    public CompletableFuture<RequestResult> updateAccountLockStatus(Bank bank, int accountId) {
+        return publish(LOCK_ACCOUNT, bank, null, accountId);
+    }
+
+    @Override
+    public CompletableFuture<RequestResult> deleteAccount(Bank bank, int accountId) {
+        return publish(DELETE_ACCOUNT, bank, null, accountId);
+    }
+
+    private CompletableFuture<RequestResult> publish(int type, Bank bank, TransactionDto transactionDto, int accountId) {
+        publishers.incrementAndGet();
+        try {
+            if (!running) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Ledger engine is stopped"));
+            }
+            CompletableFuture<RequestResult> future = new CompletableFuture<>();
+            long sequence = claim();
+            int index = (int) sequence & mask;
+
+            Command command = ring[index];
+            command.type = type;
+            command.bank = bank;
+            command.transactionDto = transactionDto;
+            command.accountId = accountId;
+            command.start = System.nanoTime();
+            command.future = future;
+
+            published.set(index, sequence);
+            if (consumerWaiting) {
+                LockSupport.unpark(consumer);
+            }
+            return future;
+        } finally {
+            publishers.decrementAndGet();
+        }
+    }
+
+    private long claim() {
+        while (true) {
+            long sequence = claimed.get();
+            // pesa vabaneb alles siis, kui täitja on ringi eelmise käsu selles pesas lõpetanud
+            if (sequence - ringSize >= consumed) {
+                Thread.yield();
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void consumeLoop() {
+        long next = 0;
+        //publishers loetakse pärast running-ut: lõim, mis nägi running = true, on siin kas näha või juba claimed-is
+        while (running || publishers.get() > 0 || next < claimed.get()) {
+            long available = next;
+            while (published.get((int) available & mask) == available) {
+                available++;
+            }
+            if (available == next) {
+                waitForCommand(next);
+                continue;
+            }
+
+            locks.lockWriter();
+            try {
+                for (long sequence = next; sequence < available; sequence++) {
+                    execute(ring[(int) sequence & mask]);
+                }
+            } finally {
+                locks.unlockWriter();
+            }
+
+            RuntimeException syncFailure = null;
+            try {
+                bankPersistence.sync();
+            } catch (RuntimeException e) {
+                syncFailure = e;
+            }
+
+            for (long sequence = next; sequence < available; sequence++) {
+                complete(ring[(int) sequence & mask], syncFailure);
+            }
+            next = available;
+            consumed = next;
+        }
+    }
+
+    private void waitForCommand(long sequence) {
+        int index = (int) sequence & mask;
+        for (int i = 0; i < SPINS; i++) {
+            if (published.get(index) == sequence) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        // consumerWaiting kirjutatakse enne viimast kontrolli, nii et avaldaja kas näeb seda või täitja näeb käsku
+        consumerWaiting = true;
+        if (published.get(index) != sequence) {
+            LockSupport.parkNanos(this, 1_000_000);
+        }
+        consumerWaiting = false;
+    }
+
+    private void execute(Command command) {
+        try {
+            switch (command.type) {
+                case NEW_TRANSACTION:
+                    command.result = transactionService.applyTransaction(command.bank, command.transactionDto);
+                    break;
+                case RECEIVE_TRANSACTION:
+                    command.result = transactionService.applyReceivedTransaction(command.bank, command.transactionDto);
+                    break;
+                case LOCK_ACCOUNT:
+                    command.result = accountService.applyAccountLockStatus(command.bank.getAccountRepository(), command.accountId);
+                    break;
+                case DELETE_ACCOUNT:
+                    command.result = accountService.applyDeleteAccount(command.bank.getAccountRepository(), command.accountId);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown ledger command " + command.type);
+            }
+        } catch (RuntimeException e) {
+            log.error("Ledger command {} for account {} failed", command.type, command.accountId, e);
+            command.failure = e;
+        }
+    }
+
+    private void complete(Command command, RuntimeException syncFailure) {
+        CompletableFuture<RequestResult> future = command.future;
+        RequestResult result = command.result;
+
+        if (command.failure != null) {
+            future.completeExceptionally(command.failure);
+        } else if (syncFailure != null && result.getError() == null) {
+            future.completeExceptionally(syncFailure);
+        } else {
+            recordMetrics(command, result);
+            future.complete(result);
+        }
+        command.clear();
+    }
+
+    private void recordMetrics(Command command, RequestResult result) {
+        switch (command.type) {
+            case NEW_TRANSACTION:
+                ledgerMetrics.recordTransaction(command.transactionDto.getTransactionType(), command.start);
+                break;
+            case RECEIVE_TRANSACTION:
+                if (result.getError() == null) {
+                    ledgerMetrics.recordTransaction(TransactionService.RECEIVE_MONEY, command.start);
+                }
+                break;
+            case LOCK_ACCOUNT:
+                if (result.getError() == null) {
+                    ledgerMetrics.recordAccountOperation("lock", command.start);
+                }
+                break;
+            case DELETE_ACCOUNT:
+                if (result.getError() == null) {
+                    ledgerMetrics.recordAccountOperation("delete", command.start);
+                }
+                break;
+            default:
+        }
+    }
+
+    // ringi pesa, mida kasutatakse korduvalt, et käsu avaldamine ei looks uusi objekte
+    private static final class Command {
+
+        private int type;
+        private Bank bank;
+        private TransactionDto transactionDto;
+        private int accountId;
+        private long start;
+        private CompletableFuture<RequestResult> future;
+        private RequestResult result;
+        private RuntimeException failure;
+
+        private void clear() {
+            bank = null;
+            transactionDto = null;
+            future = null;
+            result = null;
+            failure = null;
+        }
+    }
+}
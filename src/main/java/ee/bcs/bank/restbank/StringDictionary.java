@@ -0,0 +1,53 @@
+package ee.bcs.bank.restbank;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// kontonumbrid salvestatakse tehingute tabelis int koodidena, kood 0 tähendab null väärtust
+public class StringDictionary {
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    // uus kood lisatakse addLock-i all, mitte computeIfAbsent-iga, mis hoiaks map-i monitori
+    private final ReentrantLock addLock = new ReentrantLock();
+    private volatile String[] values = new String[1024];
+    private int size = 1;
+
+    public int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        addLock.lock();
+        try {
+            code = codes.get(value);
+            if (code == null) {
+                code = add(value);
+                codes.put(value, code);
+            }
+            return code;
+        } finally {
+            addLock.unlock();
+        }
+    }
+
+    public String decode(int code) {
+        return code == 0 ? null : values[code];
+    }
+
+    public int size() {
+        return size - 1;
+    }
+
+    private int add(String value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        return size++;
+    }
+}
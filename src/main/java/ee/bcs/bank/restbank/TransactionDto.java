@@ -12,8 +12,10 @@ public class TransactionDto {
     private int accountId;
     private String senderAccountNumber;
     private String receiverAccountNumber;
-    private Integer amount;
-    private Integer balance;
+    // väikseimates ühikutes, vt Money
+    private long amount;
+    private long balance;
+    private String currency;
     private LocalDateTime localDateTime;
     private Character transactionType;
 
@@ -0,0 +1,192 @@
+package ee.bcs.bank.restbank;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Iga konto kohta hoitakse tema tehingute reanumbreid TransactionStore-is, reanumbri järgi kasvavas järjekorras.
+// Kellaaeg loetakse konto luku all, seega on konto read tavaliselt ka aja järgi järjekorras ja aja järgi otsitakse
+// kahendotsinguga. BankClock ei lähe tagasi millisekundites, kuid kohalik aeg läheb talveajale üleminekul tunni
+// tagasi ja taastatud read võivad olla tehtud kellaga, mis oli praegusest ees. Kui konto ridade aeg kuskil tagasi
+// läheb, märgitakse konto järjestamata ja tema ridu otsitakse aja järgi kõik läbi vaadates.
+// Rida võib indeksis olla natuke enne, kui see TransactionStore-is valmis on (vt BankSnapshot).
+public class TransactionIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile AtomicReferenceArray<AccountRows> rowsByAccountId = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private final ReentrantLock growLock = new ReentrantLock();
+
+    // rea veerud peavad olema juba kirjutatud, sest rea aega võrreldakse naaberridadega
+    public void add(int accountId, int row, TransactionStore transactionStore) {
+        AccountRows accountRows = find(accountId);
+        if (accountRows == null) {
+            accountRows = create(accountId);
+        }
+        accountRows.add(row, transactionStore);
+    }
+
+    // arhiveeritud konto read eemaldatakse indeksist, tehingud ise jäävad TransactionStore-i
+    public void remove(int accountId) {
+        growLock.lock();
+        try {
+            AtomicReferenceArray<AccountRows> accounts = rowsByAccountId;
+            if (accountId >= 0 && accountId < accounts.length()) {
+                accounts.set(accountId, null);
+            }
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    public int count(int accountId) {
+        AccountRows accountRows = find(accountId);
+        return accountRows == null ? 0 : accountRows.size;
+    }
+
+    public int[] rows(int accountId) {
+        AccountRows accountRows = find(accountId);
+        if (accountRows == null) {
+            return new int[0];
+        }
+        int size = accountRows.size;
+        return Arrays.copyOf(accountRows.rows, size);
+    }
+
+    // konto read, mille aeg on vahemikus [fromMicros, toMicros]
+    public int[] rows(int accountId, long fromMicros, long toMicros, TransactionStore transactionStore) {
+        AccountRows accountRows = find(accountId);
+        if (accountRows == null) {
+            return new int[0];
+        }
+        int size = accountRows.size;
+        int[] rows = accountRows.rows;
+        if (!accountRows.timeOrdered) {
+            int[] found = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                long epochMicros = transactionStore.epochMicros(rows[i]);
+                if (epochMicros >= fromMicros && epochMicros <= toMicros) {
+                    found[count++] = rows[i];
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+        int first = fromMicros == Long.MIN_VALUE ? 0 : firstAfter(rows, size, fromMicros - 1, transactionStore);
+        int last = firstAfter(rows, size, toMicros, transactionStore);
+        return Arrays.copyOfRange(rows, first, Math.max(first, last));
+    }
+
+    // konto viimane rida, mille aeg on kuni toMicros, või -1
+    public int lastRow(int accountId, long toMicros, TransactionStore transactionStore) {
+        AccountRows accountRows = find(accountId);
+        if (accountRows == null) {
+            return -1;
+        }
+        int size = accountRows.size;
+        int[] rows = accountRows.rows;
+        if (!accountRows.timeOrdered) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (transactionStore.epochMicros(rows[i]) <= toMicros) {
+                    return rows[i];
+                }
+            }
+            return -1;
+        }
+        int last = firstAfter(rows, size, toMicros, transactionStore) - 1;
+        return last < 0 ? -1 : rows[last];
+    }
+
+    // konto viimane rida, mille number on väiksem kui row, või -1
+    public int lastRowBefore(int accountId, int row) {
+        AccountRows accountRows = find(accountId);
+        if (accountRows == null) {
+            return -1;
+        }
+        int size = accountRows.size;
+        int[] rows = accountRows.rows;
+        int position = Arrays.binarySearch(rows, 0, size, row);
+        int count = position >= 0 ? position : -position - 1;
+        return count == 0 ? -1 : rows[count - 1];
+    }
+
+    private int firstAfter(int[] rows, int size, long epochMicros, TransactionStore transactionStore) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (transactionStore.epochMicros(rows[middle]) <= epochMicros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private AccountRows find(int accountId) {
+        AtomicReferenceArray<AccountRows> accounts = rowsByAccountId;
+        if (accountId < 0 || accountId >= accounts.length()) {
+            return null;
+        }
+        return accounts.get(accountId);
+    }
+
+    private AccountRows create(int accountId) {
+        growLock.lock();
+        try {
+            AtomicReferenceArray<AccountRows> accounts = rowsByAccountId;
+            if (accountId >= accounts.length()) {
+                int capacity = accounts.length();
+                while (capacity <= accountId) {
+                    capacity *= 2;
+                }
+                AtomicReferenceArray<AccountRows> grown = new AtomicReferenceArray<>(capacity);
+                for (int i = 0; i < accounts.length(); i++) {
+                    grown.set(i, accounts.get(i));
+                }
+                rowsByAccountId = grown;
+                accounts = grown;
+            }
+            AccountRows accountRows = accounts.get(accountId);
+            if (accountRows == null) {
+                accountRows = new AccountRows();
+                accounts.set(accountId, accountRows);
+            }
+            return accountRows;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    // Konto read lisatakse konto luku all (taastamisel ühes lõimes), seega on kirjutaja korraga üks.
+    // Lugeja loeb enne size-i ja siis timeOrdered-i, kirjutaja muudab timeOrdered-i enne size-i
+    private static class AccountRows {
+        private volatile int[] rows = new int[8];
+        private volatile int size;
+        private volatile boolean timeOrdered = true;
+
+        void add(int row, TransactionStore transactionStore) {
+            int[] current = rows;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            // taastamisel võivad read tulla vales järjekorras, hoiame massiivi sorteerituna
+            int position = size;
+            while (position > 0 && current[position - 1] > row) {
+                current[position] = current[position - 1];
+                position--;
+            }
+            current[position] = row;
+            if (timeOrdered) {
+                long epochMicros = transactionStore.epochMicros(row);
+                if (position > 0 && transactionStore.epochMicros(current[position - 1]) > epochMicros
+                        || position < size && transactionStore.epochMicros(current[position + 1]) < epochMicros) {
+                    timeOrdered = false;
+                }
+            }
+            rows = current;
+            size++;
+        }
+    }
+}
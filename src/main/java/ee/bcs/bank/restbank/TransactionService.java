@@ -2,9 +2,12 @@ package ee.bcs.bank.restbank;
 
 import org.springframework.stereotype.Service;
 
-import javax.annotation.Resource;
+import jakarta.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class TransactionService {
@@ -15,6 +18,7 @@ public class TransactionService {
     public static final char WITHDRAWAL = 'w';
     public static final char SEND_MONEY = 's';
     public static final char RECEIVE_MONEY = 'r';
+    public static final char REVERSAL = 'v';
 
 
     //    transactionType
@@ -23,6 +27,7 @@ public class TransactionService {
 //    w - withdrawal
 //    s - send money
 //    r - receive money
+//    v - teise panka saadetud raha tagastus
 
     @Resource
     private AccountService accountService;
@@ -30,6 +35,24 @@ public class TransactionService {
     @Resource
     private BalanceService balanceService;
 
+    @Resource
+    private BankClock bankClock;
+
+    @Resource
+    private BankPersistence bankPersistence;
+
+    @Resource
+    private ChangeFeed changeFeed;
+
+    @Resource
+    private LedgerMetrics ledgerMetrics;
+
+    @Resource
+    private OutboundTransferService outboundTransferService;
+
+    @Resource
+    private VelocityLimits velocityLimits;
+
     // TODO:    createExampleTransaction()
     //  account id 123
     //  balance 1000
@@ -43,58 +66,311 @@ public class TransactionService {
         transactionDto.setAccountId(123);
         transactionDto.setBalance(1000);
         transactionDto.setAmount(100);
+        transactionDto.setCurrency(Money.DEFAULT_CURRENCY);
         transactionDto.setTransactionType(SEND_MONEY);
         transactionDto.setSenderAccountNumber("EE123");
         transactionDto.setReceiverAccountNumber("EE456");
-        transactionDto.setLocalDateTime(LocalDateTime.now());
+        transactionDto.setLocalDateTime(bankClock.now());
         return transactionDto;
     }
 
 
     public RequestResult addNewTransaction(Bank bank, TransactionDto transactionDto) {
+        long start = System.nanoTime();
+        RequestResult requestResult = applyTransaction(bank, transactionDto);
+
+        //vastame alles siis, kui tehing on journalis kettal
+        if (requestResult.getError() == null) {
+            bankPersistence.sync();
+        }
+        ledgerMetrics.recordTransaction(transactionDto.getTransactionType(), start);
+        return requestResult;
+    }
+
+    // kliendi päringute kiiruse piirang, kontrollitakse enne päringu täitmist. Tagastab vea või null
+    public RequestResult checkClientRate(String clientId) {
+        if (velocityLimits.tryAcquireClient(clientId)) {
+            return null;
+        }
+        return clientRateLimited(clientId, 0);
+    }
+
+    // Kliendi pakett: klient maksab iga tehingu eest ühe tokeni. atomic paketile antakse tokenid kõigile tehingutele
+    // või mitte ühelegi, muidu tehakse nii mitu tehingut, kui tokeneid jätkub, ja ülejäänud saavad vea.
+    public List<RequestResult> addNewTransactions(Bank bank, String clientId, List<TransactionDto> transactionDtos, boolean atomic) {
+        int size = transactionDtos.size();
+        int granted = velocityLimits.acquireClient(clientId, atomic ? size : 0, size);
+        if (granted == size) {
+            return addNewTransactions(bank, transactionDtos, atomic);
+        }
+        List<RequestResult> requestResults = new ArrayList<>(size);
+        if (granted > 0) {
+            requestResults.addAll(addNewTransactions(bank, transactionDtos.subList(0, granted), false));
+        }
+        for (int i = granted; i < size; i++) {
+            requestResults.add(clientRateLimited(clientId, transactionDtos.get(i).getAccountId()));
+        }
+        return requestResults;
+    }
+
+    // Tehingute pakett töödeldakse ühe läbimisena, journali sync tehakse kogu paketi peale üks kord.
+    // atomic = true puhul lukustatakse kõik paketi kontod, kontrollitakse kõik tehingud läbi
+    // ja kui mõni neist ei lähe läbi, ei tehta ühtegi. Siis loetakse ka kellaaeg kogu paketi peale üks kord
+    // ja paketi tehingud saavad valmis korraga, nii et iga tehingu mõõdetud aeg on kogu paketi aeg.
+    public List<RequestResult> addNewTransactions(Bank bank, List<TransactionDto> transactionDtos, boolean atomic) {
+        List<RequestResult> requestResults;
+        if (atomic) {
+            long start = System.nanoTime();
+            requestResults = applyTransactionsAtomically(bank, transactionDtos);
+            for (TransactionDto transactionDto : transactionDtos) {
+                ledgerMetrics.recordTransaction(transactionDto.getTransactionType(), start);
+            }
+        } else {
+            requestResults = new ArrayList<>(transactionDtos.size());
+            for (TransactionDto transactionDto : transactionDtos) {
+                long start = System.nanoTime();
+                requestResults.add(applyTransaction(bank, transactionDto));
+                ledgerMetrics.recordTransaction(transactionDto.getTransactionType(), start);
+            }
+        }
+        bankPersistence.sync();
+        return requestResults;
+    }
+
+    // teeb tehingu ära, kuid ei oota journali sync-i ega salvesta mõõdikut
+    RequestResult applyTransaction(Bank bank, TransactionDto transactionDto) {
         //loon vajalikud onjektid (tühjad)
         RequestResult requestResult = new RequestResult();
 
         //vajalike andmete lisamine muutujatesse
-        List<AccountDto> accounts = bank.getAccounts();
+        AccountRepository accounts = bank.getAccountRepository();
         int accountId = transactionDto.getAccountId();
 
         //kontrolli, kas account üldse on olemas. Kui mitte tagasta error sõnum
         if (!accountService.accountIdExists(accounts, accountId)) {
             requestResult.setAccountId(accountId);
             requestResult.setError("Account ID " + accountId + " does not exist!");
+            ledgerMetrics.recordRejection(LedgerMetrics.ACCOUNT_NOT_FOUND);
             return requestResult;
         }
 
+        //üks konto ei tohi teiste arvelt liiga palju tehinguid teha
+        if (!velocityLimits.tryAcquireAccount(accountId)) {
+            return rateLimited(accountId);
+        }
 
-        //edaspidi vajalike andmete lisamine muutujatesse
-        Character transactionType = transactionDto.getTransactionType();
-        int transactionId = bank.getTransactionIdCount();
-        Integer amount = transactionDto.getAmount();
+        //päri välja accountID abiga õige konto
+        AccountDto account = accountService.getAccountById(accounts, accountId);
 
+        //ülekande puhul lukustame ka saaja konto, kui see on meie pangas
+        AccountDto receiverAccount = findReceiverAccount(accounts, transactionDto);
+        int receiverAccountId = receiverAccount == null ? accountId : receiverAccount.getId();
 
-        //päri välja accountID abiga õige konto ja balance-i
-        AccountDto account = accountService.getAccountById(accounts, accountId);
-        Integer balance = account.getBalance();
+        AccountLocks locks = accounts.getLocks();
+        locks.lockBoth(accountId, receiverAccountId);
+        try {
+            bankPersistence.checkWritable();
+            if (!accountService.accountIdExists(accounts, accountId)) {
+                requestResult.setAccountId(accountId);
+                requestResult.setError("Account ID " + accountId + " does not exist!");
+                ledgerMetrics.recordRejection(LedgerMetrics.ACCOUNT_NOT_FOUND);
+                return requestResult;
+            }
+            RequestResult receiverClosed = checkReceiverStillOpen(accounts, transactionDto, receiverAccount);
+            if (receiverClosed != null) {
+                return receiverClosed;
+            }
+            //kellaaeg loetakse luku all, et konto tehingud oleksid ka aja järgi järjekorras
+            return processTransaction(bank, transactionDto, account, receiverAccount, bankClock.now(), false);
+        } finally {
+            locks.unlockBoth(accountId, receiverAccountId);
+        }
+    }
+
+    private List<RequestResult> applyTransactionsAtomically(Bank bank, List<TransactionDto> transactionDtos) {
+        AccountRepository accounts = bank.getAccountRepository();
+        int size = transactionDtos.size();
+        AccountDto[] senderAccounts = new AccountDto[size];
+        AccountDto[] receiverAccounts = new AccountDto[size];
+        int[] lockedAccountIds = new int[size * 2];
+        //teise panka minevad ülekanded, millele on järjekorras koht võetud
+        boolean[] outboundReserved = new boolean[size];
+
+        for (int i = 0; i < size; i++) {
+            TransactionDto transactionDto = transactionDtos.get(i);
+            senderAccounts[i] = accountService.getAccountById(accounts, transactionDto.getAccountId());
+            receiverAccounts[i] = findReceiverAccount(accounts, transactionDto);
+            lockedAccountIds[i * 2] = transactionDto.getAccountId();
+            lockedAccountIds[i * 2 + 1] = receiverAccounts[i] == null ? transactionDto.getAccountId() : receiverAccounts[i].getId();
+        }
+
+        //iga paketi tehing võtab oma konto kiiruse piirangust ühe tokeni, ka siis, kui pakett tagasi lükatakse
+        boolean[] rateLimited = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            rateLimited[i] = senderAccounts[i] != null && !velocityLimits.tryAcquireAccount(senderAccounts[i].getId());
+        }
+
+        AccountLocks locks = accounts.getLocks();
+        locks.lockAll(lockedAccountIds);
+        try {
+            bankPersistence.checkWritable();
+            //kontrollime kõik tehingud läbi, arvestades paketi eelmiste tehingute mõju balance-itele ja päevastele summadele
+            List<RequestResult> requestResults = new ArrayList<>(size);
+            Map<Integer, Long> balances = new HashMap<>();
+            Map<Long, Long> spentToday = new HashMap<>();
+            boolean rejected = false;
+            LocalDateTime now = bankClock.now();
+            long epochDay = now.toLocalDate().toEpochDay();
+
+            for (int i = 0; i < size; i++) {
+                TransactionDto transactionDto = transactionDtos.get(i);
+                AccountDto account = senderAccounts[i];
+                if (account == null || !accountService.accountIdExists(accounts, account.getId())) {
+                    RequestResult requestResult = new RequestResult();
+                    requestResult.setAccountId(transactionDto.getAccountId());
+                    requestResult.setError("Account ID " + transactionDto.getAccountId() + " does not exist!");
+                    ledgerMetrics.recordRejection(LedgerMetrics.ACCOUNT_NOT_FOUND);
+                    requestResults.add(requestResult);
+                    rejected = true;
+                    continue;
+                }
+                RequestResult receiverClosed = checkReceiverStillOpen(accounts, transactionDto, receiverAccounts[i]);
+                if (receiverClosed != null) {
+                    requestResults.add(receiverClosed);
+                    rejected = true;
+                    continue;
+                }
+                if (rateLimited[i]) {
+                    requestResults.add(rateLimited(account.getId()));
+                    rejected = true;
+                    continue;
+                }
+
+                long balance = balances.getOrDefault(account.getId(), account.getBalance());
+                Character type = transactionDto.getTransactionType();
+                //võti on konto id ja tehingu tüüp, sest väljamaksetel ja ülekannetel on eraldi limiit
+                long spentKey = (long) account.getId() << 16 | (type == null ? 0 : type);
+                long spent = type == null ? 0 : spentToday.getOrDefault(spentKey, velocityLimits.spentToday(account.getId(), type, epochDay));
+                AccountDto receiverAccount = receiverAccounts[i];
+                long receiverBalance = receiverAccount == null ? 0
+                        : balances.getOrDefault(receiverAccount.getId(), receiverAccount.getBalance());
+                RequestResult rejection = checkTransaction(transactionDto, account, receiverAccount, balance, receiverBalance, spent);
+                if (rejection == null && isOutbound(transactionDto, receiverAccounts[i])) {
+                    outboundReserved[i] = outboundTransferService.reserve(transactionDto.getReceiverAccountNumber());
+                    if (!outboundReserved[i]) {
+                        rejection = outboundQueueFull(account.getId(), transactionDto.getReceiverAccountNumber());
+                    }
+                }
+                if (rejection != null) {
+                    requestResults.add(rejection);
+                    rejected = true;
+                    continue;
+                }
+
+                char transactionType = transactionDto.getTransactionType();
+                if (transactionType == DEPOSIT) {
+                    balances.put(account.getId(), Money.add(balance, transactionDto.getAmount()));
+                } else if (transactionType == WITHDRAWAL || transactionType == SEND_MONEY) {
+                    balances.put(account.getId(), Money.subtract(balance, transactionDto.getAmount()));
+                    spentToday.put(spentKey, spent + transactionDto.getAmount());
+                }
+                if (receiverAccount != null) {
+                    //iseendale saatmisel on saaja saldo saatja uus saldo
+                    long projected = balances.getOrDefault(receiverAccount.getId(), receiverAccount.getBalance());
+                    balances.put(receiverAccount.getId(), Money.add(projected, transactionDto.getAmount()));
+                }
+                requestResults.add(null);
+            }
+
+            if (rejected) {
+                for (int i = 0; i < size; i++) {
+                    if (outboundReserved[i]) {
+                        outboundTransferService.release(transactionDtos.get(i).getReceiverAccountNumber());
+                    }
+                    if (requestResults.get(i) == null) {
+                        RequestResult requestResult = new RequestResult();
+                        requestResult.setAccountId(transactionDtos.get(i).getAccountId());
+                        requestResult.setError("Transaction not made, another transaction in the batch failed.");
+                        requestResults.set(i, requestResult);
+                    }
+                }
+                return requestResults;
+            }
+
+            for (int i = 0; i < size; i++) {
+                requestResults.set(i, processTransaction(bank, transactionDtos.get(i), senderAccounts[i], receiverAccounts[i], now,
+                        outboundReserved[i]));
+            }
+            return requestResults;
+        } finally {
+            locks.unlockAll(lockedAccountIds);
+        }
+    }
+
+    private AccountDto findReceiverAccount(AccountRepository accounts, TransactionDto transactionDto) {
+        if (transactionDto.getTransactionType() == null || transactionDto.getTransactionType() != SEND_MONEY) {
+            return null;
+        }
+        return accountService.getAccountByNumber(accounts, transactionDto.getReceiverAccountNumber());
+    }
+
+    // Saaja leitakse numbri järgi enne lukku. Kui see vahepeal suleti, on konto tombstone ja sellele ei tohi
+    // raha kanda. Kutsutakse saaja konto luku all
+    private RequestResult checkReceiverStillOpen(AccountRepository accounts, TransactionDto transactionDto, AccountDto receiverAccount) {
+        if (receiverAccount == null
+                || accountService.getAccountByNumber(accounts, transactionDto.getReceiverAccountNumber()) == receiverAccount) {
+            return null;
+        }
+        RequestResult requestResult = new RequestResult();
+        requestResult.setAccountId(transactionDto.getAccountId());
+        requestResult.setError("No such account in our bank: " + transactionDto.getReceiverAccountNumber());
+        ledgerMetrics.recordRejection(LedgerMetrics.RECEIVER_NOT_FOUND);
+        return requestResult;
+    }
+
+    private boolean isOutbound(TransactionDto transactionDto, AccountDto receiverAccount) {
+        return receiverAccount == null && transactionDto.getTransactionType() == SEND_MONEY;
+    }
+
+    // outboundReserved: teise panka mineva ülekande koht järjekorras on juba võetud, vt OutboundTransferService.reserve
+    private RequestResult processTransaction(Bank bank, TransactionDto transactionDto, AccountDto account, AccountDto receiverAccount,
+                                             LocalDateTime now, boolean outboundReserved) {
+        RequestResult requestResult = new RequestResult();
+
+        //edaspidi vajalike andmete lisamine muutujatesse
+        int accountId = account.getId();
+        Character transactionType = transactionDto.getTransactionType();
+        long amount = transactionDto.getAmount();
+        long balance = account.getBalance();
+        long epochDay = now.toLocalDate().toEpochDay();
+        long spentToday = transactionType == null ? 0 : velocityLimits.spentToday(accountId, transactionType, epochDay);
+
+        RequestResult rejection = checkTransaction(transactionDto, account, receiverAccount, balance,
+                receiverAccount == null ? 0 : receiverAccount.getBalance(), spentToday);
+        if (rejection != null) {
+            if (outboundReserved) {
+                outboundTransferService.release(transactionDto.getReceiverAccountNumber());
+            }
+            return rejection;
+        }
+        transactionDto.setCurrency(account.getCurrency());
 
         //käime läbi erinevad olukorrad
-        int newBalance;
+        int transactionId;
+        long newBalance;
         String receiverAccountNumber;
 
         switch (transactionType) {
             case NEW_ACCOUNT:
-
                 //täidame ära TransactionDto
                 transactionDto.setSenderAccountNumber(null);
                 transactionDto.setReceiverAccountNumber(null);
                 transactionDto.setBalance(0);
                 transactionDto.setAmount(0);
-                transactionDto.setLocalDateTime(LocalDateTime.now());
-                transactionDto.setId(transactionId);
+                transactionDto.setLocalDateTime(now);
 
-                //lisame tehingu transactionite alla (pluss increment)
-                bank.addTransactionToTransactions(transactionDto);
-                bank.incrementTransactionId();
+                //lisame tehingu transactionite alla
+                transactionId = addTransaction(bank, transactionDto);
 
                 // meisterdame valmis result objekti
                 requestResult.setTransactionId(transactionId);
@@ -104,18 +380,16 @@ public class TransactionService {
 
             case DEPOSIT:
                 //arvuta välja uus balance
-                newBalance = balance + amount;
+                newBalance = Money.add(balance, amount);
 
                 // täidame ära transactionDto
                 transactionDto.setSenderAccountNumber(ATM);
                 transactionDto.setReceiverAccountNumber(account.getAccountNumber());
                 transactionDto.setBalance(newBalance);
-                transactionDto.setLocalDateTime(LocalDateTime.now());
-                transactionDto.setId(transactionId);
+                transactionDto.setLocalDateTime(now);
 
-                //lisame tehingu transactionite alla (pluss inkrementeerime)
-                bank.addTransactionToTransactions(transactionDto);
-                bank.incrementTransactionId();
+                //lisame tehingu transactionite alla
+                transactionId = addTransaction(bank, transactionDto);
 
                 //uuendame konto balance-it
                 account.setBalance(newBalance);
@@ -123,78 +397,53 @@ public class TransactionService {
                 // meisterdame valmis result objekti
                 requestResult.setTransactionId(transactionId);
                 requestResult.setAccountId(accountId);
-                requestResult.setMessage("Successfully made deposit to account " + transactionDto.getReceiverAccountNumber());
+                requestResult.setMessage("Successfully made deposit to account ", transactionDto.getReceiverAccountNumber());
                 return requestResult;
 
             case WITHDRAWAL:
-                if (!balanceService.enoughMoneyOnAccount(balance, amount)) {
-                    requestResult.setAccountId(accountId);
-                    requestResult.setError("Not enough money to complete the withdrawal of " + amount);
-                    return requestResult;
-                }
-
                 //arvutame välja uus balance
-                newBalance = balance - amount;
+                newBalance = Money.subtract(balance, amount);
 
 
                 // täidame ära transactionDto
                 transactionDto.setSenderAccountNumber(account.getAccountNumber());
                 transactionDto.setReceiverAccountNumber(ATM);
                 transactionDto.setBalance(newBalance);
-                transactionDto.setLocalDateTime(LocalDateTime.now());
-                transactionDto.setId(transactionId);
+                transactionDto.setLocalDateTime(now);
 
-                //lisame tehingu transactionite alla (pluss inkrementeerime)
-                bank.addTransactionToTransactions(transactionDto);
-                bank.incrementTransactionId();
+                //lisame tehingu transactionite alla
+                transactionId = addTransaction(bank, transactionDto);
 
-                //uuendame konto balance-it
+                //uuendame konto balance-it ja päeva väljamaksete summat
                 account.setBalance(newBalance);
+                velocityLimits.recordSpent(accountId, WITHDRAWAL, epochDay, amount);
 
                 // meisterdame valmis result objekti
                 requestResult.setTransactionId(transactionId);
                 requestResult.setAccountId(accountId);
-                requestResult.setMessage("Successfully made withdrawal from account number " + account.getAccountNumber());
+                requestResult.setMessage("Successfully made withdrawal from account number ", account.getAccountNumber());
                 return requestResult;
 
             case SEND_MONEY:
-                //kontrollime, kas saatjal on piisavalt raha
-                if (!balanceService.enoughMoneyOnAccount(balance, amount)) {
-                    requestResult.setAccountId(accountId);
-                    requestResult.setError("Not enough money to transfer " + amount);
-                    return requestResult;
-                }
-
                 //arvutame välja uus balance
-                newBalance = balance - amount;
+                newBalance = Money.subtract(balance, amount);
 
 
                 // täidame ära SAATJA transactionDto
                 transactionDto.setSenderAccountNumber(account.getAccountNumber());
                 transactionDto.setBalance(newBalance);
-                transactionDto.setLocalDateTime(LocalDateTime.now());
-                transactionDto.setId(transactionId);
-
-                //lisame tehingu transactionite alla (pluss inkrementeerime)
-                bank.addTransactionToTransactions(transactionDto);
-                bank.incrementTransactionId();
-
-                //uuendame konto balance-it
-                account.setBalance(newBalance);
+                transactionDto.setLocalDateTime(now);
 
                 // meisterdame valmis result objekti
-                requestResult.setTransactionId(transactionId);
                 requestResult.setAccountId(accountId);
-                requestResult.setMessage("Successfully sent money to account number " + transactionDto.getReceiverAccountNumber());
+                requestResult.setMessage("Successfully sent money to account number ", transactionDto.getReceiverAccountNumber());
 
-                //teeme SAAJA transaktsiooni
-                receiverAccountNumber = transactionDto.getReceiverAccountNumber();
-
-                //kontrollime, kas saaja kontonr eksisteerib meie andmebaasis (bank)
-                //selleks lõime uue meetodi accountNumberExists
-                if (accountService.accountNumberExists(accounts, receiverAccountNumber)) {
-                    AccountDto receiverAccount = accountService.getAccountByNumber(accounts, receiverAccountNumber);
-                    int receiverNewBalance = receiverAccount.getBalance() + amount;
+                //teeme SAAJA transaktsiooni, kui saaja kontonr eksisteerib meie andmebaasis (bank)
+                if (receiverAccount != null) {
+                    receiverAccountNumber = receiverAccount.getAccountNumber();
+                    //kui saadetakse iseendale, on saaja saldo juba saatja uus saldo
+                    long receiverBalance = receiverAccount.getId() == accountId ? newBalance : receiverAccount.getBalance();
+                    long receiverNewBalance = Money.add(receiverBalance, amount);
 
                     //loome uue transaktsiooni objekti
                     TransactionDto receiverTransactionDto = new TransactionDto();
@@ -203,17 +452,32 @@ public class TransactionService {
                     receiverTransactionDto.setSenderAccountNumber(account.getAccountNumber());
                     receiverTransactionDto.setReceiverAccountNumber(receiverAccountNumber);
                     receiverTransactionDto.setBalance(receiverNewBalance);
-                    receiverTransactionDto.setLocalDateTime(LocalDateTime.now());
-                    receiverTransactionDto.setId(bank.getTransactionIdCount());
+                    receiverTransactionDto.setLocalDateTime(now);
+                    receiverTransactionDto.setAccountId(receiverAccount.getId());
                     receiverTransactionDto.setAmount(amount);
+                    receiverTransactionDto.setCurrency(receiverAccount.getCurrency());
                     receiverTransactionDto.setTransactionType(RECEIVE_MONEY);
 
-                    //lisame tehingu transactionite alla (pluss inkrementeerime)
-                    bank.addTransactionToTransactions(receiverTransactionDto);
-                    bank.incrementTransactionId();
+                    //lisame mõlemad pooled korraga, et lugejad näeksid ülekannet tervikuna
+                    transactionId = addTransactions(bank, transactionDto, receiverTransactionDto);
+                    account.setBalance(newBalance);
                     receiverAccount.setBalance(receiverNewBalance);
 
+                } else {
+                    //koht järjekorras võetakse enne raha mahavõtmist, kontroll ja võtmine on üks samm
+                    if (!outboundReserved && !outboundTransferService.reserve(transactionDto.getReceiverAccountNumber())) {
+                        return outboundQueueFull(accountId, transactionDto.getReceiverAccountNumber());
+                    }
+                    transactionId = addTransaction(bank, transactionDto);
+                    account.setBalance(newBalance);
+
+                    //teise panka läheb raha järjekorra kaudu, vastus tuleb hiljem
+                    outboundTransferService.enqueue(bank, transactionDto);
+                    requestResult.setMessage("Sent money to account number " + transactionDto.getReceiverAccountNumber()
+                            + ", waiting for the receiving bank to confirm");
                 }
+                velocityLimits.recordSpent(accountId, SEND_MONEY, epochDay, amount);
+                requestResult.setTransactionId(transactionId);
                 return requestResult;
 
 
@@ -225,37 +489,191 @@ public class TransactionService {
 
     }
 
+    // tagastab vea, kui tehingut ei saa teha, muidu null. balance ja receiverBalance on saldod enne seda tehingut,
+    // atomic paketis koos paketi eelmiste tehingutega
+    private RequestResult checkTransaction(TransactionDto transactionDto, AccountDto account, AccountDto receiverAccount, long balance,
+                                           long receiverBalance, long spentToday) {
+        Character transactionType = transactionDto.getTransactionType();
+        long amount = transactionDto.getAmount();
+        String error = null;
+        String reason = null;
+
+        if (transactionType == null || "ndws".indexOf(transactionType) < 0) {
+            error = "Unknown transaction type: " + transactionType;
+            reason = LedgerMetrics.UNKNOWN_TYPE;
+        } else if (!Money.isValidAmount(amount)) {
+            error = "Amount must not be negative: " + amount;
+            reason = LedgerMetrics.INVALID_AMOUNT;
+        } else if (!Money.sameCurrency(transactionDto.getCurrency(), account.getCurrency())) {
+            error = "Transaction currency " + transactionDto.getCurrency() + " does not match account currency " + account.getCurrency();
+            reason = LedgerMetrics.CURRENCY_MISMATCH;
+        } else if (transactionType == SEND_MONEY && receiverAccount != null
+                && !Money.sameCurrency(account.getCurrency(), receiverAccount.getCurrency())) {
+            error = "Receiver account currency " + receiverAccount.getCurrency() + " does not match " + account.getCurrency();
+            reason = LedgerMetrics.CURRENCY_MISMATCH;
+        } else if (transactionType == WITHDRAWAL && !balanceService.enoughMoneyOnAccount(balance, amount)) {
+            error = "Not enough money to complete the withdrawal of " + Money.format(amount, account.getCurrency());
+            reason = LedgerMetrics.NOT_ENOUGH_MONEY;
+        } else if (transactionType == SEND_MONEY && !balanceService.enoughMoneyOnAccount(balance, amount)) {
+            //kontrollime, kas saatjal on piisavalt raha
+            error = "Not enough money to transfer " + Money.format(amount, account.getCurrency());
+            reason = LedgerMetrics.NOT_ENOUGH_MONEY;
+        } else if (!velocityLimits.withinDailyLimit(transactionType, spentToday, amount)) {
+            error = "Daily " + (transactionType == WITHDRAWAL ? "withdrawal" : "transfer") + " limit of "
+                    + Money.format(velocityLimits.dailyLimit(transactionType), account.getCurrency()) + " would be exceeded";
+            reason = LedgerMetrics.DAILY_LIMIT;
+        } else if (transactionType == DEPOSIT && !Money.canAdd(balance, amount)
+                || transactionType == SEND_MONEY && receiverAccount != null && !Money.canAdd(receiverBalance, amount)) {
+            error = "Amount " + amount + " would overflow the account balance";
+            reason = LedgerMetrics.INVALID_AMOUNT;
+        } else if (transactionType == SEND_MONEY && receiverAccount == null) {
+            //saaja pole meie pangas, seega peab olema teada tema pank. Ruum järjekorras võetakse enne raha mahavõtmist
+            String receiverAccountNumber = transactionDto.getReceiverAccountNumber();
+            if (outboundTransferService.route(receiverAccountNumber) == null) {
+                error = "No bank found for account number " + receiverAccountNumber;
+                reason = LedgerMetrics.NO_ROUTE;
+            }
+        }
+        if (error == null) {
+            return null;
+        }
+        ledgerMetrics.recordRejection(reason);
+
+        RequestResult requestResult = new RequestResult();
+        requestResult.setAccountId(account.getId());
+        requestResult.setError(error);
+        return requestResult;
+    }
+
+    private RequestResult outboundQueueFull(int accountId, String receiverAccountNumber) {
+        ledgerMetrics.recordRejection(LedgerMetrics.OUTBOUND_QUEUE_FULL);
+        RequestResult requestResult = new RequestResult();
+        requestResult.setAccountId(accountId);
+        requestResult.setError("Too many pending transfers to bank " + outboundTransferService.route(receiverAccountNumber).getPrefix()
+                + ", try again later");
+        return requestResult;
+    }
+
+    private RequestResult clientRateLimited(String clientId, int accountId) {
+        ledgerMetrics.recordRejection(LedgerMetrics.RATE_LIMITED);
+        RequestResult requestResult = new RequestResult();
+        requestResult.setAccountId(accountId);
+        requestResult.setError("Too many requests from client " + clientId + ", try again later");
+        return requestResult;
+    }
+
+    private RequestResult rateLimited(int accountId) {
+        ledgerMetrics.recordRejection(LedgerMetrics.RATE_LIMITED);
+        RequestResult requestResult = new RequestResult();
+        requestResult.setAccountId(accountId);
+        requestResult.setError("Too many transactions for account ID " + accountId + ", try again later");
+        return requestResult;
+    }
+
     public RequestResult receiveNewTransaction(Bank bank, TransactionDto transactionDto) {
+        long start = System.nanoTime();
+        RequestResult requestResult = applyReceivedTransaction(bank, transactionDto);
+        if (requestResult.getError() == null) {
+            bankPersistence.sync();
+            ledgerMetrics.recordTransaction(RECEIVE_MONEY, start);
+        }
+        return requestResult;
+    }
+
+    // teise panga saadetud ülekannete pakett, journali sync tehakse kogu paketi peale üks kord
+    public List<RequestResult> receiveNewTransactions(Bank bank, List<TransactionDto> transactionDtos) {
+        List<RequestResult> requestResults = new ArrayList<>(transactionDtos.size());
+        for (TransactionDto transactionDto : transactionDtos) {
+            long start = System.nanoTime();
+            RequestResult requestResult = applyReceivedTransaction(bank, transactionDto);
+            if (requestResult.getError() == null) {
+                ledgerMetrics.recordTransaction(RECEIVE_MONEY, start);
+            }
+            requestResults.add(requestResult);
+        }
+        bankPersistence.sync();
+        return requestResults;
+    }
+
+    RequestResult applyReceivedTransaction(Bank bank, TransactionDto transactionDto) {
         RequestResult requestResult = new RequestResult();
         String receiverAccountNumber = transactionDto.getReceiverAccountNumber();
-        List<AccountDto> accounts = bank.getAccounts();
+        AccountRepository accounts = bank.getAccountRepository();
 
         if (!accountService.accountNumberExists(accounts, receiverAccountNumber)) {
             requestResult.setError("No such account in our bank: " + receiverAccountNumber);
+            ledgerMetrics.recordRejection(LedgerMetrics.RECEIVER_NOT_FOUND);
             return requestResult;
         }
 
         AccountDto receiverAccount = accountService.getAccountByNumber(accounts, receiverAccountNumber);
+        long amount = transactionDto.getAmount();
+        String error = null;
+        String reason = null;
+        if (!Money.isValidAmount(amount)) {
+            error = "Amount must not be negative: " + amount;
+            reason = LedgerMetrics.INVALID_AMOUNT;
+        } else if (!Money.sameCurrency(transactionDto.getCurrency(), receiverAccount.getCurrency())) {
+            error = "Account " + receiverAccountNumber + " does not accept " + transactionDto.getCurrency();
+            reason = LedgerMetrics.CURRENCY_MISMATCH;
+        }
+        if (error != null) {
+            requestResult.setError(error);
+            ledgerMetrics.recordRejection(reason);
+            return requestResult;
+        }
 
-        int transactionId = bank.getTransactionIdCount();
+        AccountLocks locks = accounts.getLocks();
+        locks.lock(receiverAccount.getId());
+        try {
+            bankPersistence.checkWritable();
+            //konto võidi enne lukku sulgeda, siis ei tohi sellele enam raha kanda
+            if (accountService.getAccountByNumber(accounts, receiverAccountNumber) != receiverAccount) {
+                requestResult.setError("No such account in our bank: " + receiverAccountNumber);
+                ledgerMetrics.recordRejection(LedgerMetrics.RECEIVER_NOT_FOUND);
+                return requestResult;
+            }
+            if (!Money.canAdd(receiverAccount.getBalance(), amount)) {
+                requestResult.setError("Amount " + amount + " would overflow the account balance");
+                ledgerMetrics.recordRejection(LedgerMetrics.INVALID_AMOUNT);
+                return requestResult;
+            }
+            long receiverNewBalance = Money.add(receiverAccount.getBalance(), amount);
 
-        int receiverNewBalance = receiverAccount.getBalance() + transactionDto.getAmount();
+            transactionDto.setCurrency(receiverAccount.getCurrency());
+            transactionDto.setTransactionType(RECEIVE_MONEY);
+            transactionDto.setBalance(receiverNewBalance);
+            transactionDto.setAccountId(receiverAccount.getId());
+            transactionDto.setLocalDateTime(bankClock.now());
 
-        transactionDto.setTransactionType(RECEIVE_MONEY);
-        transactionDto.setBalance(receiverNewBalance);
-        transactionDto.setId(transactionId);
-        transactionDto.setAccountId(receiverAccount.getId());
-        transactionDto.setLocalDateTime(LocalDateTime.now());
+            int transactionId = addTransaction(bank, transactionDto);
+            receiverAccount.setBalance(receiverNewBalance);
 
-        bank.addTransactionToTransactions(transactionDto);
-        bank.incrementTransactionId();
-        receiverAccount.setBalance(receiverNewBalance);
+            requestResult.setTransactionId(transactionId);
+        } finally {
+            locks.unlock(receiverAccount.getId());
+        }
 
-        requestResult.setTransactionId(transactionId);
         requestResult.setMessage("Transaction completed. " + receiverAccountNumber + " received " + transactionDto.getAmount());
         return requestResult;
     }
 
+    private int addTransaction(Bank bank, TransactionDto transactionDto) {
+        int transactionId = bank.addTransactionToTransactions(transactionDto);
+        bankPersistence.writeTransaction(transactionDto);
+        changeFeed.transaction(transactionId);
+        return transactionId;
+    }
+
+    private int addTransactions(Bank bank, TransactionDto transactionDto, TransactionDto receiverTransactionDto) {
+        int transactionId = bank.addTransactionsToTransactions(transactionDto, receiverTransactionDto);
+        bankPersistence.writeTransaction(transactionDto);
+        bankPersistence.writeTransaction(receiverTransactionDto);
+        changeFeed.transaction(transactionId);
+        changeFeed.transaction(transactionId + 1);
+        return transactionId;
+    }
+
     // TODO:    createTransactionForNewAccount()
     //  account number
     //  balance 0
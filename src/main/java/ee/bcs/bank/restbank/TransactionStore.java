@@ -0,0 +1,473 @@
+package ee.bcs.bank.restbank;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Tehingud hoitakse heapist väljas, mälu kaardistatud segmentides. Iga segment sisaldab SEGMENT_ROWS rida
+// veergude kaupa: id, accountId, sender, receiver, valuuta (sõnastiku koodid), amount, balance, aeg mikrosekundites ja tüüp.
+// Tehingu id on rea number + 1. Id veerg kirjutatakse viimasena ja see näitab, et rida on valmis.
+// Rida lisatakse konto indeksisse enne id kirjutamist, seega on iga valmis rida ka indeksis.
+// Vanad täis segmendid saab freeze() abil kirjutada pakituna kettale ja kaardistuse vabastada, sellise segmendi
+// rida loetakse failist tagasi alles siis, kui seda küsitakse.
+public class TransactionStore {
+
+    private static final int SEGMENT_SHIFT = 20;
+    static final int SEGMENT_ROWS = 1 << SEGMENT_SHIFT;
+    private static final int ROW_MASK = SEGMENT_ROWS - 1;
+    private static final int MAX_SEGMENTS = Integer.MAX_VALUE / SEGMENT_ROWS + 1;
+    // selle rea kirjutaja kaardistab järgmise segmendi ette, et segmendi esimene kirjutaja seda ootama ei peaks
+    private static final int PREMAP_OFFSET = SEGMENT_ROWS / 2;
+
+    private static final int ID = 0;
+    private static final int ACCOUNT_ID = 4 * SEGMENT_ROWS;
+    private static final int SENDER = 8 * SEGMENT_ROWS;
+    private static final int RECEIVER = 12 * SEGMENT_ROWS;
+    private static final int CURRENCY = 16 * SEGMENT_ROWS;
+    private static final int AMOUNT = 20 * SEGMENT_ROWS;
+    private static final int BALANCE = 28 * SEGMENT_ROWS;
+    private static final int EPOCH_MICROS = 36 * SEGMENT_ROWS;
+    private static final int TYPE = 44 * SEGMENT_ROWS;
+    private static final int SEGMENT_BYTES = 45 * SEGMENT_ROWS;
+
+    private static final int VOID_ROW = -1;
+    private static final int COLD_BUFFER_SIZE = 64 * 1024;
+
+    private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final AtomicReferenceArray<ByteBuffer> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    // 1, kui segmendi pakitud koopia on kettal. Märge pannakse enne kaardistuse eemaldamist
+    private final AtomicIntegerArray coldSegments = new AtomicIntegerArray(MAX_SEGMENTS);
+    private final StringDictionary accountNumbers = new StringDictionary();
+    private final StringDictionary currencies = new StringDictionary();
+    private final AtomicInteger reservedRows = new AtomicInteger();
+    private final AtomicInteger committedRows = new AtomicInteger();
+    private volatile int[] voidRows = new int[0];
+    private final TransactionIndex transactionIndex;
+    // segmentide kataloogi loomine, sealGaps ja freeze, segmente kaardistatakse ilma lukuta
+    private final ReentrantLock mapLock = new ReentrantLock();
+    private volatile Path directory;
+
+    public TransactionStore(TransactionIndex transactionIndex) {
+        this.transactionIndex = transactionIndex;
+    }
+
+    // testimiseks, segmendid kaardistatakse antud kataloogi
+    TransactionStore(TransactionIndex transactionIndex, Path directory) {
+        this.transactionIndex = transactionIndex;
+        this.directory = directory;
+    }
+
+    public int append(TransactionDto transactionDto) {
+        int row = reservedRows.getAndIncrement();
+        int transactionId = row + 1;
+        transactionDto.setId(transactionId);
+        try {
+            write(row, transactionDto);
+        } catch (RuntimeException e) {
+            voidFailedRows(row, 1);
+            throw e;
+        }
+        advanceCommittedRows();
+        return transactionId;
+    }
+
+    // Kaks järjestikust rida. Teise rea id kirjutatakse enne esimese oma, nii et committedRows liigub
+    // mõlemast üle korraga ega jää kunagi nende vahele. Indeksisse lähevad read siiski järjekorras,
+    // sest iseendale saatmisel on mõlemad sama konto read. Tagastab esimese tehingu id.
+    public int append(TransactionDto first, TransactionDto second) {
+        int row = reservedRows.getAndAdd(2);
+        int transactionId = row + 1;
+        first.setId(transactionId);
+        second.setId(transactionId + 1);
+        try {
+            writeColumns(row, first);
+            writeColumns(row + 1, second);
+        } catch (RuntimeException e) {
+            voidFailedRows(row, 2);
+            throw e;
+        }
+        transactionIndex.add(first.getAccountId(), row, this);
+        transactionIndex.add(second.getAccountId(), row + 1, this);
+        setId(row + 1, second.getId());
+        setId(row, first.getId());
+        advanceCommittedRows();
+        return transactionId;
+    }
+
+    // taastamisel pannakse tehing oma id järgi õigesse ritta
+    public void restore(TransactionDto transactionDto) {
+        int row = transactionDto.getId() - 1;
+        reservedRows.accumulateAndGet(row + 1, Math::max);
+        write(row, transactionDto);
+    }
+
+    public void reserve(int rows) {
+        reservedRows.accumulateAndGet(rows, Math::max);
+    }
+
+    // read, mis jäid pärast taastamist täitmata (tehing ei jõudnud journalisse), märgitakse tühjaks
+    public void sealGaps() {
+        mapLock.lock();
+        try {
+            int reserved = reservedRows.get();
+            int[] gaps = new int[0];
+            for (int row = 0; row < reserved; row++) {
+                if (id(row) == 0) {
+                    setId(row, VOID_ROW);
+                    gaps = Arrays.copyOf(gaps, gaps.length + 1);
+                    gaps[gaps.length - 1] = row;
+                }
+            }
+            voidRows = gaps;
+            advanceCommittedRows();
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    // Reserveeritud read, mida ei õnnestunud kirjutada (nt segmenti ei saanud kaardistada), märgitakse tühjaks
+    // nagu sealGaps teeb, muidu jääks committedRows neile ridadele igaveseks pidama. Indeksisse need ei jõudnud.
+    // Kui segmenti pole, jääb id 0 ja advanceCommittedRows tunneb rea ära voidRows järgi
+    private void voidFailedRows(int row, int count) {
+        mapLock.lock();
+        try {
+            int[] gaps = voidRows;
+            int at = -Arrays.binarySearch(gaps, row) - 1;
+            int[] updated = new int[gaps.length + count];
+            System.arraycopy(gaps, 0, updated, 0, at);
+            for (int i = 0; i < count; i++) {
+                updated[at + i] = row + i;
+            }
+            System.arraycopy(gaps, at, updated, at + count, gaps.length - at);
+            voidRows = updated;
+        } finally {
+            mapLock.unlock();
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                setId(row + i, VOID_ROW);
+            } catch (RuntimeException e) {
+                // segment pole endiselt kaardistatav
+            }
+        }
+        advanceCommittedRows();
+    }
+
+    // Valmis segmendid peale viimase hotSegments segmendi kirjutatakse pakituna kettale ja nende kaardistus vabastatakse.
+    // Täis segmenti enam ei kirjutata, seega jääb kord kirjutatud koopia kehtima ka siis, kui segment vahepeal
+    // lugemiseks tagasi kaardistati. Tagastab vabastatud segmentide arvu.
+    public int freeze(int hotSegments) {
+        mapLock.lock();
+        try {
+            int frozen = 0;
+            int sealedSegments = (committedRows.get() >>> SEGMENT_SHIFT) - Math.max(hotSegments, 1) + 1;
+            for (int index = 0; index < sealedSegments; index++) {
+                ByteBuffer segment = segments.get(index);
+                if (segment == null) {
+                    continue;
+                }
+                if (coldSegments.get(index) == 0) {
+                    writeCold(index, segment);
+                    coldSegments.set(index, 1);
+                }
+                if (segments.compareAndSet(index, segment, null)) {
+                    frozen++;
+                }
+            }
+            return frozen;
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    public boolean contains(int transactionId) {
+        int row = transactionId - 1;
+        return row >= 0 && row < reservedRows.get() && id(row) > 0;
+    }
+
+    public TransactionDto get(int row) {
+        int transactionId = id(row);
+        if (transactionId <= 0) {
+            return null;
+        }
+        ByteBuffer segment = readable(row >>> SEGMENT_SHIFT);
+        int offset = row & ROW_MASK;
+
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setId(transactionId);
+        transactionDto.setAccountId(segment.getInt(ACCOUNT_ID + offset * 4));
+        transactionDto.setSenderAccountNumber(accountNumbers.decode(segment.getInt(SENDER + offset * 4)));
+        transactionDto.setReceiverAccountNumber(accountNumbers.decode(segment.getInt(RECEIVER + offset * 4)));
+        transactionDto.setCurrency(currencies.decode(segment.getInt(CURRENCY + offset * 4)));
+        transactionDto.setAmount(segment.getLong(AMOUNT + offset * 8));
+        transactionDto.setBalance(segment.getLong(BALANCE + offset * 8));
+        transactionDto.setLocalDateTime(toLocalDateTime(segment.getLong(EPOCH_MICROS + offset * 8)));
+        transactionDto.setTransactionType((char) segment.get(TYPE + offset));
+        return transactionDto;
+    }
+
+    public long epochMicros(int row) {
+        return readable(row >>> SEGMENT_SHIFT).getLong(EPOCH_MICROS + (row & ROW_MASK) * 8);
+    }
+
+    // üksikud veerud ilma TransactionDto-d loomata, rida peab olema valmis (vt committedRows)
+    public int accountId(int row) {
+        return readable(row >>> SEGMENT_SHIFT).getInt(ACCOUNT_ID + (row & ROW_MASK) * 4);
+    }
+
+    public long amount(int row) {
+        return readable(row >>> SEGMENT_SHIFT).getLong(AMOUNT + (row & ROW_MASK) * 8);
+    }
+
+    public long balance(int row) {
+        return readable(row >>> SEGMENT_SHIFT).getLong(BALANCE + (row & ROW_MASK) * 8);
+    }
+
+    public String currency(int row) {
+        return currencies.decode(readable(row >>> SEGMENT_SHIFT).getInt(CURRENCY + (row & ROW_MASK) * 4));
+    }
+
+    public char transactionType(int row) {
+        return (char) readable(row >>> SEGMENT_SHIFT).get(TYPE + (row & ROW_MASK));
+    }
+
+    public long mappedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < segments.length(); i++) {
+            if (segments.get(i) != null) {
+                bytes += SEGMENT_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    public int accountNumberCount() {
+        return accountNumbers.size();
+    }
+
+    public int reservedRows() {
+        return reservedRows.get();
+    }
+
+    // ridade arv, millest kõik on valmis kirjutatud
+    public int committedRows() {
+        return committedRows.get();
+    }
+
+    public int nextTransactionId() {
+        return reservedRows.get() + 1;
+    }
+
+    public List<TransactionDto> asList() {
+        return asList(committedRows.get());
+    }
+
+    // esimeste rows rea tehingud, tühjaks märgitud read jäetakse vahele
+    public List<TransactionDto> asList(int rows) {
+        int[] gaps = voidRows;
+        int found = Arrays.binarySearch(gaps, rows);
+        int voidCount = found >= 0 ? found : -found - 1;
+        int size = rows - voidCount;
+        return new AbstractList<>() {
+            // Rida = index + nende tühjade ridade arv, mis jäävad selle ette. gaps[i] - i on i-nda tühja rea ees
+            // olevate tehingute arv ja kasvab, seega leiab selle arvu kahendotsinguga
+            @Override
+            public TransactionDto get(int index) {
+                int low = 0;
+                int high = voidCount;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (gaps[middle] - middle <= index) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                return TransactionStore.this.get(index + low);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private void write(int row, TransactionDto transactionDto) {
+        writeColumns(row, transactionDto);
+        transactionIndex.add(transactionDto.getAccountId(), row, this);
+        setId(row, transactionDto.getId());
+    }
+
+    // kõik veerud peale id
+    private void writeColumns(int row, TransactionDto transactionDto) {
+        ByteBuffer segment = segment(row >>> SEGMENT_SHIFT);
+        int offset = row & ROW_MASK;
+        if (offset == PREMAP_OFFSET && (row >>> SEGMENT_SHIFT) + 1 < MAX_SEGMENTS) {
+            try {
+                segment((row >>> SEGMENT_SHIFT) + 1);
+            } catch (UncheckedIOException e) {
+                // ette kaardistamine pole kohustuslik, segmendi esimene rida proovib uuesti
+            }
+        }
+        segment.putInt(ACCOUNT_ID + offset * 4, transactionDto.getAccountId());
+        segment.putInt(SENDER + offset * 4, accountNumbers.encode(transactionDto.getSenderAccountNumber()));
+        segment.putInt(RECEIVER + offset * 4, accountNumbers.encode(transactionDto.getReceiverAccountNumber()));
+        segment.putInt(CURRENCY + offset * 4, currencies.encode(transactionDto.getCurrency()));
+        segment.putLong(AMOUNT + offset * 8, transactionDto.getAmount());
+        segment.putLong(BALANCE + offset * 8, transactionDto.getBalance());
+        segment.putLong(EPOCH_MICROS + offset * 8, toEpochMicros(transactionDto.getLocalDateTime()));
+        segment.put(TYPE + offset, (byte) transactionDto.getTransactionType().charValue());
+    }
+
+    // committedRows hüppab korraga üle kõigi järjest valmis ridade. Ülekande teise rea id on kirjutatud enne
+    // esimese oma, seega ei saa valmis ridade lõpp kunagi jääda ülekande ridade vahele
+    private void advanceCommittedRows() {
+        int committed = committedRows.get();
+        while (true) {
+            int next = committed;
+            int reserved = reservedRows.get();
+            while (next < reserved && (id(next) != 0 || Arrays.binarySearch(voidRows, next) >= 0)) {
+                next++;
+            }
+            if (next == committed) {
+                return;
+            }
+            committed = committedRows.compareAndSet(committed, next) ? next : committedRows.get();
+        }
+    }
+
+    private int id(int row) {
+        ByteBuffer segment = readable(row >>> SEGMENT_SHIFT);
+        if (segment == null) {
+            return 0;
+        }
+        return (int) INT_VIEW.getVolatile(segment, ID + (row & ROW_MASK) * 4);
+    }
+
+    private void setId(int row, int transactionId) {
+        INT_VIEW.setVolatile(segment(row >>> SEGMENT_SHIFT), ID + (row & ROW_MASK) * 4, transactionId);
+    }
+
+    // Kaardistamine käib ilma lukuta, nii et teised lõimed ei oota faili loomist. Kui kaks lõime kaardistavad sama
+    // segmendi korraga, jääb alles esimene, teise fail on juba kustutatud ja tema buffer koristatakse ära
+    private ByteBuffer segment(int index) {
+        ByteBuffer segment = readable(index);
+        if (segment != null) {
+            return segment;
+        }
+        ByteBuffer mapped = map(index);
+        return segments.compareAndSet(index, null, mapped) ? mapped : segments.get(index);
+    }
+
+    // kaardistatud segment, külm segment loetakse failist tagasi, null, kui segmenti pole veel olnud
+    private ByteBuffer readable(int index) {
+        ByteBuffer segment = segments.get(index);
+        if (segment != null || coldSegments.get(index) == 0) {
+            return segment;
+        }
+        ByteBuffer thawed = thaw(index);
+        if (segments.compareAndSet(index, null, thawed)) {
+            return thawed;
+        }
+        // teine lõim jõudis ette või freeze vabastas selle juba uuesti, mõlemal juhul on sisu sama
+        segment = segments.get(index);
+        return segment != null ? segment : thawed;
+    }
+
+    private void writeCold(int index, ByteBuffer segment) {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(coldFile(index)), COLD_BUFFER_SIZE)) {
+            WritableByteChannel channel = Channels.newChannel(out);
+            ByteBuffer rows = segment.duplicate().clear();
+            while (rows.hasRemaining()) {
+                channel.write(rows);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cold transaction segment " + index, e);
+        }
+    }
+
+    private ByteBuffer thaw(int index) {
+        ByteBuffer mapped = map(index);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(coldFile(index)), COLD_BUFFER_SIZE)) {
+            ReadableByteChannel channel = Channels.newChannel(in);
+            ByteBuffer rows = mapped.duplicate().clear();
+            while (rows.hasRemaining() && channel.read(rows) >= 0) {
+                // loeb kuni segment on täis
+            }
+            return mapped;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read cold transaction segment " + index, e);
+        }
+    }
+
+    // külm koopia on nagu segmendid ise ainult selle protsessi jaoks, taaskäivitusel loetakse tehingud uuesti
+    private Path coldFile(int index) throws IOException {
+        Path file = directory().resolve("segment-" + index + ".gz");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    // fail kustutatakse kohe pärast kaardistamist, mälu jääb kasutusse kuni buffer on olemas
+    private ByteBuffer map(int index) {
+        try {
+            Path file = Files.createTempFile(directory(), "segment-" + index + "-", ".col");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES).order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map transaction segment " + index, e);
+        }
+    }
+
+    private Path directory() throws IOException {
+        Path path = directory;
+        if (path != null) {
+            return path;
+        }
+        mapLock.lock();
+        try {
+            if (directory == null) {
+                directory = Files.createTempDirectory("bank-transactions");
+                directory.toFile().deleteOnExit();
+            }
+            return directory;
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+    public static long toEpochMicros(LocalDateTime localDateTime) {
+        return localDateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + localDateTime.getNano() / 1_000;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMicros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMicros, 1_000_000L),
+                (int) Math.floorMod(epochMicros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,276 @@
+package ee.bcs.bank.restbank;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Tehingute kiiruse piirangud: token bucket iga konto ja iga kliendi kohta ning konto päevane väljamaksete
+// ja ülekannete summa. Rate 0 või limiit 0 tähendab, et piirangut pole.
+// Kui kliente on max-clients jagu ja keegi neist pole tühjaks jäänud, jagavad uued kliendid ühte ühist bucketit.
+// Bucket on üks long: ülemised 40 bitti on viimase täitmise aeg millisekundites, alumised 24 bitti on puudu olevad
+// tokenid tuhandikes. 0 on täis bucket, seega pole uue konto jaoks midagi vaja luua ja kontrolliks piisab ühest CAS-ist.
+// Päevane summa on samuti üks long: ülemised 24 bitti on päev (epoch day), alumised 40 bitti selle päeva summa.
+// Summad on ainult mälus, käivitamisel arvutatakse tänased summad taastatud tehingutest uuesti.
+@Component
+public class VelocityLimits {
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI_TOKENS = 1000;
+    private static final int SPENT_BITS = 40;
+    private static final long SPENT_MASK = (1L << SPENT_BITS) - 1;
+
+    @Value("${bank.limits.account-rate:0}")
+    private long accountRate;
+
+    @Value("${bank.limits.account-burst:20}")
+    private long accountBurst;
+
+    @Value("${bank.limits.client-rate:0}")
+    private long clientRate;
+
+    @Value("${bank.limits.client-burst:200}")
+    private long clientBurst;
+
+    @Value("${bank.limits.max-clients:100000}")
+    private int maxClients;
+
+    @Value("${bank.limits.daily-withdrawal:0}")
+    private long dailyWithdrawal;
+
+    @Value("${bank.limits.daily-transfer:0}")
+    private long dailyTransfer;
+
+    @Resource
+    private Bank bank;
+
+    // taastamine käib BankPersistence käivitamisel, see peab enne päevaseid summasid lõppenud olema
+    @Resource
+    private BankPersistence bankPersistence;
+
+    @Resource
+    private BankClock bankClock;
+
+    private final AccountCounters accountBuckets = new AccountCounters();
+    private final ConcurrentHashMap<String, AtomicLong> clientBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong sharedClientBucket = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AccountCounters withdrawnToday = new AccountCounters();
+    private final AccountCounters sentToday = new AccountCounters();
+    // monotoonne kell nanosekundites, testid panevad siia oma kella
+    private LongSupplier nanoClock = System::nanoTime;
+    private long startNanos;
+
+    @PostConstruct
+    public void init() {
+        startNanos = nanoClock.getAsLong();
+        checkBucket("account", accountRate, accountBurst);
+        checkBucket("client", clientRate, clientBurst);
+        checkDailyLimit("daily-withdrawal", dailyWithdrawal);
+        checkDailyLimit("daily-transfer", dailyTransfer);
+        restoreSpentToday();
+    }
+
+    public boolean tryAcquireAccount(int accountId) {
+        if (accountRate == 0) {
+            return true;
+        }
+        long now = nowMillis();
+        while (true) {
+            long bucket = accountBuckets.get(accountId);
+            long next = take(bucket, now, accountRate, accountBurst, 1);
+            if (next < 0) {
+                return false;
+            }
+            if (accountBuckets.compareAndSet(accountId, bucket, next)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean tryAcquireClient(String clientId) {
+        return acquireClient(clientId, 1, 1) == 1;
+    }
+
+    // võtab kliendilt kuni permits tokenit, kuid mitte vähem kui min. Tagastab võetud tokenite arvu, 0 kui vähemalt
+    // min tokenit polnud
+    public int acquireClient(String clientId, int min, int permits) {
+        if (clientRate == 0 || permits == 0) {
+            return permits;
+        }
+        AtomicLong bucket = clientBucket(clientId);
+        long now = nowMillis();
+        while (true) {
+            long current = bucket.get();
+            long available = clientBurst * MILLI_TOKENS - missing(current, now, clientRate, clientBurst);
+            int taken = (int) Math.min(permits, available / MILLI_TOKENS);
+            if (taken < Math.max(min, 1)) {
+                return 0;
+            }
+            long next = take(current, now, clientRate, clientBurst, taken);
+            if (bucket.compareAndSet(current, next)) {
+                return taken;
+            }
+        }
+    }
+
+    private AtomicLong clientBucket(String clientId) {
+        AtomicLong bucket = clientBuckets.get(clientId);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (clientBuckets.size() >= maxClients) {
+            evictIdleClients();
+            //kui kõik kliendid on aktiivsed, ei võeta uusi juurde, et map ei kasvaks piiramatult
+            if (clientBuckets.size() >= maxClients) {
+                return sharedClientBucket;
+            }
+        }
+        return clientBuckets.computeIfAbsent(clientId, key -> new AtomicLong());
+    }
+
+    // päevane limiit, 0 kui seda tehingu tüübi jaoks pole
+    public long dailyLimit(char transactionType) {
+        return transactionType == TransactionService.WITHDRAWAL ? dailyWithdrawal
+                : transactionType == TransactionService.SEND_MONEY ? dailyTransfer : 0;
+    }
+
+    public boolean withinDailyLimit(char transactionType, long spentToday, long amount) {
+        long limit = dailyLimit(transactionType);
+        return limit == 0 || amount <= limit - spentToday;
+    }
+
+    public long spentToday(int accountId, char transactionType, long epochDay) {
+        AccountCounters counters = dailyCounters(transactionType);
+        if (counters == null) {
+            return 0;
+        }
+        long spent = counters.get(accountId);
+        return spent >>> SPENT_BITS == epochDay ? spent & SPENT_MASK : 0;
+    }
+
+    // kutsutakse konto luku all pärast withinDailyLimit kontrolli, seega ei saa summa limiiti ületada
+    public void recordSpent(int accountId, char transactionType, long epochDay, long amount) {
+        AccountCounters counters = dailyCounters(transactionType);
+        if (counters == null) {
+            return;
+        }
+        long spent = spentToday(accountId, transactionType, epochDay) + amount;
+        counters.set(accountId, epochDay << SPENT_BITS | spent);
+    }
+
+    // tagasi pööratud tehingu summa ei lähe päevase limiidi hulka. Kutsutakse konto luku all; kui tehing oli
+    // eelmisel päeval, pole midagi tagasi anda
+    public void refundSpent(int accountId, char transactionType, long epochDay, long amount) {
+        AccountCounters counters = dailyCounters(transactionType);
+        if (counters == null || counters.get(accountId) >>> SPENT_BITS != epochDay) {
+            return;
+        }
+        long spent = Math.max(0, spentToday(accountId, transactionType, epochDay) - amount);
+        counters.set(accountId, epochDay << SPENT_BITS | spent);
+    }
+
+    // Tänased väljamaksed ja ülekanded konto tehingute indeksist. Tagasi pööratud ülekanne loetakse tagasi ainult
+    // siis, kui sama päeva ridade hulgas on ülekanne samale saajale sama summaga, nagu refundSpent teeb
+    private void restoreSpentToday() {
+        if (dailyWithdrawal == 0 && dailyTransfer == 0) {
+            return;
+        }
+        LocalDate today = bankClock.now().toLocalDate();
+        long epochDay = today.toEpochDay();
+        long fromMicros = TransactionStore.toEpochMicros(today.atStartOfDay());
+        TransactionStore transactions = bank.getTransactionStore();
+        TransactionIndex transactionIndex = bank.getTransactionIndex();
+        for (AccountDto account : bank.getAccountRepository().findAll()) {
+            int accountId = account.getId();
+            int[] rows = transactionIndex.rows(accountId, fromMicros, Long.MAX_VALUE, transactions);
+            TransactionDto[] sent = new TransactionDto[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                TransactionDto transactionDto = transactions.get(rows[i]);
+                if (transactionDto == null) {
+                    continue;
+                }
+                char transactionType = transactionDto.getTransactionType();
+                if (transactionType == TransactionService.WITHDRAWAL || transactionType == TransactionService.SEND_MONEY) {
+                    recordSpent(accountId, transactionType, epochDay, transactionDto.getAmount());
+                    sent[i] = transactionType == TransactionService.SEND_MONEY ? transactionDto : null;
+                } else if (transactionType == TransactionService.REVERSAL) {
+                    for (int j = 0; j < i; j++) {
+                        if (sent[j] != null && sent[j].getAmount() == transactionDto.getAmount()
+                                && sent[j].getReceiverAccountNumber().equals(transactionDto.getSenderAccountNumber())) {
+                            sent[j] = null;
+                            refundSpent(accountId, TransactionService.SEND_MONEY, epochDay, transactionDto.getAmount());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private AccountCounters dailyCounters(char transactionType) {
+        if (dailyLimit(transactionType) == 0) {
+            return null;
+        }
+        return transactionType == TransactionService.WITHDRAWAL ? withdrawnToday : sentToday;
+    }
+
+    // uus bucketi väärtus pärast tokens tokeni võtmist või -1, kui neid pole
+    private static long take(long bucket, long now, long rate, long burst, int tokens) {
+        long missing = missing(bucket, now, rate, burst) + tokens * MILLI_TOKENS;
+        if (missing > burst * MILLI_TOKENS) {
+            return -1;
+        }
+        // teine lõim võis vahepeal kirjutada hilisema aja, aeg ei tohi tagasi minna
+        long time = Math.max(now, bucket >>> TOKEN_BITS);
+        return time << TOKEN_BITS | missing;
+    }
+
+    // puudu olevad tokenid (tuhandikes) hetkel now
+    private static long missing(long bucket, long now, long rate, long burst) {
+        long missing = bucket & TOKEN_MASK;
+        long elapsed = Math.max(0, now - (bucket >>> TOKEN_BITS));
+        // rate tokenit sekundis = rate tuhandikku millisekundis
+        if (elapsed > burst * MILLI_TOKENS / rate) {
+            return 0;
+        }
+        return Math.max(0, missing - elapsed * rate);
+    }
+
+    // täis bucketiga kliendid (kes pole viimasel ajal midagi teinud) eemaldatakse, neid on lihtne uuesti luua
+    private void evictIdleClients() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = nowMillis();
+            clientBuckets.values().removeIf(bucket -> missing(bucket.get(), now, clientRate, clientBurst) == 0);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private long nowMillis() {
+        return Math.max(0, nanoClock.getAsLong() - startNanos) / 1_000_000;
+    }
+
+    private static void checkBucket(String name, long rate, long burst) {
+        if (rate < 0 || burst < 1 || burst * MILLI_TOKENS > TOKEN_MASK) {
+            throw new IllegalStateException("bank.limits." + name + "-rate must not be negative and "
+                    + "bank.limits." + name + "-burst must be between 1 and " + TOKEN_MASK / MILLI_TOKENS);
+        }
+    }
+
+    private static void checkDailyLimit(String name, long limit) {
+        if (limit < 0 || limit > SPENT_MASK) {
+            throw new IllegalStateException("bank.limits." + name + " must be between 0 and " + SPENT_MASK);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+-- suletud konto rida jääb alles (closed_at), et tema id-d uuesti ei antaks;
+-- kontonumbri saab pärast sulgemist uus konto, seega on number unikaalne ainult mälus olevas pangas
+CREATE TABLE IF NOT EXISTS bank_account (
+    id INTEGER PRIMARY KEY,
+    account_number VARCHAR(34),
+    first_name VARCHAR(255),
+    last_name VARCHAR(255),
+    balance BIGINT NOT NULL,
+    currency CHAR(3) NOT NULL,
+    locked BOOLEAN NOT NULL,
+    closed_at TIMESTAMP,
+    version BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS bank_transaction (
+    id INTEGER PRIMARY KEY,
+    account_id INTEGER NOT NULL,
+    sender_account_number VARCHAR(34),
+    receiver_account_number VARCHAR(34),
+    currency CHAR(3),
+    amount BIGINT NOT NULL,
+    balance BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    transaction_type CHAR(1) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS bank_account_number ON bank_account (account_number);
+
+CREATE INDEX IF NOT EXISTS bank_transaction_account ON bank_transaction (account_id, id);
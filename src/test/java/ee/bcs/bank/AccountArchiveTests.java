@@ -0,0 +1,214 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountArchive;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.AccountLocks;
+import ee.bcs.bank.restbank.AccountService;
+import ee.bcs.bank.restbank.BalanceCheckpoints;
+import ee.bcs.bank.restbank.BalanceDto;
+import ee.bcs.bank.restbank.BankStatementDto;
+import ee.bcs.bank.restbank.BankStatementService;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static ee.bcs.bank.TestBank.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Suletud konto jääb tombstone-iks, arhiveeritakse ja tema väljavõte on kättesaadav ka pärast taaskäivitust.
+// closed-for=0s, et compact() arhiveeriks kohe, taustatöö ise testi ajal ei käivitu.
+class AccountArchiveTests {
+
+    @TempDir
+    Path directory;
+
+    private TestBank bank;
+
+    @AfterEach
+    void stopBank() {
+        if (bank != null) {
+            bank.close();
+        }
+    }
+
+    @Test
+    void closedAccountStatementSurvivesArchivingAndRestart() throws IOException {
+        bank = startBank();
+        bank.openAccount("EE1002");
+        AccountDto closed = bank.openAccount("EE1001", 100);
+        assertNull(bank.send(closed, "EE1002", 30).getError());
+        assertNull(bank.send(closed, "EE1002", 70).getError());
+        bank.bean(AccountService.class).deleteAccount(bank.bank().getAccountRepository(), closed.getId());
+
+        // tombstone: kontot ei leita, number on vaba, aga väljavõte on alles
+        assertNull(bank.bank().getAccountRepository().findById(closed.getId()));
+        assertNull(bank.account("EE1001"));
+        assertClosedStatement(closed.getId());
+
+        assertEquals(1, bank.bean(AccountArchive.class).compact());
+        assertTrue(bank.bank().getAccountRepository().findAllClosed().isEmpty());
+        assertClosedStatement(closed.getId());
+
+        bank = bank.restart();
+        assertTrue(bank.bank().getAccountRepository().findAllClosed().isEmpty());
+        assertClosedStatement(closed.getId());
+        assertEquals(100, bank.account("EE1002").getBalance());
+
+        // uus konto ei saa arhiveeritud konto id-d
+        AccountDto opened = bank.openAccount("EE1001");
+        assertEquals(closed.getId() + 1, opened.getId());
+        assertNotNull(statement(404).getError());
+    }
+
+    // teisest pangast tulev raha leiab konto numbri järgi enne lukku, konto suletakse selle vahel
+    @Test
+    void accountClosedBeforeLockDoesNotReceiveMoney() throws Exception {
+        bank = startBank();
+        AccountDto account = bank.openAccount("EE1001");
+        AccountLocks locks = bank.bank().getAccountRepository().getLocks();
+        TransactionDto received = new TransactionDto();
+        received.setSenderAccountNumber("EE2001");
+        received.setReceiverAccountNumber("EE1001");
+        received.setAmount(50);
+
+        CompletableFuture<RequestResult> result;
+        locks.lock(account.getId());
+        try {
+            Thread[] receiver = new Thread[1];
+            result = CompletableFuture.supplyAsync(() -> {
+                receiver[0] = Thread.currentThread();
+                return bank.bean(TransactionService.class).receiveNewTransaction(bank.bank(), received);
+            });
+            await(() -> receiver[0] != null && receiver[0].getState() == Thread.State.WAITING);
+            bank.bean(AccountService.class).deleteAccount(bank.bank().getAccountRepository(), account.getId());
+        } finally {
+            locks.unlock(account.getId());
+        }
+
+        assertNotNull(result.get().getError());
+        assertEquals(0, account.getBalance());
+        assertEquals(0, bank.bank().getTransactionStore().committedRows());
+    }
+
+    // oma panga ülekanne leiab saaja numbri järgi enne lukku, saaja suletakse selle vahel
+    @Test
+    void receiverClosedBeforeLockIsNotCredited() throws Exception {
+        bank = startBank();
+        AccountDto sender = bank.openAccount("EE1001", 100);
+        AccountDto receiver = bank.openAccount("EE1002");
+        RequestResult single = whileClosing(receiver,
+                () -> bank.send(sender, "EE1002", 30));
+
+        // paketis lükatakse tagasi ka teine, avatud kontole minev ülekanne
+        AccountDto openReceiver = bank.openAccount("EE1003");
+        AccountDto batchReceiver = bank.openAccount("EE1004");
+        List<TransactionDto> transfers = List.of(
+                TestBank.transactionDto(sender, TransactionService.SEND_MONEY, 10, "EE1003"),
+                TestBank.transactionDto(sender, TransactionService.SEND_MONEY, 20, "EE1004"));
+        RequestResult batch = whileClosing(batchReceiver,
+                () -> bank.bean(TransactionService.class).addNewTransactions(bank.bank(), transfers, true).get(1));
+
+        assertNotNull(single.getError());
+        assertNotNull(batch.getError());
+        assertEquals(100, sender.getBalance());
+        assertEquals(0, receiver.getBalance());
+        assertEquals(0, openReceiver.getBalance());
+        assertEquals(0, batchReceiver.getBalance());
+        assertEquals(1, bank.bank().getTransactionStore().committedRows());
+    }
+
+    // konto suletakse, kui kustutamine või luku muutmine ootab konto lukku; need peavad konto luku all uuesti lugema
+    @Test
+    void accountClosedBeforeLockIsNotChangedAgain() throws Exception {
+        bank = startBank();
+        AccountDto account = bank.openAccount("EE1001");
+        AccountService accountService = bank.bean(AccountService.class);
+
+        RequestResult deleted = whileClosing(account,
+                () -> accountService.deleteAccount(bank.bank().getAccountRepository(), account.getId()));
+        assertEquals("Account ID " + account.getId() + " does not exist.", deleted.getError());
+
+        AccountDto other = bank.openAccount("EE1002");
+        RequestResult locked = whileClosing(other,
+                () -> accountService.updateAccountLockStatus(bank.bank().getAccountRepository(), other.getId()));
+        assertEquals("Account ID " + other.getId() + " does not exist.", locked.getError());
+        assertFalse(other.getLocked());
+    }
+
+    private RequestResult whileClosing(AccountDto account, Supplier<RequestResult> operation) throws Exception {
+        AccountLocks locks = bank.bank().getAccountRepository().getLocks();
+        CompletableFuture<RequestResult> result;
+        locks.lock(account.getId());
+        try {
+            Thread[] waiting = new Thread[1];
+            result = CompletableFuture.supplyAsync(() -> {
+                waiting[0] = Thread.currentThread();
+                return operation.get();
+            });
+            await(() -> waiting[0] != null && waiting[0].getState() == Thread.State.WAITING);
+            bank.bean(AccountService.class).deleteAccount(bank.bank().getAccountRepository(), account.getId());
+        } finally {
+            locks.unlock(account.getId());
+        }
+        return result.get();
+    }
+
+    // arhiveeritud kontol pole enam tehingute indeksit, saldo mingi hetke seisuga tuleb arhiivist
+    @Test
+    void archivedAccountBalanceIsFoundAsOfEarlierTime() throws Exception {
+        bank = startBank();
+        bank.openAccount("EE1002");
+        AccountDto archived = bank.openAccount("EE1001", 100);
+        assertNull(bank.send(archived, "EE1002", 30).getError());
+        Thread.sleep(2);
+        assertNull(bank.send(archived, "EE1002", 70).getError());
+        bank.bean(AccountService.class).deleteAccount(bank.bank().getAccountRepository(), archived.getId());
+        assertEquals(1, bank.bean(AccountArchive.class).compact());
+        LocalDateTime afterFirstSend = statement(archived.getId()).getTransactions().get(1).getLocalDateTime();
+
+        BalanceCheckpoints balanceCheckpoints = bank.bean(BalanceCheckpoints.class);
+        BalanceDto now = balanceCheckpoints.getAccountBalance(archived.getId(), LocalDateTime.now());
+        BalanceDto earlier = balanceCheckpoints.getAccountBalance(archived.getId(), afterFirstSend);
+
+        assertNull(now.getError());
+        assertEquals(0, now.getBalance());
+        assertEquals(archived.getCurrency(), now.getCurrency());
+        assertEquals(70, earlier.getBalance());
+        assertNotNull(balanceCheckpoints.getAccountBalance(404, LocalDateTime.now()).getError());
+    }
+
+    private void assertClosedStatement(int accountId) {
+        BankStatementDto statement = statement(accountId);
+        assertNull(statement.getError());
+        assertNotNull(statement.getAccount().getClosedAt());
+        assertEquals(0, statement.getAccount().getBalance());
+        assertEquals(3, statement.getTransactions().size());
+    }
+
+    private TestBank startBank() {
+        return TestBank.start("bank.journal.enabled=true",
+                "bank.journal.directory=" + directory.resolve("journal"),
+                "bank.archive.enabled=true",
+                "bank.archive.directory=" + directory.resolve("archive"),
+                "bank.archive.closed-for=0s",
+                "bank.archive.interval=1d");
+    }
+
+    private BankStatementDto statement(int accountId) {
+        return bank.bean(BankStatementService.class).getStatementByAccountId(bank.bank(), accountId, null, null);
+    }
+}
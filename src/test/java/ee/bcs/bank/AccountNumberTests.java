@@ -0,0 +1,61 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.AccountNumberAllocator;
+import ee.bcs.bank.restbank.BankService;
+import ee.bcs.bank.restbank.RequestResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// IBAN-i kontroll nagu tootmises, teised testid lülitavad selle välja
+class AccountNumberTests {
+
+    private TestBank bank;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.start("bank.account-number.check-iban=true");
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    @Test
+    void clientNumberMustBeThisBanksIban() {
+        assertNotNull(open("EE1001").getError());
+        assertNotNull(open("EE382200221020145685").getError());
+        assertEquals(0, bank.bank().getAccountRepository().size());
+
+        String ownNumber = accountNumberAllocator().accountNumber(1_000);
+        assertNull(open(ownNumber).getError());
+        assertNotNull(bank.account(ownNumber));
+    }
+
+    // pangal endal antud number on alati kehtiv
+    @Test
+    void allocatedNumberIsAValidIban() {
+        RequestResult result = open(null);
+        assertNull(result.getError());
+        String accountNumber = bank.bank().getAccountRepository().findById(result.getAccountId()).getAccountNumber();
+        assertTrue(AccountNumberAllocator.isValidIban(accountNumber));
+        assertEquals(accountNumberAllocator().getBankCode(), AccountNumberAllocator.bankCodeOf(accountNumber));
+    }
+
+    private AccountNumberAllocator accountNumberAllocator() {
+        return bank.bean(AccountNumberAllocator.class);
+    }
+
+    private RequestResult open(String accountNumber) {
+        AccountDto accountDto = new AccountDto();
+        accountDto.setAccountNumber(accountNumber);
+        return bank.bean(BankService.class).addAccountToBank(bank.bank(), accountDto);
+    }
+}
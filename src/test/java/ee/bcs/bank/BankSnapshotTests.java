@@ -0,0 +1,101 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.BankSnapshot;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BankSnapshotTests {
+
+    private TestBank bank;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.start();
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    // ülekanded käivad kogu aeg, iga vaate kontode saldode summa peab olema sama
+    @Test
+    void snapshotTotalIsConstantWhileTransfersRun() throws InterruptedException {
+        List<AccountDto> accounts = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            accounts.add(bank.openAccount("EE10" + (10 + i), 1_000));
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    AccountDto sender = accounts.get(random.nextInt(accounts.size()));
+                    AccountDto receiver = accounts.get(random.nextInt(accounts.size()));
+                    bank.send(sender, receiver.getAccountNumber(), random.nextInt(1, 50));
+                }
+            }));
+        }
+
+        try {
+            int previousVersion = 0;
+            for (int i = 0; i < 500; i++) {
+                BankSnapshot snapshot = bank.bank().snapshot();
+                assertTrue(snapshot.getVersion() >= previousVersion);
+                previousVersion = snapshot.getVersion();
+                long total = 0;
+                for (AccountDto account : snapshot.getAccounts()) {
+                    total += account.getBalance();
+                }
+                assertEquals(16_000, total, "total at version " + snapshot.getVersion());
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertTrue(bank.bank().snapshot().getVersion() > 16);
+    }
+
+    // ülekanne iseendale: mõlemad read on konto indeksis rea järjekorras ja saldo tuleb viimasest reast
+    @Test
+    void selfTransferKeepsAccountRowsInOrder() {
+        AccountDto account = bank.openAccount("EE1001", 100);
+
+        assertNull(bank.send(account, "EE1001", 30).getError());
+        assertEquals(100, account.getBalance());
+
+        BankSnapshot snapshot = bank.bank().snapshot();
+        int[] rows = snapshot.getRows(account.getId(), Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(3, rows.length);
+        for (int i = 1; i < rows.length; i++) {
+            assertTrue(rows[i - 1] < rows[i], "rows are not in order");
+        }
+        assertEquals(100, snapshot.getBalance(account.getId()));
+
+        List<TransactionDto> transactions = snapshot.getTransactions();
+        assertEquals(TransactionService.SEND_MONEY, transactions.get(rows[1]).getTransactionType());
+        assertEquals(70, transactions.get(rows[1]).getBalance());
+        assertEquals(TransactionService.RECEIVE_MONEY, transactions.get(rows[2]).getTransactionType());
+        assertEquals(100, transactions.get(rows[2]).getBalance());
+
+        // järgmine tehing jätkab õigest saldost
+        assertNull(bank.deposit(account, 5).getError());
+        assertEquals(105, bank.bank().snapshot().getBalance(account.getId()));
+    }
+}
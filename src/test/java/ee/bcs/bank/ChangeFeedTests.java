@@ -0,0 +1,247 @@
+package ee.bcs.bank;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.AccountService;
+import ee.bcs.bank.restbank.ChangeEventDto;
+import ee.bcs.bank.restbank.ChangeFeed;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// /solution/changes päris HTTP ühendusega. Ringis on 16 konto muudatust, et mahajäämist oleks lihtne tekitada.
+@Timeout(60)
+class ChangeFeedTests {
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private TestBank bank;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.startWeb("bank.feed.capacity=16");
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    @Test
+    void changesAreStreamedAndCanBeResumed() throws Exception {
+        Iterator<String> feed = subscribe(null);
+        AccountDto account = bank.openAccount("EE1001");
+        bank.deposit(account, 100);
+        bank.bean(AccountService.class).updateAccountLockStatus(bank.bank().getAccountRepository(), account.getId());
+
+        Map<String, String> opened = nextEvent(feed);
+        assertEquals(ChangeFeed.ACCOUNT_OPENED, opened.get("event"));
+        assertEquals("EE1001", change(opened).getAccount().getAccountNumber());
+
+        Map<String, String> deposited = nextEvent(feed);
+        assertEquals(ChangeFeed.TRANSACTION, deposited.get("event"));
+        assertEquals(100, change(deposited).getTransaction().getAmount());
+
+        Map<String, String> locked = nextEvent(feed);
+        assertEquals(ChangeFeed.LOCK_CHANGED, locked.get("event"));
+        assertTrue(change(locked).getAccount().getLocked());
+
+        // uus ühendus jätkab pärast viimast saadud sündmust
+        Iterator<String> resumed = subscribe(opened.get("id"));
+        assertEquals(deposited.get("id"), nextEvent(resumed).get("id"));
+        assertEquals(locked.get("id"), nextEvent(resumed).get("id"));
+    }
+
+    // konto muudatusi on ringis ainult 16, mahajäänud tellija saab reset sündmuse, kuid tehingud tulevad kõik
+    @Test
+    void subscriberFallingBehindAccountChangesIsResetWithoutLosingTransactions() throws Exception {
+        Iterator<String> feed = subscribe(null);
+        AccountDto account = bank.openAccount("EE1001");
+        String first = nextEvent(feed).get("id");
+        for (int i = 0; i < 20; i++) {
+            bank.bean(AccountService.class).updateAccountLockStatus(bank.bank().getAccountRepository(), account.getId());
+        }
+        bank.deposit(account, 7);
+
+        Iterator<String> resumed = subscribe(first);
+        Map<String, String> reset = nextEvent(resumed);
+        assertEquals(ChangeFeed.RESET, reset.get("event"));
+        assertNotNull(bank.bean(ObjectMapper.class).readValue(reset.get("data"), RequestResult.class).getError());
+
+        Map<String, String> deposited = nextEvent(resumed);
+        assertEquals(ChangeFeed.TRANSACTION, deposited.get("event"));
+        assertEquals(7, change(deposited).getTransaction().getAmount());
+    }
+
+    // Rida, mis ei jõudnud journalisse ega voogu, ei tohi kirjutajaid kinni hoida. Kui järgmise ringi rida on
+    // selle pesa üle kirjutanud, saab tellija selle asemel reset sündmuse ja ülejäänud tehingud tulevad edasi
+    @Test
+    void transactionThatIsNeverWrittenDoesNotBlockWriters() throws Exception {
+        bank.close();
+        bank = TestBank.startWeb("bank.feed.capacity=4");
+        AccountDto account = bank.openAccount("EE1001");
+        int first = bank.deposit(account, 1).getTransactionId();
+        TransactionDto stray = TestBank.transactionDto(account, TransactionService.DEPOSIT, 1000, null);
+        stray.setCurrency("EUR");
+        stray.setLocalDateTime(LocalDateTime.now());
+        bank.bank().addTransactionToTransactions(stray);
+        for (int amount = 2; amount <= 10; amount++) {
+            bank.deposit(account, amount);
+        }
+
+        Iterator<String> feed = subscribe(Integer.toString(first));
+        assertEquals(ChangeFeed.RESET, nextEvent(feed).get("event"));
+        for (int amount = 2; amount <= 10; amount++) {
+            Map<String, String> deposited = nextEvent(feed);
+            assertEquals(ChangeFeed.TRANSACTION, deposited.get("event"));
+            assertEquals(amount, change(deposited).getTransaction().getAmount());
+        }
+    }
+
+    // sündmuse id algab tehingu id-ga, ainult tehingu id-st jätkates tulevad järgmised tehingud
+    @Test
+    void transactionIdCanBeUsedAsLastEventId() throws Exception {
+        AccountDto account = bank.openAccount("EE1001");
+        int first = bank.deposit(account, 1).getTransactionId();
+        bank.deposit(account, 2);
+
+        Map<String, String> event = nextEvent(subscribe(Integer.toString(first)));
+        assertEquals(ChangeFeed.TRANSACTION, event.get("event"));
+        assertEquals(2, change(event).getTransaction().getAmount());
+        assertTrue(event.get("id").startsWith((first + 1) + "-"));
+    }
+
+    @Test
+    void unknownEventIdIsReset() throws Exception {
+        Iterator<String> feed = subscribe("1000000-unknown-0");
+        assertEquals(ChangeFeed.RESET, nextEvent(feed).get("event"));
+        assertThrows(IllegalStateException.class, () -> nextEvent(feed));
+    }
+
+    // Mitu kirjutajat ja lugeja korraga. Iga konto muudatused peavad tulema oma järjekorras,
+    // ükski ei tohi korduda ega vahele jääda.
+    @Test
+    void concurrentChangesAreDeliveredInOrder() throws Exception {
+        bank.close();
+        bank = TestBank.startWeb("bank.feed.capacity=1024");
+        int writers = 4;
+        int rounds = 50;
+        List<AccountDto> accounts = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            accounts.add(bank.openAccount("EE100" + i));
+        }
+        Iterator<String> feed = subscribe(null);
+
+        List<Thread> threads = new ArrayList<>();
+        for (AccountDto account : accounts) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int round = 1; round <= rounds; round++) {
+                    bank.deposit(account, round);
+                    AccountDto owner = new AccountDto();
+                    owner.setId(account.getId());
+                    owner.setFirstName("Mari");
+                    owner.setLastName("Tamm" + round);
+                    bank.bean(AccountService.class).updateOwnerDetails(bank.bank().getAccountRepository(), owner);
+                }
+            }));
+        }
+
+        Map<Integer, Integer> deposits = new HashMap<>();
+        Map<Integer, Integer> renames = new HashMap<>();
+        int received = 0;
+        while (received < writers * rounds * 2) {
+            Map<String, String> event = nextEvent(feed);
+            ChangeEventDto change = change(event);
+            if (ChangeFeed.TRANSACTION.equals(event.get("event"))) {
+                int round = deposits.merge(change.getTransaction().getAccountId(), 1, Integer::sum);
+                assertEquals(round, change.getTransaction().getAmount());
+            } else {
+                assertEquals(ChangeFeed.OWNER_UPDATED, event.get("event"));
+                int round = renames.merge(change.getAccount().getId(), 1, Integer::sum);
+                assertEquals("Tamm" + round, change.getAccount().getLastName());
+            }
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (AccountDto account : accounts) {
+            assertEquals(rounds, deposits.get(account.getId()));
+            assertEquals(rounds, renames.get(account.getId()));
+            assertEquals(rounds * (rounds + 1) / 2, account.getBalance());
+        }
+    }
+
+    // tehingud on journalis, nii et pärast taaskäivitust jätkab voog tehingu id järgi
+    @Test
+    void transactionsAreResumedAfterRestart(@TempDir Path directory) throws Exception {
+        bank.close();
+        bank = TestBank.startWeb("bank.journal.enabled=true", "bank.journal.directory=" + directory);
+        Iterator<String> feed = subscribe(null);
+        AccountDto account = bank.openAccount("EE1001");
+        bank.deposit(account, 1);
+        bank.deposit(account, 2);
+        assertEquals(ChangeFeed.ACCOUNT_OPENED, nextEvent(feed).get("event"));
+        String first = nextEvent(feed).get("id");
+
+        bank = bank.restart();
+        Iterator<String> resumed = subscribe(first);
+        // konto muudatused on ainult mälus, nende kohta tuleb reset
+        assertEquals(ChangeFeed.RESET, nextEvent(resumed).get("event"));
+        Map<String, String> deposited = nextEvent(resumed);
+        assertEquals(ChangeFeed.TRANSACTION, deposited.get("event"));
+        assertEquals(2, change(deposited).getTransaction().getAmount());
+    }
+
+    private Iterator<String> subscribe(String lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + bank.port() + "/solution/changes"));
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofLines()).body().iterator();
+    }
+
+    // järgmise sündmuse väljad kuni tühja reani, heartbeat kommentaarid jäetakse vahele
+    private static Map<String, String> nextEvent(Iterator<String> lines) {
+        Map<String, String> event = new HashMap<>();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.isEmpty()) {
+                if (!event.isEmpty()) {
+                    return event;
+                }
+            } else if (!line.startsWith(":")) {
+                int separator = line.indexOf(':');
+                String value = line.substring(separator + 1);
+                event.merge(line.substring(0, separator), value.startsWith(" ") ? value.substring(1) : value,
+                        (previous, next) -> previous + "\n" + next);
+            }
+        }
+        throw new IllegalStateException("Change feed ended");
+    }
+
+    private ChangeEventDto change(Map<String, String> event) throws Exception {
+        return bank.bean(ObjectMapper.class).readValue(event.get("data"), ChangeEventDto.class);
+    }
+}
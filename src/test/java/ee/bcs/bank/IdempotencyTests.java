@@ -0,0 +1,143 @@
+package ee.bcs.bank;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.IdempotencyCache;
+import ee.bcs.bank.restbank.OutboundTransferService;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.bcs.bank.TestBank.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+// Idempotency-Key päris HTTP päringutega. Kirjed aeguvad poole sekundiga, et aegumist saaks ära oodata.
+class IdempotencyTests {
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private TestBank bank;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.startWeb("bank.idempotency.ttl=500ms", "bank.idempotency.expiry-interval=50ms");
+        objectMapper = bank.bean(ObjectMapper.class);
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    @Test
+    void repeatedRequestReturnsFirstResult() throws Exception {
+        AccountDto account = bank.openAccount("EE1001");
+
+        HttpResponse<String> first = deposit(account, 100, "key-1");
+        HttpResponse<String> repeated = deposit(account, 100, "key-1");
+
+        assertEquals(200, first.statusCode());
+        assertEquals(200, repeated.statusCode());
+        assertEquals(result(first).getTransactionId(), result(repeated).getTransactionId());
+        assertEquals(100, account.getBalance());
+    }
+
+    @Test
+    void sameKeyWithDifferentRequestIsRejected() throws Exception {
+        AccountDto account = bank.openAccount("EE1001");
+
+        assertEquals(200, deposit(account, 100, "key-1").statusCode());
+        assertEquals(422, deposit(account, 200, "key-1").statusCode());
+        assertEquals(100, account.getBalance());
+    }
+
+    @Test
+    void keysAreSeparatePerClient() {
+        IdempotencyCache idempotencyCache = bank.bean(IdempotencyCache.class);
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyCache.execute("test", "first", "key-1", "request", () -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+        idempotencyCache.execute("test", "second", "key-1", "request", () -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+        idempotencyCache.execute("test", "first", "key-1", "request", () -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void expiredEntriesAreRemovedWithoutNewRequests() throws Exception {
+        AccountDto account = bank.openAccount("EE1001");
+        IdempotencyCache idempotencyCache = bank.bean(IdempotencyCache.class);
+
+        RequestResult first = result(deposit(account, 100, "key-1"));
+        assertEquals(1, idempotencyCache.size());
+        await(() -> idempotencyCache.size() == 0);
+
+        // aegunud võtmega päring tehakse uuesti
+        RequestResult second = result(deposit(account, 100, "key-1"));
+        assertNotEquals(first.getTransactionId(), second.getTransactionId());
+        assertEquals(200, account.getBalance());
+    }
+
+    // Teise panga paki võti on pangakoodi all ja seda ei eemaldata kirjete arvu pärast: saatja võib sama pakki
+    // korrata tunde hiljem ja teiselt aadressilt
+    @Test
+    void otherBankBatchKeyIsKeptPerBankCode() throws Exception {
+        bank.close();
+        bank = TestBank.startWeb("bank.idempotency.max-entries=2");
+        objectMapper = bank.bean(ObjectMapper.class);
+        AccountDto account = bank.openAccount("EE1001");
+        AccountDto depositor = bank.openAccount("EE1002");
+
+        assertEquals(200, receive(account, 30, "batch-1", "22").statusCode());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, deposit(depositor, 1, "key-" + i).statusCode());
+        }
+        assertEquals(200, receive(account, 30, "batch-1", "22").statusCode());
+        assertEquals(30, account.getBalance());
+
+        // teise panga sama võti on eraldi
+        assertEquals(200, receive(account, 30, "batch-1", "33").statusCode());
+        assertEquals(60, account.getBalance());
+    }
+
+    private HttpResponse<String> receive(AccountDto account, long amount, String idempotencyKey, String bankCode) throws Exception {
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setSenderAccountNumber("EE2001");
+        transactionDto.setReceiverAccountNumber(account.getAccountNumber());
+        transactionDto.setAmount(amount);
+        String body = objectMapper.writeValueAsString(List.of(transactionDto));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + bank.port() + "/solution/receive/transactions"))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", idempotencyKey)
+                .header(OutboundTransferService.BANK_CODE_HEADER, bankCode)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> deposit(AccountDto account, long amount, String idempotencyKey) throws Exception {
+        String body = objectMapper.writeValueAsString(TestBank.transactionDto(account, TransactionService.DEPOSIT, amount, null));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + bank.port() + "/solution/new/transaction"))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", idempotencyKey)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private RequestResult result(HttpResponse<String> response) throws Exception {
+        return objectMapper.readValue(response.body(), RequestResult.class);
+    }
+}
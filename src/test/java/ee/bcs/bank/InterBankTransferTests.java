@@ -0,0 +1,99 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.RequestResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+
+import static ee.bcs.bank.TestBank.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Kaks panka samas JVM-is: EE1 kontod on esimeses, EE2 kontod teises pangas.
+class InterBankTransferTests {
+
+    private TestBank firstBank;
+    private TestBank secondBank;
+
+    @BeforeEach
+    void startBanks() {
+        secondBank = TestBank.startWeb();
+        firstBank = TestBank.startWeb("bank.outbound.routes.EE2=http://localhost:" + secondBank.port() + "/solution",
+                "bank.outbound.initial-backoff=10ms",
+                "bank.limits.daily-transfer=50");
+    }
+
+    @AfterEach
+    void stopBanks() {
+        firstBank.close();
+        secondBank.close();
+    }
+
+    @Test
+    void transferIsDeliveredToOtherBank() throws Exception {
+        AccountDto sender = firstBank.openAccount("EE1001", 100);
+        AccountDto receiver = secondBank.openAccount("EE2001");
+
+        RequestResult result = firstBank.send(sender, "EE2001", 40);
+
+        assertNull(result.getError());
+        assertEquals(60, sender.getBalance());
+        await(() -> receiver.getBalance() == 40);
+        assertEquals(60, sender.getBalance());
+    }
+
+    @Test
+    void transferToUnknownAccountIsReversed() throws Exception {
+        AccountDto sender = firstBank.openAccount("EE1001", 100);
+
+        RequestResult result = firstBank.send(sender, "EE2999", 30);
+
+        assertNull(result.getError());
+        assertEquals(70, sender.getBalance());
+        await(() -> sender.getBalance() == 100);
+
+        // tagasi kantud summa ei loe päeva limiidi hulka
+        assertNull(firstBank.send(sender, "EE2999", 30).getError());
+    }
+
+    // teine pank ei vasta: tulemus on teadmata, raha tagasi ei kanta ja pakk saadetakse sama võtmega uuesti
+    @Test
+    void transferWithUnknownOutcomeIsResentNotReversed() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        try (TestBank sender = TestBank.startWeb("bank.outbound.routes.EE3=http://localhost:" + port + "/solution",
+                "bank.outbound.initial-backoff=10ms",
+                "bank.outbound.max-attempts=2",
+                "bank.outbound.unknown-retry-interval=100ms")) {
+            AccountDto account = sender.openAccount("EE1001", 100);
+
+            assertNull(sender.send(account, "EE3001", 30).getError());
+            Thread.sleep(500);
+            assertEquals(70, account.getBalance());
+
+            try (TestBank receiver = TestBank.startWeb("server.port=" + port)) {
+                AccountDto receiverAccount = receiver.openAccount("EE3001");
+                await(() -> receiverAccount.getBalance() == 30);
+                Thread.sleep(300);
+                assertEquals(30, receiverAccount.getBalance());
+                assertEquals(70, account.getBalance());
+            }
+        }
+    }
+
+    @Test
+    void transferToBankWithoutRouteIsRejected() {
+        AccountDto sender = firstBank.openAccount("EE1001", 100);
+
+        RequestResult result = firstBank.send(sender, "LV0001", 30);
+
+        assertNotNull(result.getError());
+        assertEquals(100, sender.getBalance());
+    }
+}
@@ -0,0 +1,89 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.AccountService;
+import ee.bcs.bank.restbank.BankPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// bank.persistence=jdbc H2 mälus oleva andmebaasiga PostgreSQL-i režiimis: pank suletakse ja käivitatakse uuesti.
+class JdbcPersistenceTests {
+
+    private final String database = "bank-" + UUID.randomUUID();
+    private TestBank bank;
+
+    @AfterEach
+    void stopBank() {
+        if (bank != null) {
+            bank.close();
+        }
+    }
+
+    @Test
+    void bankIsRecoveredFromDatabase() {
+        bank = startBank();
+        AccountDto first = bank.openAccount("EE1001", 100);
+        AccountDto second = bank.openAccount("EE1002", 50);
+        AccountDto deleted = bank.openAccount("EE1003");
+
+        assertNull(bank.send(first, "EE1002", 30).getError());
+        AccountDto owner = new AccountDto();
+        owner.setId(second.getId());
+        owner.setFirstName("Mari");
+        owner.setLastName("Maasikas");
+        bank.bean(AccountService.class).updateOwnerDetails(bank.bank().getAccountRepository(), owner);
+        bank.bean(AccountService.class).deleteAccount(bank.bank().getAccountRepository(), deleted.getId());
+        int transactions = bank.bank().getTransactions().size();
+
+        bank = bank.restart();
+        AccountDto recoveredFirst = bank.account("EE1001");
+        AccountDto recoveredSecond = bank.account("EE1002");
+        assertEquals(70, recoveredFirst.getBalance());
+        assertEquals(80, recoveredSecond.getBalance());
+        assertEquals("Maasikas", recoveredSecond.getLastName());
+        assertNull(bank.account("EE1003"));
+        assertEquals(transactions, bank.bank().getTransactions().size());
+
+        // taastatud kontodel saab edasi tehinguid teha ja uus konto ei saa kustutatud konto id-d
+        assertNull(bank.send(recoveredSecond, "EE1001", 80).getError());
+        AccountDto opened = bank.openAccount("EE1004");
+        assertEquals(deleted.getId() + 1, opened.getId());
+
+        bank = bank.restart();
+        assertEquals(150, bank.account("EE1001").getBalance());
+        assertEquals(0, bank.account("EE1002").getBalance());
+        assertNotNull(bank.account("EE1004"));
+    }
+
+    @Test
+    void concurrentDatabaseChangeStopsWrites() {
+        bank = startBank();
+        AccountDto account = bank.openAccount("EE1001", 100);
+
+        // keegi teine muudab konto rida: meie järgmine kirjutus ei leia oodatud versiooni
+        bank.bean(JdbcTemplate.class).update("UPDATE bank_account SET version = version + 1 WHERE id = ?", account.getId());
+        assertThrows(IllegalStateException.class, () -> bank.deposit(account, 50));
+
+        // viga jääb püsima ka uutele kirjutustele, andmebaasi ei kirjutata midagi pooleldi
+        assertThrows(IllegalStateException.class, () -> bank.openAccount("EE1002"));
+        assertThrows(IllegalStateException.class, () -> bank.bean(BankPersistence.class).sync());
+
+        bank = bank.restart();
+        assertEquals(100, bank.account("EE1001").getBalance());
+        assertNull(bank.account("EE1002"));
+        assertEquals(1, bank.bank().getTransactions().size());
+    }
+
+    private TestBank startBank() {
+        return TestBank.start("bank.persistence=jdbc",
+                "bank.jdbc.hikari.jdbc-url=jdbc:h2:mem:" + database + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+    }
+}
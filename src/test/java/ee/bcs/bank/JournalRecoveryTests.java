@@ -0,0 +1,127 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Pank taastatakse journalist: viimasest snapshotist ja selle järel kirjutatud segmentidest.
+class JournalRecoveryTests {
+
+    private static final String[] NUMBERS = {"EE1001", "EE1002", "EE1003", "EE1004"};
+
+    @TempDir
+    Path directory;
+
+    private TestBank bank;
+
+    @AfterEach
+    void stopBank() {
+        if (bank != null) {
+            bank.close();
+        }
+    }
+
+    @Test
+    void snapshotAndReplayedSegmentsRestoreTheSameBank() throws IOException {
+        bank = startBank(10);
+        openAccounts();
+        for (int i = 0; i < 60; i++) {
+            assertNull(bank.send(bank.account(NUMBERS[i % 4]), NUMBERS[(i + 1) % 4], 1 + i % 7).getError());
+        }
+        List<String> transactions = transactions();
+        long[] balances = balances();
+
+        bank = bank.restart();
+
+        assertFalse(files("snapshot-").isEmpty());
+        assertEquals(transactions, transactions());
+        assertArrayEquals(balances, balances());
+    }
+
+    // kettale jõudis ainult osa viimasest kirjest: see jäetakse vahele ja pank jätkab sealt edasi
+    @Test
+    void tornTailRecordIsIgnored() throws IOException {
+        bank = startBank(100_000);
+        openAccounts();
+        AccountDto account = bank.account("EE1001");
+        assertNull(bank.deposit(account, 10).getError());
+        assertNull(bank.deposit(account, 20).getError());
+        int rows = bank.bank().getTransactionStore().committedRows();
+        bank.close();
+
+        Path lastSegment = files("journal-").get(files("journal-").size() - 1);
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        bank = bank.restart();
+        assertEquals(1010, bank.account("EE1001").getBalance());
+        assertEquals(rows - 1, bank.bank().getTransactionStore().committedRows());
+
+        assertNull(bank.deposit(bank.account("EE1001"), 5).getError());
+        bank = bank.restart();
+        assertEquals(1015, bank.account("EE1001").getBalance());
+        assertEquals(rows, bank.bank().getTransactionStore().committedRows());
+    }
+
+    private void openAccounts() {
+        for (String number : NUMBERS) {
+            bank.openAccount(number, 1000);
+        }
+    }
+
+    private long[] balances() {
+        long[] balances = new long[NUMBERS.length];
+        for (int i = 0; i < NUMBERS.length; i++) {
+            balances[i] = bank.account(NUMBERS[i]).getBalance();
+        }
+        return balances;
+    }
+
+    // TransactionDto-l pole equals-it, seega võrreldakse tehinguid kõigi väljade kaupa tekstina
+    private List<String> transactions() {
+        TransactionStore store = bank.bank().getTransactionStore();
+        List<String> transactions = new ArrayList<>();
+        for (int row = 0; row < store.committedRows(); row++) {
+            TransactionDto transaction = store.get(row);
+            transactions.add(transaction.getId() + " " + transaction.getAccountId() + " " + transaction.getTransactionType()
+                    + " " + transaction.getSenderAccountNumber() + " " + transaction.getReceiverAccountNumber()
+                    + " " + transaction.getAmount() + " " + transaction.getBalance() + " " + transaction.getCurrency()
+                    + " " + transaction.getLocalDateTime());
+        }
+        return transactions;
+    }
+
+    // journali failid nime järgi järjestatud, ainult mittetühjad
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix))
+                    .filter(file -> file.toFile().length() > 0)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private TestBank startBank(long snapshotInterval) {
+        return TestBank.start("bank.journal.enabled=true",
+                "bank.journal.directory=" + directory,
+                "bank.journal.snapshot-interval=" + snapshotInterval);
+    }
+}
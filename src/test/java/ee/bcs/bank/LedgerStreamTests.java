@@ -0,0 +1,106 @@
+package ee.bcs.bank;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.AccountService;
+import ee.bcs.bank.restbank.TransactionDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// /accounts ja /transactions NDJSON lehekülgedena: järgmine leht algab eelmise lehe viimasest id-st
+class LedgerStreamTests {
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private TestBank bank;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.startWeb();
+        objectMapper = bank.bean(ObjectMapper.class);
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    // suletud kontod jäävad lehtedelt välja, ka siis, kui neid on terve lehe jagu järjest
+    @Test
+    void accountPagesSkipClosedAccounts() throws Exception {
+        List<Integer> open = new ArrayList<>();
+        AccountService accountService = bank.bean(AccountService.class);
+        for (int i = 0; i < 20; i++) {
+            AccountDto account = bank.openAccount("EE" + (1001 + i));
+            if (i % 3 == 0 || i > 15) {
+                open.add(account.getId());
+            } else {
+                accountService.deleteAccount(bank.bank().getAccountRepository(), account.getId());
+            }
+        }
+
+        List<Integer> paged = new ArrayList<>();
+        int afterId = 0;
+        List<AccountDto> page;
+        do {
+            page = accounts(afterId, 2);
+            assertTrue(page.size() <= 2);
+            for (AccountDto account : page) {
+                assertTrue(account.getId() > afterId);
+                paged.add(account.getId());
+                afterId = account.getId();
+            }
+        } while (!page.isEmpty());
+
+        assertEquals(open, paged);
+        assertEquals(List.of(open.get(open.size() - 1)), accounts(open.get(open.size() - 2), 10).stream().map(AccountDto::getId).toList());
+    }
+
+    @Test
+    void transactionPagesContinueAfterTheCursor() throws Exception {
+        AccountDto account = bank.openAccount("EE1001");
+        for (int i = 0; i < 10; i++) {
+            bank.deposit(account, 1);
+        }
+
+        List<TransactionDto> first = transactions(0, 4);
+        List<TransactionDto> second = transactions(first.get(3).getId(), 100);
+
+        assertEquals(List.of(1, 2, 3, 4), first.stream().map(TransactionDto::getId).toList());
+        assertEquals(6, second.size());
+        assertEquals(5, second.get(0).getId());
+        assertTrue(transactions(second.get(5).getId(), 100).isEmpty());
+    }
+
+    private List<AccountDto> accounts(int afterId, int limit) throws Exception {
+        return lines("/solution/accounts?afterId=" + afterId + "&limit=" + limit, AccountDto.class);
+    }
+
+    private List<TransactionDto> transactions(int afterId, int limit) throws Exception {
+        return lines("/solution/transactions?afterId=" + afterId + "&limit=" + limit, TransactionDto.class);
+    }
+
+    private <T> List<T> lines(String path, Class<T> type) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + bank.port() + path)).build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        List<T> values = new ArrayList<>();
+        for (String line : response.body().split("\n")) {
+            if (!line.isEmpty()) {
+                values.add(objectMapper.readValue(line, type));
+            }
+        }
+        return values;
+    }
+}
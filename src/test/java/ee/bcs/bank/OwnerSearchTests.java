@@ -0,0 +1,153 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.AccountRepository;
+import ee.bcs.bank.restbank.AccountService;
+import ee.bcs.bank.restbank.BankStatementDto;
+import ee.bcs.bank.restbank.BankStatementService;
+import ee.bcs.bank.restbank.TransactionDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class OwnerSearchTests {
+
+    private TestBank bank;
+    private BankStatementService bankStatementService;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.start();
+        bankStatementService = bank.bean(BankStatementService.class);
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    @Test
+    void findsOwnersByExactAndPrefixName() {
+        int tamm = openAccount("Mari", "Tamm");
+        int tammik = openAccount("Jaan", "Tammik");
+        int kask = openAccount("Mari", "Kask");
+        int tamm2 = openAccount("Jüri", " TAMM ");
+
+        assertEquals(List.of(tamm, tamm2), search("tamm", false, null, false));
+        assertEquals(List.of(tamm, tamm2, tammik), search("TAM", true, null, false));
+        assertEquals(List.of(tamm), search("Tamm", false, "mari", false));
+        assertEquals(List.of(kask), search("k", true, "M", true));
+        assertEquals(List.of(), search("Tammiku", true, null, false));
+    }
+
+    // perekonna- ja eesnime võrdlusviis on eraldi
+    @Test
+    void matchesFirstAndLastNameSeparately() {
+        int mari = openAccount("Mari", "Tamm");
+        int marianne = openAccount("Marianne", "Tammik");
+        openAccount("Jaan", "Tamm");
+
+        assertEquals(List.of(), search("Tamm", false, "Mar", false));
+        assertEquals(List.of(mari), search("Tamm", false, "Mar", true));
+        assertEquals(List.of(mari), search("Tam", true, "mari", false));
+        assertEquals(List.of(mari, marianne), search("Tam", true, "MAR", true));
+        assertEquals(List.of(), search("Tam", false, "Mari", false));
+    }
+
+    // indeks ehitatakse samal ajal, kui kontosid lisatakse, suletakse ja ümber nimetatakse
+    @Test
+    void indexBuiltDuringChangesMatchesEveryAccount() throws Exception {
+        for (int i = 0; i < 5_000; i++) {
+            openAccount("Mari", i % 2 == 0 ? "Tamm" : "Kask");
+        }
+        AccountService accountService = bank.bean(AccountService.class);
+        AccountRepository accounts = bank.bank().getAccountRepository();
+        CompletableFuture<Void> changes = CompletableFuture.runAsync(() -> {
+            for (int accountId = 1; accountId <= 5_000; accountId += 3) {
+                AccountDto rename = new AccountDto();
+                rename.setId(accountId);
+                rename.setFirstName("Jaan");
+                rename.setLastName("Tammik");
+                accountService.updateOwnerDetails(accounts, rename);
+                accountService.deleteAccount(accounts, accountId + 1);
+                openAccount("Jüri", "Tamm");
+            }
+        });
+        while (!changes.isDone()) {
+            search("Tamm", true, null, false);
+        }
+        changes.get();
+
+        for (String lastName : List.of("Tamm", "Tammik", "Kask")) {
+            List<Integer> expected = accounts.findAll().stream()
+                    .filter(account -> account.getLastName().equals(lastName))
+                    .map(AccountDto::getId)
+                    .sorted()
+                    .toList();
+            List<Integer> found = bankStatementService.searchByOwner(bank.bank(), lastName, false, null, false, 0, 100_000)
+                    .stream()
+                    .map(statement -> statement.getAccount().getId())
+                    .sorted()
+                    .toList();
+            assertEquals(expected, found, lastName);
+        }
+    }
+
+    @Test
+    void followsRenamesAndDeletedAccounts() {
+        int first = openAccount("Mari", "Tamm");
+        int second = openAccount("Jaan", "Tamm");
+        assertEquals(List.of(first, second), search("Tamm", false, null, false));
+
+        AccountDto rename = new AccountDto();
+        rename.setId(first);
+        rename.setFirstName("Mari");
+        rename.setLastName("Kask");
+        AccountService accountService = bank.bean(AccountService.class);
+        accountService.updateOwnerDetails(bank.bank().getAccountRepository(), rename);
+        accountService.deleteAccount(bank.bank().getAccountRepository(), second);
+
+        assertEquals(List.of(), search("Tamm", false, null, false));
+        assertEquals(List.of(first), search("Kask", false, null, false));
+        assertEquals(1, bankStatementService.getStatementsByLastName(bank.bank(), "kask", null, null).size());
+
+        // indeks on juba olemas, uus konto lisatakse sinna kohe
+        int third = openAccount("Jaan", "Kaskel");
+        assertEquals(List.of(first, third), search("Kas", true, null, false));
+    }
+
+    @Test
+    void returnsOnlyRecentTransactions() {
+        int accountId = openAccount("Mari", "Tamm");
+        AccountDto account = bank.bank().getAccountRepository().findById(accountId);
+        for (int amount = 1; amount <= 5; amount++) {
+            bank.deposit(account, amount);
+        }
+
+        List<BankStatementDto> statements = bankStatementService.searchByOwner(bank.bank(), "tamm", false, null, false, 2, 100);
+
+        assertEquals(1, statements.size());
+        assertEquals(15, statements.get(0).getAccount().getBalance());
+        assertEquals(List.of(4L, 5L), statements.get(0).getTransactions().stream().map(TransactionDto::getAmount).toList());
+        assertNotNull(bankStatementService.searchByOwner(bank.bank(), " ", true, null, false, 2, 100).get(0).getError());
+    }
+
+    private List<Integer> search(String lastName, boolean lastNamePrefix, String firstName, boolean firstNamePrefix) {
+        return bankStatementService.searchByOwner(bank.bank(), lastName, lastNamePrefix, firstName, firstNamePrefix, 0, 100).stream()
+                .map(statement -> statement.getAccount().getId())
+                .toList();
+    }
+
+    private int openAccount(String firstName, String lastName) {
+        AccountDto accountDto = new AccountDto();
+        accountDto.setFirstName(firstName);
+        accountDto.setLastName(lastName);
+        return bank.openAccount(accountDto).getId();
+    }
+}
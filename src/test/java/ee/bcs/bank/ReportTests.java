@@ -0,0 +1,104 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountArchive;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.AccountService;
+import ee.bcs.bank.restbank.AccountVolumeDto;
+import ee.bcs.bank.restbank.BalanceCheckpoints;
+import ee.bcs.bank.restbank.DailyTotalDto;
+import ee.bcs.bank.restbank.ReportService;
+import ee.bcs.bank.restbank.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Kontrollpunkt iga 4 rea järel, et aruannete ridade vahemikku oleks näha. Taustatöö kontrollpunkte ei tee, test
+// kutsub catchUp()-i ise. Arhiiv arhiveerib compact()-iga kohe.
+class ReportTests {
+
+    private static final long MICROS_PER_DAY = 86_400_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private TestBank bank;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.start("bank.checkpoints.interval=4",
+                "bank.checkpoints.catch-up-interval=1h",
+                "bank.archive.enabled=true",
+                "bank.archive.directory=" + directory,
+                "bank.archive.closed-for=0s");
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    // kõik tehingud on tänased: eilse päeva jaoks pole vaja ühtegi rida lugeda, homse jaoks ainult viimase kontrollpunkti järel olevad
+    @Test
+    void reportRowsArePrunedByTime() {
+        AccountDto account = bank.openAccount("EE1001");
+        for (int i = 0; i < 10; i++) {
+            bank.deposit(account, 1);
+        }
+        BalanceCheckpoints balanceCheckpoints = bank.bean(BalanceCheckpoints.class);
+        balanceCheckpoints.catchUp();
+        long today = LocalDate.now().toEpochDay();
+
+        assertArrayEquals(new int[]{0, 0}, balanceCheckpoints.rowRange(day(today - 1), day(today) - 1));
+        assertArrayEquals(new int[]{8, 10}, balanceCheckpoints.rowRange(day(today + 1), day(today + 2) - 1));
+        assertArrayEquals(new int[]{0, 10}, balanceCheckpoints.rowRange(day(today), day(today + 1) - 1));
+    }
+
+    @Test
+    void dailyTotalsCountTodaysTransactions() {
+        AccountDto account = bank.openAccount("EE1001");
+        bank.deposit(account, 5);
+        bank.deposit(account, 7);
+        bank.transaction(account, TransactionService.WITHDRAWAL, 2, null);
+        LocalDate today = LocalDate.now();
+
+        List<DailyTotalDto> totals = bank.bean(ReportService.class).getDailyTotals(today, today);
+
+        DailyTotalDto deposits = totals.stream().filter(total -> total.getTransactionType() == TransactionService.DEPOSIT).findFirst().orElseThrow();
+        assertEquals(2, deposits.getCount());
+        assertEquals(12, deposits.getAmount());
+        assertTrue(bank.bean(ReportService.class).getDailyTotals(today.minusDays(1), today.minusDays(1)).isEmpty());
+    }
+
+    // suletud ja arhiveeritud kontode tehingud jäävad edetabelisse
+    @Test
+    void topAccountsIncludeClosedAndArchivedAccounts() throws IOException {
+        AccountDto open = bank.openAccount("EE1001", 10);
+        AccountDto closed = bank.openAccount("EE1002", 30);
+        AccountDto archived = bank.openAccount("EE1003", 20);
+        AccountService accountService = bank.bean(AccountService.class);
+        accountService.deleteAccount(bank.bank().getAccountRepository(), archived.getId());
+        assertEquals(1, bank.bean(AccountArchive.class).compact());
+        accountService.deleteAccount(bank.bank().getAccountRepository(), closed.getId());
+        LocalDate today = LocalDate.now();
+
+        List<AccountVolumeDto> top = bank.bean(ReportService.class).getTopAccounts(today, today, 3);
+
+        assertEquals(List.of("EE1002", "EE1003", "EE1001"), top.stream().map(AccountVolumeDto::getAccountNumber).toList());
+        assertEquals(List.of(30L, 20L, 10L), top.stream().map(AccountVolumeDto::getVolume).toList());
+        assertEquals(open.getCurrency(), top.get(0).getCurrency());
+    }
+
+    private static long day(long epochDay) {
+        return epochDay * MICROS_PER_DAY;
+    }
+}
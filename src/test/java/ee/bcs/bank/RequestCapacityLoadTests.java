@@ -0,0 +1,180 @@
+package ee.bcs.bank;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Käivita: ./gradlew loadTest
+// Mõlemal juhul on journal sees, nii et iga päring ootab fsync-i ära. Platvormi lõimedega
+// mahub serverisse korraga ainult TOMCAT_THREADS päringut, virtuaalsete lõimedega kõik kliendid.
+@Tag("load")
+class RequestCapacityLoadTests {
+
+    private static final int TOMCAT_THREADS = 16;
+    private static final int CLIENTS = 256;
+    private static final int REQUESTS_PER_CLIENT = 50;
+    private static final int ACCOUNTS = 100;
+    private static final Pattern ACCOUNT_ID = Pattern.compile("\"accountId\":(\\d+)");
+
+    @TempDir
+    Path journalRoot;
+
+    @Test
+    void virtualThreadsServeMoreConcurrentRequests() throws Exception {
+        LoadResult platform = run(false);
+        LoadResult virtual = run(true);
+
+        System.out.println("platform threads: " + platform);
+        System.out.println("virtual threads:  " + virtual);
+
+        assertEquals(0, platform.failures);
+        assertEquals(0, virtual.failures);
+        assertTrue(platform.maxInFlight <= TOMCAT_THREADS);
+        assertTrue(virtual.maxInFlight > TOMCAT_THREADS);
+    }
+
+    private LoadResult run(boolean virtualThreads) throws Exception {
+        InFlightCounter counter = new InFlightCounter();
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BankApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("inFlightCounter", counter))
+                .properties("server.port=0",
+                        "server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "bank.journal.enabled=true",
+                        "bank.journal.directory=" + journalRoot.resolve(virtualThreads ? "virtual" : "platform"))
+                .run();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            return load("http://localhost:" + port + "/solution", counter);
+        } finally {
+            context.close();
+        }
+    }
+
+    private LoadResult load(String baseUrl, InFlightCounter counter) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+
+        int[] accountIds = new int[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String body = post(client, baseUrl + "/new/account", "{\"firstName\":\"Load\",\"lastName\":\"Test" + i + "\"}");
+            Matcher matcher = ACCOUNT_ID.matcher(body);
+            assertTrue(matcher.find(), body);
+            accountIds[i] = Integer.parseInt(matcher.group(1));
+        }
+        counter.reset();
+
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int c = 0; c < CLIENTS; c++) {
+            clients.execute(() -> {
+                try {
+                    start.await();
+                    for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                        int accountId = accountIds[ThreadLocalRandom.current().nextInt(ACCOUNTS)];
+                        String body = post(client, baseUrl + "/new/transaction",
+                                "{\"accountId\":" + accountId + ",\"amount\":10,\"transactionType\":\"d\"}");
+                        if (body.contains("\"error\":\"")) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(5, TimeUnit.MINUTES));
+        long elapsedNanos = System.nanoTime() - started;
+
+        return new LoadResult(CLIENTS * REQUESTS_PER_CLIENT, elapsedNanos, counter.max.get(), failures.get());
+    }
+
+    private static String post(HttpClient client, String url, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(url + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    // loeb, mitu päringut on serveris korraga töös
+    private static class InFlightCounter implements Filter {
+
+        private final AtomicInteger current = new AtomicInteger();
+        private final AtomicInteger max = new AtomicInteger();
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                current.decrementAndGet();
+            }
+        }
+
+        void reset() {
+            max.set(current.get());
+        }
+    }
+
+    private static class LoadResult {
+
+        private final int requests;
+        private final long elapsedNanos;
+        private final int maxInFlight;
+        private final int failures;
+
+        LoadResult(int requests, long elapsedNanos, int maxInFlight, int failures) {
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+            this.maxInFlight = maxInFlight;
+            this.failures = failures;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            return String.format("%d requests in %.2f s (%.0f req/s), max %d in flight, %d failed",
+                    requests, seconds, requests / seconds, maxInFlight, failures);
+        }
+    }
+}
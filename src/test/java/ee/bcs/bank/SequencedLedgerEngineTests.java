@@ -0,0 +1,129 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.LedgerEngine;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.SequencedLedgerEngine;
+import ee.bcs.bank.restbank.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// bank.engine=sequencer: käsud täidab üks lõim, teised kirjutajad võtavad sama ühe kirjutaja luku
+class SequencedLedgerEngineTests {
+
+    private TestBank bank;
+    private LedgerEngine ledgerEngine;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.start("bank.engine=sequencer", "bank.engine.ring-size=64");
+        ledgerEngine = bank.bean(LedgerEngine.class);
+        assertInstanceOf(SequencedLedgerEngine.class, ledgerEngine);
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    // mootori ülekanded ja paketid väljaspool mootorit käivad korraga, raha ei teki ega kao
+    @Test
+    void transfersAndBatchesTogetherKeepTheTotal() throws Exception {
+        List<AccountDto> accounts = openAccounts(8);
+        ConcurrentLinkedQueue<CompletableFuture<RequestResult>> futures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 500; j++) {
+                    AccountDto sender = accounts.get(random.nextInt(accounts.size()));
+                    AccountDto receiver = accounts.get(random.nextInt(accounts.size()));
+                    futures.add(ledgerEngine.addNewTransaction(bank.bank(),
+                            TestBank.transactionDto(sender, TransactionService.SEND_MONEY, random.nextInt(1, 50), receiver.getAccountNumber())));
+                }
+            }));
+        }
+        for (int i = 0; i < 20; i++) {
+            List<RequestResult> results = bank.bean(TransactionService.class).addNewTransactions(bank.bank(), List.of(
+                    TestBank.transactionDto(accounts.get(0), TransactionService.SEND_MONEY, 1, accounts.get(1).getAccountNumber()),
+                    TestBank.transactionDto(accounts.get(1), TransactionService.SEND_MONEY, 1, accounts.get(2).getAccountNumber())), true);
+            assertNull(results.get(0).getError());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (CompletableFuture<RequestResult> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(accounts.size() * 1_000L, total(accounts));
+    }
+
+    // peatamisel vastatakse igale avaldatud käsule, hiljem tulnud käsud lükatakse kohe tagasi
+    @Test
+    void stopAnswersEveryPublishedCommand() throws Exception {
+        List<AccountDto> accounts = openAccounts(4);
+        ConcurrentLinkedQueue<CompletableFuture<RequestResult>> futures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean publishing = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                while (publishing.get()) {
+                    futures.add(ledgerEngine.addNewTransaction(bank.bank(),
+                            TestBank.transactionDto(accounts.get(0), TransactionService.DEPOSIT, 1, null)));
+                }
+            }));
+        }
+        TestBank.await(() -> futures.size() > 1_000);
+
+        bank.close();
+        publishing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long completed = 0;
+        for (CompletableFuture<RequestResult> future : futures) {
+            assertTrue(future.isDone());
+            if (!future.isCompletedExceptionally()) {
+                completed++;
+            } else {
+                CompletionException e = assertThrows(CompletionException.class, future::join);
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        assertEquals(1_000 + completed, accounts.get(0).getBalance());
+    }
+
+    private List<AccountDto> openAccounts(int count) {
+        List<AccountDto> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            accounts.add(bank.openAccount("EE10" + (10 + i), 1_000));
+        }
+        return accounts;
+    }
+
+    private long total(List<AccountDto> accounts) {
+        long total = 0;
+        for (AccountDto account : accounts) {
+            total += account.getBalance();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,68 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.BankStatementDto;
+import ee.bcs.bank.restbank.BankStatementService;
+import ee.bcs.bank.restbank.TransactionDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// väljavõtte ajavahemik [from, to] mõlemast otsast kaasa arvatud
+class StatementTests {
+
+    private TestBank bank;
+    private BankStatementService bankStatementService;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.start();
+        bankStatementService = bank.bean(BankStatementService.class);
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    @Test
+    void statementContainsTransactionsOfThePeriod() throws InterruptedException {
+        AccountDto account = bank.openAccount("EE1001");
+        bank.openAccount("EE1002", 100);
+        for (int amount = 1; amount <= 4; amount++) {
+            bank.deposit(account, amount);
+            Thread.sleep(2);
+        }
+        List<TransactionDto> all = statement(account, null, null).getTransactions();
+        assertEquals(List.of(1L, 2L, 3L, 4L), all.stream().map(TransactionDto::getAmount).toList());
+
+        BankStatementDto middle = statement(account, all.get(1).getLocalDateTime(), all.get(2).getLocalDateTime());
+        assertEquals(List.of(2L, 3L), amounts(middle));
+        assertEquals(10, middle.getAccount().getBalance());
+
+        assertEquals(List.of(1L), amounts(statement(account, null, all.get(0).getLocalDateTime())));
+        assertEquals(List.of(4L), amounts(statement(account, all.get(3).getLocalDateTime(), LocalDateTime.now())));
+        assertTrue(statement(account, LocalDateTime.now().plusDays(1), null).getTransactions().isEmpty());
+    }
+
+    @Test
+    void unknownAccountHasError() {
+        assertNotNull(bankStatementService.getStatementByAccountId(bank.bank(), 404, null, null).getError());
+        assertNotNull(bankStatementService.getStatementByAccountNumber(bank.bank(), "EE404", null, null).getError());
+    }
+
+    private BankStatementDto statement(AccountDto account, LocalDateTime from, LocalDateTime to) {
+        return bankStatementService.getStatementByAccountId(bank.bank(), account.getId(), from, to);
+    }
+
+    private static List<Long> amounts(BankStatementDto statement) {
+        return statement.getTransactions().stream().map(TransactionDto::getAmount).toList();
+    }
+}
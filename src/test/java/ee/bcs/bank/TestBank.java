@@ -0,0 +1,141 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.Bank;
+import ee.bcs.bank.restbank.BankService;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Testide ühine pank: käivitab rakenduse ja teeb kontosid ning tehinguid teenuste kaudu, mitte HTTP-ga.
+final class TestBank implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final boolean web;
+    private final String[] properties;
+
+    private TestBank(boolean web, String... properties) {
+        this.web = web;
+        this.properties = properties;
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(BankApplication.class);
+        // testid kasutavad lühikesi kontonumbreid nagu EE1001
+        String[] builderProperties = withDefault(properties, "bank.account-number.check-iban=false");
+        if (!web) {
+            builder.web(WebApplicationType.NONE);
+        } else {
+            builderProperties = withDefault(builderProperties, "server.port=0");
+        }
+        context = builder.properties(builderProperties).run();
+    }
+
+    // omadus lisatakse, kui test seda ise ei anna
+    private static String[] withDefault(String[] properties, String property) {
+        String key = property.substring(0, property.indexOf('=') + 1);
+        if (Arrays.stream(properties).anyMatch(given -> given.startsWith(key))) {
+            return properties;
+        }
+        String[] withDefault = Arrays.copyOf(properties, properties.length + 1);
+        withDefault[properties.length] = property;
+        return withDefault;
+    }
+
+    static TestBank start(String... properties) {
+        return new TestBank(false, properties);
+    }
+
+    // veebiserver juhuslikul pordil, kui server.port pole antud
+    static TestBank startWeb(String... properties) {
+        return new TestBank(true, properties);
+    }
+
+    // sulgeb panga ja käivitab selle samade seadetega uuesti
+    TestBank restart() {
+        close();
+        return new TestBank(web, properties);
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    ConfigurableApplicationContext context() {
+        return context;
+    }
+
+    Bank bank() {
+        return context.getBean(Bank.class);
+    }
+
+    int port() {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    AccountDto account(String accountNumber) {
+        return bank().getAccountRepository().findByNumber(accountNumber);
+    }
+
+    AccountDto openAccount(String accountNumber) {
+        return openAccount(accountNumber, 0);
+    }
+
+    AccountDto openAccount(String accountNumber, long deposit) {
+        AccountDto accountDto = new AccountDto();
+        accountDto.setAccountNumber(accountNumber);
+        AccountDto account = openAccount(accountDto);
+        if (deposit > 0) {
+            deposit(account, deposit);
+        }
+        return account;
+    }
+
+    AccountDto openAccount(AccountDto accountDto) {
+        RequestResult result = bean(BankService.class).addAccountToBank(bank(), accountDto);
+        return bank().getAccountRepository().findById(result.getAccountId());
+    }
+
+    RequestResult deposit(AccountDto account, long amount) {
+        return transaction(account, TransactionService.DEPOSIT, amount, null);
+    }
+
+    RequestResult send(AccountDto sender, String receiverAccountNumber, long amount) {
+        return transaction(sender, TransactionService.SEND_MONEY, amount, receiverAccountNumber);
+    }
+
+    RequestResult transaction(AccountDto account, char transactionType, long amount, String receiverAccountNumber) {
+        return bean(TransactionService.class).addNewTransaction(bank(),
+                transactionDto(account, transactionType, amount, receiverAccountNumber));
+    }
+
+    static TransactionDto transactionDto(AccountDto account, char transactionType, long amount, String receiverAccountNumber) {
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setAccountId(account.getId());
+        transactionDto.setTransactionType(transactionType);
+        transactionDto.setAmount(amount);
+        transactionDto.setReceiverAccountNumber(receiverAccountNumber);
+        return transactionDto;
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in 10 s");
+            Thread.sleep(20);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (context.isActive()) {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ee.bcs.bank;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.LedgerStreamService;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// /new/transactions paketid: atomic kontrollid paketi sees ja NDJSON vastus
+class TransactionBatchTests {
+
+    private TestBank bank;
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.startWeb();
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    @Test
+    void atomicBatchChecksReceiverOverflowAgainstEarlierTransfers() {
+        bank.openAccount("EE1001", Long.MAX_VALUE - 10);
+        AccountDto first = bank.openAccount("EE1002", 10);
+        AccountDto second = bank.openAccount("EE1003", 10);
+
+        // kumbki ülekanne eraldi mahub, koos mitte
+        List<RequestResult> results = bank.bean(TransactionService.class).addNewTransactions(bank.bank(), List.of(
+                TestBank.transactionDto(first, TransactionService.SEND_MONEY, 6, "EE1001"),
+                TestBank.transactionDto(second, TransactionService.SEND_MONEY, 6, "EE1001")), true);
+
+        assertEquals(2, results.size());
+        assertNotNull(results.get(1).getError());
+        assertEquals(Long.MAX_VALUE - 10, bank.account("EE1001").getBalance());
+        assertEquals(10, bank.account("EE1002").getBalance());
+        assertEquals(10, bank.account("EE1003").getBalance());
+    }
+
+    @Test
+    void atomicBatchRecordsTransactionMetrics() {
+        AccountDto account = bank.openAccount("EE1001");
+        MeterRegistry meterRegistry = bank.bean(MeterRegistry.class);
+        long before = meterRegistry.get("bank.transactions").tag("type", "d").timer().count();
+
+        bank.bean(TransactionService.class).addNewTransactions(bank.bank(), List.of(
+                TestBank.transactionDto(account, TransactionService.DEPOSIT, 5, null),
+                TestBank.transactionDto(account, TransactionService.DEPOSIT, 7, null)), true);
+
+        assertEquals(before + 2, meterRegistry.get("bank.transactions").tag("type", "d").timer().count());
+        assertEquals(12, bank.account("EE1001").getBalance());
+    }
+
+    @Test
+    void ndjsonBatchAnswersWithOneResultPerLine() throws Exception {
+        AccountDto account = bank.openAccount("EE1001");
+        ObjectMapper objectMapper = bank.bean(ObjectMapper.class);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            TransactionDto deposit = TestBank.transactionDto(account, TransactionService.DEPOSIT, 1, null);
+            body.append(objectMapper.writeValueAsString(deposit)).append('\n');
+        }
+        body.append(objectMapper.writeValueAsString(TestBank.transactionDto(account, TransactionService.WITHDRAWAL, 1000, null)));
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + bank.port() + "/solution/new/transactions"))
+                .header("Content-Type", LedgerStreamService.NDJSON)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith(LedgerStreamService.NDJSON));
+        String[] lines = response.body().split("\n");
+        assertEquals(601, lines.length);
+        assertNull(objectMapper.readValue(lines[0], RequestResult.class).getError());
+        assertNotNull(objectMapper.readValue(lines[600], RequestResult.class).getError());
+        assertEquals(600, bank.account("EE1001").getBalance());
+    }
+}
@@ -0,0 +1,169 @@
+package ee.bcs.bank;
+
+import ee.bcs.bank.restbank.AccountDto;
+import ee.bcs.bank.restbank.RequestResult;
+import ee.bcs.bank.restbank.TransactionDto;
+import ee.bcs.bank.restbank.TransactionService;
+import ee.bcs.bank.restbank.VelocityLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static ee.bcs.bank.TestBank.transactionDto;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+// Piirangud on väikesed ja täituvad 1 token sekundis. Aeg liigub ainult testi kellaga, nii et test ei sõltu arvuti kiirusest.
+class VelocityLimitsTests {
+
+    private TestBank bank;
+    private TransactionService transactionService;
+    private final AtomicLong nanos = new AtomicLong();
+
+    @BeforeEach
+    void startBank() {
+        bank = TestBank.start("bank.limits.account-rate=1",
+                "bank.limits.account-burst=5",
+                "bank.limits.client-rate=1",
+                "bank.limits.client-burst=2",
+                "bank.limits.max-clients=2",
+                "bank.limits.daily-withdrawal=500",
+                "bank.limits.daily-transfer=300");
+        transactionService = bank.bean(TransactionService.class);
+        // testi kell algab pärast VelocityLimits käivitumist, sest selle aeg loetakse käivitumisest
+        nanos.set(System.nanoTime());
+        setField(bank.bean(VelocityLimits.class), "nanoClock", (LongSupplier) nanos::get);
+    }
+
+    @AfterEach
+    void stopBank() {
+        bank.close();
+    }
+
+    @Test
+    void accountIsRateLimited() {
+        AccountDto account = bank.openAccount("EE1001");
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(bank.deposit(account, 1).getError());
+        }
+        assertNotNull(bank.deposit(account, 1).getError());
+        assertEquals(5, account.getBalance());
+
+        advanceSeconds(1);
+        assertNull(bank.deposit(account, 1).getError());
+        assertNotNull(bank.deposit(account, 1).getError());
+
+        // teise konto tokenid on eraldi
+        assertNull(bank.deposit(bank.openAccount("EE1002"), 1).getError());
+    }
+
+    @Test
+    void clientIsRateLimited() {
+        assertNull(transactionService.checkClientRate("first"));
+        assertNull(transactionService.checkClientRate("first"));
+        assertNotNull(transactionService.checkClientRate("first"));
+        assertNull(transactionService.checkClientRate("second"));
+
+        advanceSeconds(1);
+        assertNull(transactionService.checkClientRate("first"));
+        assertNotNull(transactionService.checkClientRate("first"));
+    }
+
+    @Test
+    void clientsOverLimitShareOneBucket() {
+        assertNull(transactionService.checkClientRate("first"));
+        assertNull(transactionService.checkClientRate("second"));
+
+        // kolmas ja neljas klient ei mahu enam mappi, kuid neid ei keelata, vaid nad jagavad ühte bucketit
+        assertNull(transactionService.checkClientRate("third"));
+        assertNull(transactionService.checkClientRate("fourth"));
+        assertNotNull(transactionService.checkClientRate("third"));
+
+        // täis bucketiga kliendid eemaldatakse ja uus klient saab oma bucketi
+        advanceSeconds(2);
+        assertNull(transactionService.checkClientRate("fifth"));
+        assertNull(transactionService.checkClientRate("fifth"));
+        assertNull(transactionService.checkClientRate("sixth"));
+    }
+
+    @Test
+    void batchPaysOneTokenPerTransaction() {
+        AccountDto account = bank.openAccount("EE1001");
+        List<TransactionDto> batch = List.of(transactionDto(account, TransactionService.DEPOSIT, 1, null),
+                transactionDto(account, TransactionService.DEPOSIT, 1, null),
+                transactionDto(account, TransactionService.DEPOSIT, 1, null));
+
+        List<RequestResult> results = transactionService.addNewTransactions(bank.bank(), "first", batch, false);
+        assertNull(results.get(0).getError());
+        assertNull(results.get(1).getError());
+        assertNotNull(results.get(2).getError());
+        assertEquals(2, account.getBalance());
+
+        // atomic paketile antakse tokenid kõigile tehingutele või mitte ühelegi
+        advanceSeconds(2);
+        results = transactionService.addNewTransactions(bank.bank(), "first", batch, true);
+        assertEquals(3, results.size());
+        results.forEach(result -> assertNotNull(result.getError()));
+        assertEquals(2, account.getBalance());
+        assertNull(transactionService.checkClientRate("first"));
+    }
+
+    @Test
+    void dailyLimitsAreEnforced() {
+        AccountDto account = bank.openAccount("EE1001", 10_000);
+        bank.openAccount("EE1002");
+
+        assertNull(bank.transaction(account, TransactionService.WITHDRAWAL, 400, null).getError());
+        assertNotNull(bank.transaction(account, TransactionService.WITHDRAWAL, 101, null).getError());
+        assertNull(bank.send(account, "EE1002", 300).getError());
+        assertNotNull(bank.send(account, "EE1002", 1).getError());
+        assertEquals(9_300, account.getBalance());
+    }
+
+    @Test
+    void atomicBatchCountsEarlierTransactionsAgainstDailyLimit() {
+        AccountDto account = bank.openAccount("EE1001", 10_000);
+
+        List<RequestResult> results = transactionService.addNewTransactions(bank.bank(), List.of(
+                transactionDto(account, TransactionService.WITHDRAWAL, 300, null),
+                transactionDto(account, TransactionService.WITHDRAWAL, 300, null)), true);
+
+        assertNotNull(results.get(0).getError());
+        assertNotNull(results.get(1).getError());
+        assertEquals(10_000, account.getBalance());
+    }
+
+    // päevased summad arvutatakse pärast taaskäivitust journalist uuesti
+    @Test
+    void dailyLimitsSurviveRestart(@TempDir Path directory) {
+        bank.close();
+        bank = TestBank.start("bank.limits.daily-withdrawal=500",
+                "bank.limits.daily-transfer=300",
+                "bank.journal.enabled=true",
+                "bank.journal.directory=" + directory);
+        AccountDto account = bank.openAccount("EE1001", 10_000);
+        bank.openAccount("EE1002");
+        assertNull(bank.transaction(account, TransactionService.WITHDRAWAL, 400, null).getError());
+        assertNull(bank.send(account, "EE1002", 250).getError());
+
+        bank = bank.restart();
+        account = bank.account("EE1001");
+        assertNotNull(bank.transaction(account, TransactionService.WITHDRAWAL, 101, null).getError());
+        assertNull(bank.transaction(account, TransactionService.WITHDRAWAL, 100, null).getError());
+        assertNotNull(bank.send(account, "EE1002", 51).getError());
+        assertNull(bank.send(account, "EE1002", 50).getError());
+    }
+
+    private void advanceSeconds(long seconds) {
+        nanos.addAndGet(seconds * 1_000_000_000);
+    }
+}
@@ -0,0 +1,62 @@
+package ee.bcs.bank.restbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountNumberAllocatorTests {
+
+    private final AccountNumberAllocator accountNumberAllocator = new AccountNumberAllocator("77");
+
+    @Test
+    void allocatedNumbersAreDistinctValidIbans() {
+        Set<String> numbers = new HashSet<>();
+        for (int accountId = 1; accountId <= 100_000; accountId++) {
+            String accountNumber = accountNumberAllocator.accountNumber(accountId);
+            assertTrue(AccountNumberAllocator.isValidIban(accountNumber), accountNumber);
+            assertEquals("77", AccountNumberAllocator.bankCodeOf(accountNumber));
+            assertTrue(numbers.add(accountNumber), accountNumber);
+        }
+        assertEquals(20, accountNumberAllocator.accountNumber(Integer.MAX_VALUE).length());
+    }
+
+    // Eesti IBAN-i näide ja sellest ühe vea või ümberpaigutusega tehtud numbrid
+    @Test
+    void checksumCatchesSingleDigitAndSwapErrors() {
+        String valid = "EE382200221020145685";
+        assertTrue(AccountNumberAllocator.isValidIban(valid));
+        assertEquals("22", AccountNumberAllocator.bankCodeOf(valid));
+
+        for (int i = 2; i < valid.length(); i++) {
+            for (char digit = '0'; digit <= '9'; digit++) {
+                if (digit != valid.charAt(i)) {
+                    String changed = valid.substring(0, i) + digit + valid.substring(i + 1);
+                    assertFalse(AccountNumberAllocator.isValidIban(changed), changed);
+                }
+            }
+            if (i + 1 < valid.length() && valid.charAt(i) != valid.charAt(i + 1)) {
+                String swapped = valid.substring(0, i) + valid.charAt(i + 1) + valid.charAt(i) + valid.substring(i + 2);
+                assertFalse(AccountNumberAllocator.isValidIban(swapped), swapped);
+            }
+        }
+        assertFalse(AccountNumberAllocator.isValidIban("EE1001"));
+        assertFalse(AccountNumberAllocator.isValidIban("LV382200221020145685"));
+        assertFalse(AccountNumberAllocator.isValidIban("EE38220022102014568X"));
+        assertFalse(AccountNumberAllocator.isValidIban(null));
+        assertNull(AccountNumberAllocator.bankCodeOf("EE1001"));
+    }
+
+    @Test
+    void clientNumberMustBeAValidIbanOfThisBank() {
+        assertNull(accountNumberAllocator.checkClientNumber(accountNumberAllocator.accountNumber(42)));
+        assertNotNull(accountNumberAllocator.checkClientNumber("EE1001"));
+        assertNotNull(accountNumberAllocator.checkClientNumber("EE382200221020145685"));
+    }
+}
@@ -0,0 +1,134 @@
+package ee.bcs.bank.restbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// id ja kontonumbri indeks peavad ütlema sama, mis kontode läbivaatamine, ka pärast sulgemist ja eemaldamist
+class AccountRepositoryTests {
+
+    private static final LocalDateTime CLOSED_AT = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final AccountRepository accountRepository = new AccountRepository();
+
+    @Test
+    void accountsAreFoundByIdAndNumber() {
+        // rohkem kontosid kui algne id massiiv mahutab
+        for (int accountId = 1; accountId <= 5_000; accountId++) {
+            assertTrue(accountRepository.add(account(accountId, "EE" + accountId)));
+        }
+
+        assertEquals(5_000, accountRepository.size());
+        for (int accountId : new int[]{1, 1023, 1024, 1025, 5_000}) {
+            AccountDto account = accountRepository.findById(accountId);
+            assertEquals(accountId, account.getId());
+            assertSame(account, accountRepository.findByNumber("EE" + accountId));
+            assertTrue(accountRepository.existsById(accountId));
+            assertTrue(accountRepository.existsByNumber("EE" + accountId));
+        }
+        assertNull(accountRepository.findById(0));
+        assertNull(accountRepository.findById(-1));
+        assertNull(accountRepository.findById(5_001));
+        assertNull(accountRepository.findById(Integer.MAX_VALUE));
+        assertNull(accountRepository.findByNumber("EE5001"));
+        assertNull(accountRepository.findByNumber(null));
+        assertEquals(5_000, accountRepository.findAll().size());
+    }
+
+    @Test
+    void accountNumberIsUnique() {
+        assertTrue(accountRepository.add(account(1, "EE1001")));
+        assertFalse(accountRepository.add(account(2, "EE1001")));
+
+        assertNull(accountRepository.findById(2));
+        assertEquals(1, accountRepository.findByNumber("EE1001").getId());
+        assertEquals(1, accountRepository.size());
+    }
+
+    // suletud konto jääb id järgi tombstone-iks, number vabaneb uuele kontole
+    @Test
+    void closedAccountFreesItsNumber() {
+        AccountDto closed = account(1, "EE1001");
+        accountRepository.add(closed);
+        accountRepository.add(account(2, "EE1002"));
+        accountRepository.close(closed, CLOSED_AT);
+
+        assertNull(accountRepository.findById(1));
+        assertNull(accountRepository.findByNumber("EE1001"));
+        assertSame(closed, accountRepository.findClosedById(1));
+        assertEquals(1, accountRepository.size());
+        assertEquals(List.of(2), ids(accountRepository.findAll()));
+
+        assertTrue(accountRepository.add(account(3, "EE1001")));
+        assertEquals(3, accountRepository.findByNumber("EE1001").getId());
+        assertSame(closed, accountRepository.findClosedById(1));
+
+        accountRepository.purge(1);
+        assertNull(accountRepository.findClosedById(1));
+        assertTrue(accountRepository.findAllClosed().isEmpty());
+        assertEquals(2, accountRepository.size());
+    }
+
+    @Test
+    void removedAccountLeavesBothIndexes() {
+        AccountDto removed = account(1, "EE1001");
+        accountRepository.add(removed);
+        accountRepository.remove(removed);
+
+        assertNull(accountRepository.findById(1));
+        assertNull(accountRepository.findByNumber("EE1001"));
+        assertNull(accountRepository.findClosedById(1));
+        assertEquals(0, accountRepository.size());
+
+        // teist korda eemaldamine ei muuda midagi
+        accountRepository.remove(removed);
+        assertEquals(0, accountRepository.size());
+    }
+
+    // taastamisel võib suletud konto kirje tulla pärast avatud konto kirjet
+    @Test
+    void restoredClosedAccountClosesTheOpenOne() {
+        accountRepository.add(account(1, "EE1001"));
+        AccountDto closed = account(1, "EE1001");
+        closed.setClosedAt(CLOSED_AT);
+        accountRepository.addClosed(closed);
+
+        assertNull(accountRepository.findById(1));
+        assertNull(accountRepository.findByNumber("EE1001"));
+        assertEquals(CLOSED_AT, accountRepository.findClosedById(1).getClosedAt());
+        assertEquals(0, accountRepository.size());
+    }
+
+    @Test
+    void pagesSkipClosedAccounts() {
+        for (int accountId = 1; accountId <= 10; accountId++) {
+            accountRepository.add(account(accountId, "EE" + accountId));
+        }
+        for (int accountId = 2; accountId <= 8; accountId++) {
+            accountRepository.close(accountRepository.findById(accountId), CLOSED_AT);
+        }
+
+        assertEquals(List.of(1, 9), ids(accountRepository.findAfter(0, 2)));
+        assertEquals(List.of(10), ids(accountRepository.findAfter(9, 2)));
+        assertEquals(List.of(), ids(accountRepository.findAfter(10, 2)));
+    }
+
+    private static AccountDto account(int accountId, String accountNumber) {
+        AccountDto accountDto = new AccountDto();
+        accountDto.setId(accountId);
+        accountDto.setAccountNumber(accountNumber);
+        accountDto.setCurrency("EUR");
+        return accountDto;
+    }
+
+    private static List<Integer> ids(List<AccountDto> accounts) {
+        return accounts.stream().map(AccountDto::getId).toList();
+    }
+}
@@ -0,0 +1,113 @@
+package ee.bcs.bank.restbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Ridade aeg hüppab kuni 40 µs edasi-tagasi, nagu siis, kui kellaaeg loetakse enne rea lisamist. Kontrollpunkt iga
+// 4 rea järel, nii et täielike kontrollpunktide vahel on muutunud kontode kontrollpunktid.
+class BalanceCheckpointsTests {
+
+    private static final int ACCOUNTS = 6;
+    private static final long START_MICROS = LocalDateTime.of(2024, 1, 1, 12, 0).toEpochSecond(ZoneOffset.UTC) * 1_000_000;
+
+    private final Bank bank = new Bank();
+    private final BalanceCheckpoints balanceCheckpoints = new BalanceCheckpoints(bank, 4);
+    private final Random random = new Random(42);
+    private final long[] balances = new long[ACCOUNTS + 1];
+    private int rows;
+
+    // saldo igal hetkel on iga konto viimane rida kuni selle hetkeni, kontrollpunktide järel olevad read loetakse läbi
+    @Test
+    void totalsMatchEveryAccountsLastRowUpToAsOf() {
+        addRows(150);
+        balanceCheckpoints.catchUp();
+        addRows(150);
+        assertTotals();
+
+        balanceCheckpoints.catchUp();
+        assertTrue(balanceCheckpoints.checkpointCount() > 64);
+        assertTotals();
+    }
+
+    @Test
+    void rowRangeContainsEveryRowOfThePeriod() {
+        addRows(300);
+        balanceCheckpoints.catchUp();
+        TransactionStore transactionStore = bank.getTransactionStore();
+
+        for (int i = 0; i < 200; i++) {
+            long from = START_MICROS + random.nextInt(3_200) - 100;
+            long to = from + random.nextInt(400);
+            int[] range = balanceCheckpoints.rowRange(from, to);
+            for (int row = 0; row < rows; row++) {
+                long micros = transactionStore.epochMicros(row);
+                if (micros >= from && micros <= to) {
+                    assertTrue(row >= range[0] && row < range[1], "row " + row + " outside " + range[0] + ".." + range[1]);
+                }
+            }
+        }
+    }
+
+    private void assertTotals() {
+        for (long asOf = START_MICROS - 100; asOf < START_MICROS + rows * 10L + 100; asOf += 7) {
+            assertEquals(expectedTotals(asOf), totals(asOf), "as of " + asOf);
+        }
+    }
+
+    private Map<String, Long> totals(long asOfMicros) {
+        Map<String, Long> totals = new TreeMap<>();
+        List<BalanceDto> balanceDtos = balanceCheckpoints.getTotalBalances(time(asOfMicros));
+        for (BalanceDto balanceDto : balanceDtos) {
+            totals.put(balanceDto.getCurrency(), balanceDto.getBalance());
+        }
+        return totals;
+    }
+
+    private Map<String, Long> expectedTotals(long asOfMicros) {
+        TransactionStore transactionStore = bank.getTransactionStore();
+        Map<Integer, Integer> lastRows = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            if (transactionStore.epochMicros(row) <= asOfMicros) {
+                lastRows.put(transactionStore.accountId(row), row);
+            }
+        }
+        Map<String, Long> totals = new TreeMap<>();
+        for (int row : lastRows.values()) {
+            totals.merge(transactionStore.currency(row), transactionStore.balance(row), Long::sum);
+        }
+        return totals;
+    }
+
+    private void addRows(int count) {
+        for (int i = 0; i < count; i++) {
+            int accountId = 1 + random.nextInt(ACCOUNTS);
+            long amount = random.nextInt(1_000) - 300;
+            balances[accountId] += amount;
+
+            TransactionDto transactionDto = new TransactionDto();
+            transactionDto.setAccountId(accountId);
+            transactionDto.setTransactionType(amount < 0 ? TransactionService.WITHDRAWAL : TransactionService.DEPOSIT);
+            transactionDto.setAmount(Math.abs(amount));
+            transactionDto.setBalance(balances[accountId]);
+            transactionDto.setCurrency(accountId % 2 == 0 ? "EUR" : "USD");
+            transactionDto.setLocalDateTime(time(START_MICROS + rows * 10L + random.nextInt(81) - 40));
+            bank.addTransactionToTransactions(transactionDto);
+            rows++;
+        }
+    }
+
+    private static LocalDateTime time(long epochMicros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMicros, 1_000_000), (int) Math.floorMod(epochMicros, 1_000_000) * 1_000,
+                ZoneOffset.UTC);
+    }
+}
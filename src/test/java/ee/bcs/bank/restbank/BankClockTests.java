@@ -0,0 +1,101 @@
+package ee.bcs.bank.restbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BankClockTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final TestClock clock = new TestClock(START.toInstant(ZoneOffset.UTC).toEpochMilli());
+    private final BankClock bankClock = new BankClock(clock);
+
+    @Test
+    void sameMillisecondReturnsSameObject() {
+        LocalDateTime first = bankClock.now();
+        assertEquals(START, first);
+        assertSame(first, bankClock.now());
+
+        clock.millis.addAndGet(1);
+        assertEquals(START.plusNanos(1_000_000), bankClock.now());
+    }
+
+    @Test
+    void timeDoesNotGoBackwards() {
+        clock.millis.addAndGet(1_000);
+        LocalDateTime later = bankClock.now();
+
+        // süsteemi kella keeratakse tagasi: aeg jääb seisma, kuni kell jõuab järele
+        clock.millis.addAndGet(-5_000);
+        assertSame(later, bankClock.now());
+        clock.millis.addAndGet(5_001);
+        assertEquals(later.plusNanos(1_000_000), bankClock.now());
+    }
+
+    @Test
+    void concurrentReadersNeverSeeTimeGoBackwards() throws InterruptedException {
+        ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                LocalDateTime previous = LocalDateTime.MIN;
+                for (int j = 0; j < 100_000; j++) {
+                    clock.millis.incrementAndGet();
+                    LocalDateTime now = bankClock.now();
+                    if (now.isBefore(previous)) {
+                        errors.add(now + " after " + previous);
+                    }
+                    previous = now;
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), new ArrayList<>(errors));
+        assertFalse(bankClock.now().isBefore(START.plusSeconds(400)));
+    }
+
+    // kell, mille aega test ise liigutab, UTC ajavööndis
+    private static final class TestClock extends Clock {
+
+        private final AtomicLong millis;
+
+        private TestClock(long millis) {
+            this.millis = new AtomicLong(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+    }
+}
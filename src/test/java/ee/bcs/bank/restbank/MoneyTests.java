@@ -0,0 +1,64 @@
+package ee.bcs.bank.restbank;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MoneyTests {
+
+    // canAdd peab ütlema täpselt sama, mida add: kas summa mahub long-i
+    @Test
+    void canAddMatchesAdd() {
+        long[] values = {0, 1, -1, 100, -100, Long.MAX_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for (long balance : values) {
+            for (long amount : values) {
+                boolean fits;
+                try {
+                    Money.add(balance, amount);
+                    fits = true;
+                } catch (ArithmeticException e) {
+                    fits = false;
+                }
+                assertEquals(fits, Money.canAdd(balance, amount), balance + " + " + amount);
+            }
+        }
+    }
+
+    @Test
+    void overflowThrows() {
+        assertEquals(Long.MAX_VALUE, Money.add(Long.MAX_VALUE - 5, 5));
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE - 5, 6));
+        assertThrows(ArithmeticException.class, () -> Money.subtract(Long.MIN_VALUE, 1));
+        assertFalse(Money.canAdd(Long.MAX_VALUE, 1));
+        assertTrue(Money.canAdd(Long.MAX_VALUE, -1));
+        assertFalse(Money.isValidAmount(-1));
+    }
+
+    @Test
+    void amountsAreFormattedInMajorUnits() {
+        assertEquals("123.45 EUR", Money.format(12345, "EUR"));
+        assertEquals("-0.05 EUR", Money.format(-5, "EUR"));
+        assertEquals("500 JPY", Money.format(500, "JPY"));
+        assertEquals("12.345 KWD", Money.format(12345, "KWD"));
+    }
+
+    // JSON-is on summa täisarv väikseimates ühikutes, ka suuremad kui double täpselt esitab
+    @Test
+    void jsonAmountsAreExactMinorUnits() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setAmount(12345);
+        transactionDto.setBalance(Long.MAX_VALUE);
+
+        String json = objectMapper.writeValueAsString(transactionDto);
+        TransactionDto read = objectMapper.readValue(json, TransactionDto.class);
+
+        assertTrue(json.contains("\"amount\":12345"));
+        assertTrue(json.contains("\"balance\":9223372036854775807"));
+        assertEquals(Long.MAX_VALUE, read.getBalance());
+    }
+}
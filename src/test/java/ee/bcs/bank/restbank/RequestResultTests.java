@@ -0,0 +1,34 @@
+package ee.bcs.bank.restbank;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RequestResultTests {
+
+    @Test
+    void messageArgumentIsAppendedOnRead() {
+        RequestResult requestResult = new RequestResult();
+        requestResult.setMessage("Deposit done, account ", "EE1001");
+        assertEquals("Deposit done, account EE1001", requestResult.getMessage());
+
+        // tavaline setMessage kustutab eelmise argumendi
+        requestResult.setMessage("Account deleted.");
+        assertEquals("Account deleted.", requestResult.getMessage());
+    }
+
+    @Test
+    void messageArgumentIsNotSerializedSeparately() throws Exception {
+        RequestResult requestResult = new RequestResult();
+        requestResult.setMessage("Transfer to ", "EE2001");
+
+        String json = new ObjectMapper().writeValueAsString(requestResult);
+
+        assertEquals("Transfer to EE2001", new ObjectMapper().readValue(json, Map.class).get("message"));
+        assertFalse(json.contains("messageArgument"));
+    }
+}
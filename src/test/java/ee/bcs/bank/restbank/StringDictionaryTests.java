@@ -0,0 +1,50 @@
+package ee.bcs.bank.restbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StringDictionaryTests {
+
+    @Test
+    void valuesGetStableCodes() {
+        StringDictionary dictionary = new StringDictionary();
+        assertEquals(0, dictionary.encode(null));
+        assertNull(dictionary.decode(0));
+
+        // rohkem väärtusi kui algne massiiv mahutab
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals(i + 1, dictionary.encode("EE" + i));
+        }
+        assertEquals(1, dictionary.encode("EE0"));
+        assertEquals("EE4999", dictionary.decode(5_000));
+        assertEquals(5_000, dictionary.size());
+    }
+
+    // samaaegselt lisatud väärtus saab ühe koodi, mille decode annab tagasi
+    @Test
+    void concurrentEncodersAgreeOnCodes() throws Exception {
+        StringDictionary dictionary = new StringDictionary();
+        int values = 10_000;
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            Future<?>[] encoders = new Future<?>[4];
+            for (int thread = 0; thread < encoders.length; thread++) {
+                encoders[thread] = executor.submit(() -> {
+                    for (int i = 0; i < values; i++) {
+                        String value = "EE" + i;
+                        assertEquals(value, dictionary.decode(dictionary.encode(value)));
+                    }
+                });
+            }
+            for (Future<?> encoder : encoders) {
+                encoder.get();
+            }
+        }
+        assertEquals(values, dictionary.size());
+    }
+}
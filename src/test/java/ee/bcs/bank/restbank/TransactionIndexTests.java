@@ -0,0 +1,107 @@
+package ee.bcs.bank.restbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Aja järgi otsimine peab andma sama tulemuse kui kõigi konto ridade läbivaatamine, ka siis, kui aeg läheb tagasi
+class TransactionIndexTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 10, 27, 3, 0);
+
+    private final TransactionIndex transactionIndex = new TransactionIndex();
+    private final TransactionStore transactionStore = new TransactionStore(transactionIndex);
+    private final List<Integer> accountRows = new ArrayList<>();
+
+    @Test
+    void rowsInTimeOrderAreFound() {
+        for (int minute = 0; minute < 50; minute++) {
+            add(1, START.plusMinutes(minute));
+            add(2, START.plusMinutes(minute));
+        }
+
+        assertSearchesMatchEveryRow();
+        assertEquals(2 * 10, transactionIndex.lastRow(1, micros(START.plusMinutes(10)), transactionStore));
+    }
+
+    // talveajale üleminek: kohalik aeg läheb tunni tagasi, sama konto read jätkuvad varasema ajaga
+    @Test
+    void rowsAfterTheClockWentBackAreFound() {
+        for (int minute = 0; minute < 50; minute++) {
+            add(1, START.plusMinutes(minute));
+            add(2, START.plusMinutes(minute));
+        }
+        for (int minute = 0; minute < 50; minute++) {
+            add(1, START.minusHours(1).plusMinutes(minute));
+        }
+
+        assertSearchesMatchEveryRow();
+        assertEquals(2 * 50 + 10, transactionIndex.lastRow(1, micros(START.minusHours(1).plusMinutes(10)), transactionStore));
+    }
+
+    // journalist taastamisel tulevad read vales järjekorras, aja järjekord reanumbri järgi jääb samaks
+    @Test
+    void restoredRowsOutOfOrderAreFound() {
+        int rows = 60;
+        for (int row = rows - 1; row >= 0; row -= 2) {
+            restore(row, START.plusMinutes(row));
+        }
+        for (int row = 0; row < rows; row += 2) {
+            restore(row, START.plusMinutes(row));
+        }
+
+        assertSearchesMatchEveryRow();
+    }
+
+    private void assertSearchesMatchEveryRow() {
+        for (LocalDateTime from = START.minusHours(2); from.isBefore(START.plusHours(1)); from = from.plusMinutes(7)) {
+            for (int length = 0; length < 40; length += 13) {
+                long fromMicros = micros(from);
+                long toMicros = micros(from.plusMinutes(length));
+                assertArrayEquals(expectedRows(fromMicros, toMicros), transactionIndex.rows(1, fromMicros, toMicros, transactionStore));
+            }
+            int[] upTo = expectedRows(Long.MIN_VALUE, micros(from));
+            assertEquals(upTo.length == 0 ? -1 : upTo[upTo.length - 1], transactionIndex.lastRow(1, micros(from), transactionStore));
+        }
+    }
+
+    private int[] expectedRows(long fromMicros, long toMicros) {
+        return accountRows.stream()
+                .sorted()
+                .filter(row -> transactionStore.epochMicros(row) >= fromMicros && transactionStore.epochMicros(row) <= toMicros)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private void add(int accountId, LocalDateTime time) {
+        int row = transactionStore.append(transaction(accountId, time)) - 1;
+        if (accountId == 1) {
+            accountRows.add(row);
+        }
+    }
+
+    private void restore(int row, LocalDateTime time) {
+        TransactionDto transactionDto = transaction(1, time);
+        transactionDto.setId(row + 1);
+        transactionStore.restore(transactionDto);
+        accountRows.add(row);
+    }
+
+    private static TransactionDto transaction(int accountId, LocalDateTime time) {
+        TransactionDto transactionDto = new TransactionDto();
+        transactionDto.setAccountId(accountId);
+        transactionDto.setTransactionType(TransactionService.DEPOSIT);
+        transactionDto.setCurrency("EUR");
+        transactionDto.setLocalDateTime(time);
+        return transactionDto;
+    }
+
+    private static long micros(LocalDateTime time) {
+        return TransactionStore.toEpochMicros(time);
+    }
+}
@@ -0,0 +1,171 @@
+package ee.bcs.bank.restbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Read üle segmendi piiri: uus segment kaardistatakse ette, taastamisel jäävad täitmata read tühjaks,
+// vana segment viiakse kettale ja loetakse küsimisel tagasi
+class TransactionStoreTests {
+
+    private static final int SEGMENT_ROWS = TransactionStore.SEGMENT_ROWS;
+    private static final long SEGMENT_BYTES = 45L * SEGMENT_ROWS;
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Test
+    void rowsContinueIntoTheNextSegment() {
+        TransactionStore transactionStore = new TransactionStore(new TransactionIndex());
+        TransactionDto transactionDto = new TransactionDto();
+        for (int row = 0; row <= SEGMENT_ROWS / 2; row++) {
+            assertEquals(row + 1, transactionStore.append(transaction(transactionDto, row)));
+        }
+        // teine segment on kaardistatud enne, kui sinna ühtegi rida kirjutatakse
+        assertEquals(2 * SEGMENT_BYTES, transactionStore.mappedBytes());
+
+        for (int row = SEGMENT_ROWS / 2 + 1; row < SEGMENT_ROWS + 10; row++) {
+            transactionStore.append(transaction(transactionDto, row));
+        }
+        TransactionDto first = new TransactionDto();
+        TransactionDto second = new TransactionDto();
+        transactionStore.append(transaction(first, SEGMENT_ROWS + 10), transaction(second, SEGMENT_ROWS + 11));
+
+        assertEquals(SEGMENT_ROWS + 12, transactionStore.committedRows());
+        for (int row : new int[]{0, SEGMENT_ROWS - 1, SEGMENT_ROWS, SEGMENT_ROWS + 11}) {
+            TransactionDto stored = transactionStore.get(row);
+            assertEquals(row + 1, stored.getId());
+            assertEquals(row % 3, stored.getAccountId());
+            assertEquals(row, stored.getAmount());
+            assertEquals(TIME.plusNanos(row * 1_000L), stored.getLocalDateTime());
+        }
+        assertEquals(SEGMENT_ROWS - 1, transactionStore.amount(SEGMENT_ROWS - 1));
+    }
+
+    // journalist taastatud read mõlemas segmendis, vahele jäänud read märgitakse tühjaks ja asList jätab need vahele
+    @Test
+    void restoredRowsSkipGapsInBothSegments() {
+        Set<Integer> gaps = Set.of(0, 5, SEGMENT_ROWS - 1, SEGMENT_ROWS, SEGMENT_ROWS + 2);
+        int rows = SEGMENT_ROWS + 5;
+        TransactionStore transactionStore = new TransactionStore(new TransactionIndex());
+        TransactionDto transactionDto = new TransactionDto();
+        for (int row = 0; row < rows; row++) {
+            if (!gaps.contains(row)) {
+                transaction(transactionDto, row).setId(row + 1);
+                transactionStore.restore(transactionDto);
+            }
+        }
+        transactionStore.sealGaps();
+
+        assertEquals(rows, transactionStore.committedRows());
+        for (int gap : gaps) {
+            assertFalse(transactionStore.contains(gap + 1));
+            assertNull(transactionStore.get(gap));
+        }
+        assertTrue(transactionStore.contains(SEGMENT_ROWS + 2));
+
+        List<TransactionDto> transactions = transactionStore.asList();
+        assertEquals(rows - gaps.size(), transactions.size());
+        int index = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!gaps.contains(row)) {
+                assertEquals(row + 1, transactions.get(index++).getId());
+            }
+        }
+        assertEquals(SEGMENT_ROWS - 3, transactionStore.asList(SEGMENT_ROWS).size());
+
+        // uus rida tuleb pärast taastatud ridu
+        assertEquals(rows + 1, transactionStore.append(transaction(new TransactionDto(), rows)));
+        assertEquals(rows + 1, transactionStore.committedRows());
+    }
+
+    @Test
+    void frozenSegmentIsReadBackWhenAsked() {
+        TransactionStore transactionStore = new TransactionStore(new TransactionIndex());
+        TransactionDto transactionDto = new TransactionDto();
+        for (int row = 0; row < SEGMENT_ROWS + SEGMENT_ROWS / 2 + 10; row++) {
+            transactionStore.append(transaction(transactionDto, row));
+        }
+        assertEquals(3 * SEGMENT_BYTES, transactionStore.mappedBytes());
+
+        // viimane täis segment jääb mällu, pooleli olev ja ette kaardistatud segment samuti
+        assertEquals(0, transactionStore.freeze(2));
+        assertEquals(1, transactionStore.freeze(1));
+        assertEquals(2 * SEGMENT_BYTES, transactionStore.mappedBytes());
+
+        long balances = 0;
+        for (TransactionDto transaction : transactionStore.asList()) {
+            balances += transaction.getBalance();
+        }
+        long rows = transactionStore.committedRows();
+        assertEquals(rows * (rows - 1) / 2, balances);
+        assertEquals(SEGMENT_ROWS - 1, transactionStore.balance(SEGMENT_ROWS - 1));
+        assertTrue(transactionStore.contains(1));
+        assertEquals(3 * SEGMENT_BYTES, transactionStore.mappedBytes());
+
+        // tagasi loetud segment vabastatakse uuesti, fail on juba olemas
+        assertEquals(1, transactionStore.freeze(1));
+        assertEquals(TIME, transactionStore.get(0).getLocalDateTime());
+        assertEquals(rows + 1, transactionStore.append(transaction(transactionDto, (int) rows)));
+    }
+
+    // Segmendi kaardistamine ebaõnnestub, kui kataloogi pole (nagu täis ketta korral). Rida märgitakse tühjaks,
+    // committedRows liigub sellest üle ja järgmised read kirjutatakse tavaliselt
+    @Test
+    void rowsThatCouldNotBeMappedAreVoided() throws IOException {
+        Path directory = Files.createTempDirectory("transaction-store-test").resolve("segments");
+        TransactionStore transactionStore = new TransactionStore(new TransactionIndex(), directory);
+        TransactionDto transactionDto = new TransactionDto();
+        assertThrows(UncheckedIOException.class, () -> transactionStore.append(transaction(transactionDto, 0)));
+        assertEquals(1, transactionStore.committedRows());
+
+        Files.createDirectory(directory);
+        for (int row = 1; row < SEGMENT_ROWS / 2; row++) {
+            transactionStore.append(transaction(transactionDto, row));
+        }
+        // teist segmenti ei saa ette kaardistada, see ei tohi rea kirjutamist takistada
+        Files.delete(directory);
+        for (int row = SEGMENT_ROWS / 2; row < SEGMENT_ROWS - 1; row++) {
+            transactionStore.append(transaction(transactionDto, row));
+        }
+        assertEquals(SEGMENT_ROWS - 1, transactionStore.committedRows());
+
+        // ülekande teine rida jääb uude segmenti, mõlemad read märgitakse tühjaks
+        TransactionDto first = transaction(new TransactionDto(), SEGMENT_ROWS - 1);
+        TransactionDto second = transaction(new TransactionDto(), SEGMENT_ROWS);
+        assertThrows(UncheckedIOException.class, () -> transactionStore.append(first, second));
+        assertEquals(SEGMENT_ROWS + 1, transactionStore.committedRows());
+
+        Files.createDirectory(directory);
+        assertEquals(SEGMENT_ROWS + 2, transactionStore.append(transaction(transactionDto, SEGMENT_ROWS + 1)));
+        assertEquals(SEGMENT_ROWS + 2, transactionStore.committedRows());
+        for (int gap : new int[]{0, SEGMENT_ROWS - 1, SEGMENT_ROWS}) {
+            assertFalse(transactionStore.contains(gap + 1));
+            assertNull(transactionStore.get(gap));
+        }
+        List<TransactionDto> transactions = transactionStore.asList();
+        assertEquals(SEGMENT_ROWS - 1, transactions.size());
+        assertEquals(2, transactions.get(0).getId());
+        assertEquals(SEGMENT_ROWS + 2, transactions.get(SEGMENT_ROWS - 2).getId());
+    }
+
+    private static TransactionDto transaction(TransactionDto transactionDto, int row) {
+        transactionDto.setAccountId(row % 3);
+        transactionDto.setTransactionType(TransactionService.DEPOSIT);
+        transactionDto.setAmount(row);
+        transactionDto.setBalance(row);
+        transactionDto.setCurrency("EUR");
+        transactionDto.setLocalDateTime(TIME.plusNanos(row * 1_000L));
+        return transactionDto;
+    }
+}